@@ -18,6 +18,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * - MemTable 刷盘影响测试
  * - 并发性能测试
  * - 删除操作性能测试
+ * - Zipfian 读取（块缓存）性能测试
+ * - 布隆过滤器微基准（误判率与查询耗时）
  * - 内存使用监控
  * 
  * @author Brian Xia Dong
@@ -297,6 +299,7 @@ public class BenchmarkRunner {
             // 基础性能测试
             benchmarkSequentialWrites();
             benchmarkRandomWrites();
+            benchmarkBatchWrites();
             benchmarkReads();
             benchmarkMixedWorkload();
             
@@ -308,6 +311,9 @@ public class BenchmarkRunner {
             benchmarkConcurrentOperations();
             benchmarkDeleteOperations();
             benchmarkRangeQueries();
+            benchmarkZipfianReads();
+            benchmarkBloomFilters();
+            benchmarkSubcompactions();
             
         } catch (Exception e) {
             System.err.println("基准测试过程中发生错误: " + e.getMessage());
@@ -882,12 +888,275 @@ public class BenchmarkRunner {
         }
     }
     
+    /**
+     * Zipfian 读取测试：数据全部落盘后，分别在关闭和开启块缓存时按 Zipf 分布读取，对比尾延迟
+     */
+    private void benchmarkZipfianReads() {
+        System.out.println("\n=== Zipfian 读取性能测试（块缓存） ===");
+        runZipfianReads("zipfian_reads_nocache", new LSMTreeOptions().setBlockCache(null), "Zipfian 读取（无缓存）");
+        runZipfianReads("zipfian_reads_cache", new LSMTreeOptions(), "Zipfian 读取（块缓存）");
+    }
+
+    private void runZipfianReads(String testName, LSMTreeOptions options, String reportName) {
+        LSMTree lsmTree = null;
+        PerformanceStats stats = new PerformanceStats();
+
+        try {
+            // 小 MemTable 让数据全部落到 SSTable
+            lsmTree = createLSMTree(testName, 1000, options);
+            Random random = new Random(config.randomSeed);
+            for (int i = 0; i < config.numOperations; i++) {
+                lsmTree.put(String.format("key_%08d", i), generateRandomValue(random, config.valueSize));
+            }
+            lsmTree.flush();
+
+            ZipfianGenerator zipf = new ZipfianGenerator(config.numOperations, 0.99, config.randomSeed);
+            stats.start();
+            for (int i = 0; i < config.numOperations; i++) {
+                String key = String.format("key_%08d", zipf.next());
+                long startTime = System.nanoTime();
+                try {
+                    lsmTree.get(key);
+                    stats.recordOperation(System.nanoTime() - startTime);
+                } catch (Exception e) {
+                    stats.recordError();
+                }
+            }
+            stats.end();
+            stats.printDetailedReport(reportName);
+
+            BlockCache cache = options.getBlockCache();
+            if (cache != null) {
+                System.out.printf("块缓存: 命中=%d, 未命中=%d, 淘汰=%d%n",
+                        cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount());
+            }
+        } catch (Exception e) {
+            System.err.println(reportName + " 测试失败: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            closeLSMTree(lsmTree);
+        }
+    }
+
+    /**
+     * 批量写入与逐条写入的吞吐对比（小记录）
+     */
+    private void benchmarkBatchWrites() {
+        System.out.println("\n=== 批量写入性能测试 ===");
+        int batchSize = 100;
+        int n = config.numOperations;
+        LSMTree single = null;
+        LSMTree batched = null;
+        try {
+            Random random = new Random(config.randomSeed);
+            String[] keys = new String[n];
+            String[] values = new String[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = String.format("key_%08d", i);
+                values[i] = generateRandomValue(random, 16);
+            }
+
+            single = createLSMTree("single_writes");
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                single.put(keys[i], values[i]);
+            }
+            long singleNanos = System.nanoTime() - start;
+
+            batched = createLSMTree("batch_writes");
+            WriteBatch batch = new WriteBatch();
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                batch.put(keys[i], values[i]);
+                if (batch.size() == batchSize) {
+                    batched.write(batch);
+                    batch.clear();
+                }
+            }
+            batched.write(batch);
+            long batchNanos = System.nanoTime() - start;
+
+            double singleOps = n * 1_000_000_000.0 / singleNanos;
+            double batchOps = n * 1_000_000_000.0 / batchNanos;
+            System.out.printf("逐条写入: %.0f ops/sec%n", singleOps);
+            System.out.printf("批量写入 (每批 %d 条): %.0f ops/sec, 提升 %.1fx%n", batchSize, batchOps,
+                    batchOps / singleOps);
+        } catch (Exception e) {
+            System.err.println("批量写入测试失败: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            closeLSMTree(single);
+            closeLSMTree(batched);
+        }
+    }
+
+    /**
+     * 子压缩微基准：同一组相互重叠的输入表分别用 1、2、4…个子压缩合并，比较压缩吞吐
+     */
+    private void benchmarkSubcompactions() {
+        System.out.println("\n=== 子压缩吞吐测试 ===");
+        int tables = 8;
+        int perTable = Math.max(config.numOperations, 100000);
+        String dataDir = config.dataDir + "/subcompactions";
+        File dir = new File(dataDir);
+        if (dir.exists()) {
+            deleteDirectory(dir);
+        }
+        dir.mkdirs();
+        List<SSTable> inputs = new ArrayList<>();
+        try {
+            Random random = new Random(config.randomSeed);
+            long seq = 0;
+            for (int t = 0; t < tables; t++) {
+                // 各表键随机分布在同一键空间，模拟相互重叠的 L0 文件
+                TreeMap<String, String> data = new TreeMap<>();
+                while (data.size() < perTable) {
+                    data.put(String.format("key_%08d", random.nextInt(perTable * tables)),
+                            generateRandomValue(random, config.valueSize));
+                }
+                List<KeyValue> entries = new ArrayList<>(data.size());
+                for (Map.Entry<String, String> e : data.entrySet()) {
+                    entries.add(new KeyValue(e.getKey(), e.getValue(), ++seq, false));
+                }
+                inputs.add(new SSTable(String.format("%s/input_%d.db", dataDir, t), entries, null,
+                        new LSMTreeOptions()));
+            }
+
+            long total = (long) tables * perTable;
+            int cores = Runtime.getRuntime().availableProcessors();
+            double baseline = 0;
+            for (int n = 1; n <= cores; n *= 2) {
+                LSMTreeOptions options = new LSMTreeOptions().setMaxSubcompactions(n);
+                final int run = n;
+                long start = System.nanoTime();
+                List<SSTable> outputs = StreamingCompaction.merge(inputs,
+                        i -> String.format("%s/output_%d_%d.db", dataDir, run, i), 10000, null, options);
+                long nanos = System.nanoTime() - start;
+                for (SSTable t : outputs) {
+                    t.delete();
+                }
+                double entriesPerSec = total * 1_000_000_000.0 / nanos;
+                if (n == 1) {
+                    baseline = entriesPerSec;
+                }
+                System.out.printf("子压缩数 %d: %.0f 条/秒, 输出 %d 个表, 相对单线程 %.2fx%n", n, entriesPerSec,
+                        outputs.size(), entriesPerSec / baseline);
+            }
+            System.out.printf("处理器数: %d, 输入: %d 个表 × %d 条%n", cores, tables, perTable);
+        } catch (Exception e) {
+            System.err.println("子压缩测试失败: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            for (SSTable t : inputs) {
+                try {
+                    t.delete();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 布隆过滤器微基准：相同键集下对比旧 BloomFilter 与分块布隆过滤器的误判率和 mightContain 耗时
+     */
+    private void benchmarkBloomFilters() {
+        System.out.println("\n=== 布隆过滤器微基准 ===");
+        int n = config.numOperations;
+        String[] present = new String[n];
+        String[] absent = new String[n];
+        for (int i = 0; i < n; i++) {
+            present[i] = String.format("key_%08d", i);
+            absent[i] = String.format("absent_%08d", i);
+        }
+        BloomFilter legacy = new BloomFilter(n, 0.01);
+        BlockedBloomFilter blocked = new BlockedBloomFilter(n);
+        for (String key : present) {
+            legacy.add(key);
+            blocked.add(key);
+        }
+        // 打乱查询顺序，模拟随机点查
+        Random random = new Random(config.randomSeed);
+        Collections.shuffle(Arrays.asList(present), random);
+        Collections.shuffle(Arrays.asList(absent), random);
+        System.out.printf("旧 BloomFilter: 位数=%d, 哈希函数=%d%n", legacy.getSize(), legacy.getHashFunctions());
+        System.out.printf("分块布隆过滤器: 位数=%d, 探测次数=%d%n", blocked.getBitSize(), blocked.getHashFunctions());
+        runFilterProbe("旧 BloomFilter", legacy, present, absent);
+        runFilterProbe("分块布隆过滤器", blocked, present, absent);
+    }
+
+    private void runFilterProbe(String name, KeyFilter filter, String[] present, String[] absent) {
+        // 预热
+        for (int round = 0; round < 3; round++) {
+            for (String key : freshCopies(absent)) {
+                filter.mightContain(key);
+            }
+        }
+        // 使用新的字符串副本，避免 String.hashCode 的缓存让旧实现免去哈希计算（真实查询的键都是新对象）
+        String[] absentKeys = freshCopies(absent);
+        String[] presentKeys = freshCopies(present);
+        int falsePositives = 0;
+        long start = System.nanoTime();
+        for (String key : absentKeys) {
+            if (filter.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+        long absentNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (String key : presentKeys) {
+            filter.mightContain(key);
+        }
+        long presentNanos = System.nanoTime() - start;
+        System.out.printf("%s: 误判率=%.3f%%, mightContain 平均耗时 不存在的键=%.1f ns, 存在的键=%.1f ns%n", name,
+                falsePositives * 100.0 / absent.length, (double) absentNanos / absent.length,
+                (double) presentNanos / present.length);
+    }
+
+    private static String[] freshCopies(String[] keys) {
+        String[] copies = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            // 经字符数组复制：new String(String) 会连同缓存的哈希值一起复制
+            copies[i] = new String(keys[i].toCharArray());
+        }
+        return copies;
+    }
+
+    /**
+     * Zipf 分布随机数生成器，返回 [0, n) 内的下标，下标越小越热
+     */
+    public static class ZipfianGenerator {
+        private final double[] cdf;
+        private final Random random;
+
+        public ZipfianGenerator(int n, double skew, long seed) {
+            this.cdf = new double[n];
+            this.random = new Random(seed);
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, skew);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        public int next() {
+            int idx = Arrays.binarySearch(cdf, random.nextDouble());
+            return idx >= 0 ? idx : Math.min(-idx - 1, cdf.length - 1);
+        }
+    }
+    
     // 辅助方法
     
     /**
      * 创建 LSM Tree 实例
      */
     private LSMTree createLSMTree(String testName) throws IOException {
+        return createLSMTree(testName, config.memTableSizeThreshold, new LSMTreeOptions());
+    }
+
+    private LSMTree createLSMTree(String testName, int memTableSize, LSMTreeOptions options) throws IOException {
         String dataDir = config.dataDir + "/" + testName;
         File dir = new File(dataDir);
         if (dir.exists()) {
@@ -895,7 +1164,7 @@ public class BenchmarkRunner {
         }
         dir.mkdirs();
         
-        return new LSMTree(dataDir, config.memTableSizeThreshold);
+        return new LSMTree(dataDir, memTableSize, options);
     }
     
     /**
@@ -0,0 +1,483 @@
+package com.brianxiadong.lsmtree;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSTable 数据块缓存
+ * 按 (文件 id, 块偏移) 缓存解压解码后的数据块，容量按字节计算
+ *
+ * 淘汰策略为 W-TinyLFU：
+ * - 新块先进入约 1% 容量的窗口 LRU，吸收突发访问
+ * - 窗口淘汰出的候选块与主区（SLRU：20% 试用区 + 80% 保护区）的淘汰者比较访问频率，
+ *   频率更高者留下，因此一次性的大范围扫描无法冲掉热点块
+ * - 访问频率由带周期性衰减的 Count-Min Sketch 估算
+ *
+ * 按键的哈希分成多个分片，每个分片有自己的锁、容量和频率统计，并发读取只在同一分片上竞争；
+ * 分片数随容量增长（每片至少 MIN_SHARD_BLOCKS 个默认大小的块），最多 MAX_SHARDS 个
+ *
+ * 监控指标以 lsm.block.cache.*{name=...} 注册，一个缓存只绑定一个名字；
+ * 未指定名字的缓存由第一个使用它的 LSMTree 以数据目录命名，关闭时移除
+ */
+public class BlockCache {
+    public static final long DEFAULT_CAPACITY_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_SHARDS = 16;
+    private static final int MIN_SHARD_BLOCKS = 64;
+
+    private final long capacity;
+    private final Shard[] shards;
+    // 分片数的二进制位数，用哈希的高位选分片，低位留给分片内的频率统计
+    private final int shardBits;
+
+    // 全部分片的块数和字节数，分片在自己的锁内更新，读取不加锁
+    private final AtomicInteger entryCount = new AtomicInteger();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // 已注册的监控指标（this 锁保护）
+    private final List<Meter> meters = new ArrayList<>();
+
+    public BlockCache(long capacityBytes) {
+        this(capacityBytes, defaultShardCount(Math.max(1, capacityBytes)));
+    }
+
+    public BlockCache(String name, long capacityBytes) {
+        this(capacityBytes);
+        bindMetrics(name);
+    }
+
+    /**
+     * 指定分片数（向下取整到 2 的幂）
+     */
+    BlockCache(long capacityBytes, int shardCount) {
+        this.capacity = Math.max(1, capacityBytes);
+        int bits = 0;
+        while ((2 << bits) <= Math.min(shardCount, MAX_SHARDS)) {
+            bits++;
+        }
+        this.shardBits = bits;
+        this.shards = new Shard[1 << bits];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(capacity / shards.length);
+        }
+    }
+
+    private static int defaultShardCount(long capacity) {
+        return (int) Math.max(1, Math.min(MAX_SHARDS, capacity / ((long) MIN_SHARD_BLOCKS * SSTable.DEFAULT_BLOCK_SIZE)));
+    }
+
+    /**
+     * 以 name 注册监控指标；已绑定过名字时不做任何事并返回 false
+     */
+    public synchronized boolean bindMetrics(String name) {
+        if (!meters.isEmpty()) {
+            return false;
+        }
+        MeterRegistry registry = MetricsRegistry.get();
+        // 同名指标可能还留着之前某个缓存的注册，先移除，否则 Micrometer 会沿用旧的那个
+        for (String meterName : new String[] { "lsm.block.cache.hits", "lsm.block.cache.misses",
+                "lsm.block.cache.evictions", "lsm.block.cache.size.bytes" }) {
+            Meter stale = registry.find(meterName).tag("name", name).meter();
+            if (stale != null) {
+                registry.remove(stale);
+            }
+        }
+        meters.add(FunctionCounter.builder("lsm.block.cache.hits", this, c -> c.hits.get()).tag("name", name)
+                .register(registry));
+        meters.add(FunctionCounter.builder("lsm.block.cache.misses", this, c -> c.misses.get()).tag("name", name)
+                .register(registry));
+        meters.add(FunctionCounter.builder("lsm.block.cache.evictions", this, c -> c.evictions.get())
+                .tag("name", name).register(registry));
+        meters.add(Gauge.builder("lsm.block.cache.size.bytes", this, BlockCache::sizeBytes).tag("name", name)
+                .register(registry));
+        return true;
+    }
+
+    /**
+     * 移除已注册的监控指标，之后可以重新绑定
+     */
+    public synchronized void unbindMetrics() {
+        MeterRegistry registry = MetricsRegistry.get();
+        for (Meter meter : meters) {
+            // 同名指标可能已被另一个缓存重新绑定，只移除自己注册的那个
+            Meter current = registry.find(meter.getId().getName()).tags(meter.getId().getTags()).meter();
+            if (current == meter) {
+                registry.remove(meter);
+            }
+        }
+        meters.clear();
+    }
+
+    /**
+     * 查询缓存块，未命中返回 null
+     */
+    public DataBlock get(long fileId, long offset) {
+        Key key = new Key(fileId, offset);
+        DataBlock block = shardFor(key).get(key);
+        if (block == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return block;
+    }
+
+    /**
+     * 放入数据块，charge 为块占用的字节数；大于分片容量的块不缓存
+     */
+    public void put(long fileId, long offset, DataBlock block, int charge) {
+        Key key = new Key(fileId, offset);
+        shardFor(key).put(key, block, charge);
+    }
+
+    /**
+     * 移除某个文件的所有缓存块（文件删除时调用）
+     */
+    public void invalidateFile(long fileId) {
+        for (Shard shard : shards) {
+            shard.invalidateFile(fileId);
+        }
+    }
+
+    private Shard shardFor(Key key) {
+        return shardBits == 0 ? shards[0] : shards[key.hashCode() >>> (32 - shardBits)];
+    }
+
+    public long sizeBytes() {
+        return usedBytes.get();
+    }
+
+    public int size() {
+        return entryCount.get();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * 一个分片：独立的 W-TinyLFU 缓存，所有操作在分片的锁内进行
+     */
+    private final class Shard {
+        private final long capacity;
+        private final long windowCapacity;
+        private final long protectedCapacity;
+
+        private final Map<Key, Node> data = new HashMap<>();
+        private final NodeList window = new NodeList();
+        private final NodeList probation = new NodeList();
+        private final NodeList protectedList = new NodeList();
+        private final FrequencySketch sketch;
+
+        private long windowSize;
+        private long probationSize;
+        private long protectedSize;
+
+        Shard(long capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.windowCapacity = Math.max(1, this.capacity / 100);
+            this.protectedCapacity = (long) ((this.capacity - windowCapacity) * 0.8);
+            this.sketch = new FrequencySketch(
+                    (int) Math.min(Integer.MAX_VALUE, this.capacity / SSTable.DEFAULT_BLOCK_SIZE));
+        }
+
+        synchronized DataBlock get(Key key) {
+            sketch.increment(key.hashCode());
+            Node node = data.get(key);
+            if (node == null) {
+                return null;
+            }
+            onHit(node);
+            return node.block;
+        }
+
+        synchronized void put(Key key, DataBlock block, int charge) {
+            if (charge > capacity) {
+                return;
+            }
+            Node existing = data.get(key);
+            if (existing != null) {
+                existing.block = block;
+                return;
+            }
+            Node node = new Node(key, block, charge);
+            data.put(key, node);
+            entryCount.incrementAndGet();
+            usedBytes.addAndGet(charge);
+            node.queue = window;
+            window.addLast(node);
+            windowSize += charge;
+            evict();
+        }
+
+        synchronized void invalidateFile(long fileId) {
+            Iterator<Map.Entry<Key, Node>> it = data.entrySet().iterator();
+            while (it.hasNext()) {
+                Node node = it.next().getValue();
+                if (node.key.fileId == fileId) {
+                    it.remove();
+                    unlink(node);
+                }
+            }
+        }
+
+        private void onHit(Node node) {
+            if (node.queue == window) {
+                window.moveToLast(node);
+            } else if (node.queue == probation) {
+                // 试用区命中：晋升到保护区，保护区溢出的块降级回试用区
+                probation.remove(node);
+                probationSize -= node.charge;
+                node.queue = protectedList;
+                protectedList.addLast(node);
+                protectedSize += node.charge;
+                while (protectedSize > protectedCapacity && protectedList.head != null) {
+                    Node demoted = protectedList.head;
+                    protectedList.remove(demoted);
+                    protectedSize -= demoted.charge;
+                    demoted.queue = probation;
+                    probation.addLast(demoted);
+                    probationSize += demoted.charge;
+                }
+            } else {
+                protectedList.moveToLast(node);
+            }
+        }
+
+        /**
+         * 窗口溢出的块作为候选进入主区；主区超出容量时由 TinyLFU 决定淘汰候选还是主区的淘汰者
+         */
+        private void evict() {
+            while (windowSize > windowCapacity && window.head != null) {
+                Node candidate = window.head;
+                window.remove(candidate);
+                windowSize -= candidate.charge;
+                candidate.queue = probation;
+                probation.addLast(candidate);
+                probationSize += candidate.charge;
+
+                while (windowSize + probationSize + protectedSize > capacity) {
+                    Node victim = probation.head;
+                    if (victim == candidate) {
+                        victim = candidate.next;
+                    }
+                    if (victim == null) {
+                        victim = protectedList.head;
+                    }
+                    if (victim == null) {
+                        evictNode(candidate);
+                        break;
+                    }
+                    if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                        evictNode(victim);
+                    } else {
+                        evictNode(candidate);
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void evictNode(Node node) {
+            data.remove(node.key);
+            unlink(node);
+            evictions.incrementAndGet();
+        }
+
+        private void unlink(Node node) {
+            if (node.queue == window) {
+                windowSize -= node.charge;
+            } else if (node.queue == probation) {
+                probationSize -= node.charge;
+            } else {
+                protectedSize -= node.charge;
+            }
+            node.queue.remove(node);
+            node.queue = null;
+            entryCount.decrementAndGet();
+            usedBytes.addAndGet(-node.charge);
+        }
+    }
+
+    /**
+     * 缓存键：文件 id + 块偏移
+     */
+    private static final class Key {
+        private final long fileId;
+        private final long offset;
+
+        Key(long fileId, long offset) {
+            this.fileId = fileId;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return fileId == k.fileId && offset == k.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = fileId * 0x9E3779B97F4A7C15L + offset;
+            h ^= (h >>> 32);
+            return (int) (h * 0x9E3779B97F4A7C15L >>> 32);
+        }
+    }
+
+    private static final class Node {
+        private final Key key;
+        private final int charge;
+        private DataBlock block;
+        private NodeList queue;
+        private Node prev;
+        private Node next;
+
+        Node(Key key, DataBlock block, int charge) {
+            this.key = key;
+            this.block = block;
+            this.charge = charge;
+        }
+    }
+
+    /**
+     * 双向链表，head 为最久未访问
+     */
+    private static final class NodeList {
+        private Node head;
+        private Node tail;
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Count-Min Sketch：4 行 4 位计数器，累计增量达到阈值后所有计数减半以衰减历史频率
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = 64;
+            while (width < expectedEntries && width < (1 << 24)) {
+                width <<= 1;
+            }
+            // 每个 long 存 16 个 4 位计数器
+            this.table = new long[width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int slot = indexOf(hash, i);
+                int shift = counterShift(hash, i);
+                if (((table[slot] >>> shift) & 0xFL) < 15) {
+                    table[slot] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                int count = (int) ((table[indexOf(hash, i)] >>> counterShift(hash, i)) & 0xFL);
+                min = Math.min(min, count);
+            }
+            return min;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        private int counterShift(int hash, int i) {
+            return (((hash >>> (i * 8)) & 0xF)) << 2;
+        }
+
+        /**
+         * 所有计数器减半
+         */
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 按缓存行分块的布隆过滤器
+ * 位数组划分为 64 字节（512 位）的块，一个键的所有探测位都落在同一块内，
+ * 每次查询最多一次缓存未命中；键使用 XXH64 风格的 64 位哈希，
+ * 高 32 位选块，低 32 位经乘法散列依次产生块内各探测位
+ */
+public class BlockedBloomFilter implements KeyFilter {
+    public static final String TYPE = "BLOCKED_BLOOM";
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    private static final int WORDS_PER_BLOCK = 8; // 8 * 64 位 = 64 字节
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    private final long[] words;
+    private final int numBlocks;
+    private final int hashFunctions;
+
+    public BlockedBloomFilter(int expectedElements) {
+        this(expectedElements, DEFAULT_BITS_PER_KEY);
+    }
+
+    public BlockedBloomFilter(int expectedElements, int bitsPerKey) {
+        int n = Math.max(1, expectedElements);
+        int bpk = Math.max(1, bitsPerKey);
+        long totalBits = (long) n * bpk;
+        this.numBlocks = (int) Math.max(1, (totalBits + 511) / 512);
+        // 最优探测次数 k = bitsPerKey * ln2，限制在 [1, 12]
+        this.hashFunctions = Math.max(1, Math.min(12, (int) Math.round(bpk * Math.log(2))));
+        this.words = new long[numBlocks * WORDS_PER_BLOCK];
+    }
+
+    private BlockedBloomFilter(long[] words, int hashFunctions) {
+        this.words = words;
+        this.numBlocks = words.length / WORDS_PER_BLOCK;
+        this.hashFunctions = hashFunctions;
+    }
+
+    /**
+     * 64 位哈希：每 4 个 UTF-16 编码单元合成一个 64 位字，乘法混合后用 XXH64 的末尾混合函数雪崩，
+     * 直接读取字符，不分配临时字节数组（getBytes 的开销远大于探测本身）
+     */
+    public static long hash(String key) {
+        int len = key.length();
+        long h = SEED + PRIME4 + len;
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            long v = key.charAt(i) | (long) key.charAt(i + 1) << 16
+                    | (long) key.charAt(i + 2) << 32 | (long) key.charAt(i + 3) << 48;
+            h = (h ^ v) * PRIME1;
+            h ^= h >>> 31;
+        }
+        for (; i < len; i++) {
+            h = (h ^ key.charAt(i)) * PRIME1;
+        }
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    /**
+     * 块起始下标：高 32 位乘以块数取高位，避免取模
+     */
+    private int blockBase(long h) {
+        return (int) (((h >>> 32) * numBlocks) >>> 32) * WORDS_PER_BLOCK;
+    }
+
+    @Override
+    public void add(String key) {
+        long h = hash(key);
+        int base = blockBase(h);
+        int h2 = (int) h;
+        for (int i = 0; i < hashFunctions; i++) {
+            // 黄金分割乘法散列，取高 9 位作为块内位号
+            h2 *= 0x9E3779B9;
+            int bit = h2 >>> 23;
+            words[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    @Override
+    public boolean mightContain(String key) {
+        return mightContain(key, hash(key));
+    }
+
+    @Override
+    public boolean mightContain(String key, long h) {
+        int base = blockBase(h);
+        int h2 = (int) h;
+        for (int i = 0; i < hashFunctions; i++) {
+            h2 *= 0x9E3779B9;
+            int bit = h2 >>> 23;
+            if ((words[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * 位数组大小（位）
+     */
+    public long getBitSize() {
+        return (long) words.length * 64;
+    }
+
+    /**
+     * 序列化：探测次数、字数、位数组
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(hashFunctions);
+        out.writeInt(words.length);
+        for (long w : words) {
+            out.writeLong(w);
+        }
+    }
+
+    public static BlockedBloomFilter readFrom(DataInput in) throws IOException {
+        int hashFunctions = in.readInt();
+        int length = in.readInt();
+        if (length <= 0 || length % WORDS_PER_BLOCK != 0) {
+            throw new IOException("Invalid blocked bloom filter length: " + length);
+        }
+        long[] words = new long[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = in.readLong();
+        }
+        return new BlockedBloomFilter(words, hashFunctions);
+    }
+}
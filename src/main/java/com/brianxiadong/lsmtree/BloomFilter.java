@@ -1,28 +1,42 @@
 package com.brianxiadong.lsmtree;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.BitSet;
 
 /**
  * 布隆过滤器实现
  * 用于快速判断键是否可能存在于SSTable中
+ * 新写入的 SSTable 使用 BlockedBloomFilter，此实现用于读取旧文件的过滤器块
  */
-public class BloomFilter {
+public class BloomFilter implements KeyFilter {
+    public static final String TYPE = "BLOOM";
+
     private final BitSet bitSet;
     private final int size;
     private final int hashFunctions;
 
     public BloomFilter(int expectedElements, double falsePositiveProbability) {
+        int n = Math.max(1, expectedElements);
         // 计算最优位数组大小
-        this.size = (int) (-expectedElements * Math.log(falsePositiveProbability)
-                / (Math.log(2) * Math.log(2)));
+        this.size = Math.max(64, (int) (-n * Math.log(falsePositiveProbability)
+                / (Math.log(2) * Math.log(2))));
         // 计算最优哈希函数个数
-        this.hashFunctions = (int) (size * Math.log(2) / expectedElements);
+        this.hashFunctions = Math.max(1, (int) (size * Math.log(2) / n));
         this.bitSet = new BitSet(size);
     }
 
+    private BloomFilter(BitSet bitSet, int size, int hashFunctions) {
+        this.bitSet = bitSet;
+        this.size = size;
+        this.hashFunctions = hashFunctions;
+    }
+
     /**
      * 向布隆过滤器添加元素
      */
+    @Override
     public void add(String key) {
         for (int i = 0; i < hashFunctions; i++) {
             int hash = hash(key, i);
@@ -35,6 +49,7 @@ public class BloomFilter {
      * 返回false表示绝对不存在
      * 返回true表示可能存在
      */
+    @Override
     public boolean mightContain(String key) {
         for (int i = 0; i < hashFunctions; i++) {
             int hash = hash(key, i);
@@ -45,6 +60,14 @@ public class BloomFilter {
         return true;
     }
 
+    /**
+     * 旧实现使用 String.hashCode，忽略预先计算的 64 位哈希
+     */
+    @Override
+    public boolean mightContain(String key, long keyHash) {
+        return mightContain(key);
+    }
+
     /**
      * 多重哈希函数实现
      * 使用Double Hashing技术避免实现多个独立的哈希函数
@@ -55,6 +78,14 @@ public class BloomFilter {
         return hash1 + i * hash2;
     }
 
+    public int getSize() {
+        return size;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
     /**
      * 获取位数组序列化数据（用于持久化）
      */
@@ -63,13 +94,34 @@ public class BloomFilter {
     }
 
     /**
-     * 从字节数组恢复布隆过滤器
+     * 从字节数组恢复布隆过滤器，size 和 hashFunctions 必须与序列化时一致
      */
     public static BloomFilter fromByteArray(byte[] data, int size, int hashFunctions) {
-        BloomFilter filter = new BloomFilter(1000, 0.01); // 临时创建
-        filter.bitSet.clear();
-        BitSet restored = BitSet.valueOf(data);
-        filter.bitSet.or(restored);
-        return filter;
+        return new BloomFilter(BitSet.valueOf(data), size, hashFunctions);
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * 序列化：位数组大小、哈希函数个数、位数组长度、位数组
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        byte[] bits = toByteArray();
+        out.writeInt(size);
+        out.writeInt(hashFunctions);
+        out.writeInt(bits.length);
+        out.write(bits);
+    }
+
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        int hashFunctions = in.readInt();
+        byte[] bits = new byte[in.readInt()];
+        in.readFully(bits);
+        return fromByteArray(bits, size, hashFunctions);
     }
-}
\ No newline at end of file
+}
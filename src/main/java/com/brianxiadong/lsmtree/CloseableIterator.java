@@ -0,0 +1,11 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 可关闭的迭代器
+ * 范围查询的结果在读完前固定读取视图，提前结束时调用 close 释放；可重复调用
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+}
@@ -2,10 +2,24 @@ package com.brianxiadong.lsmtree;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 public interface CompactionStrategy {
     boolean needsCompaction(List<SSTable> ssTables);
     List<SSTable> compact(List<SSTable> ssTables) throws IOException;
     LeveledCompactionStrategy.CompactionTask selectCompactionTask(List<SSTable> ssTables);
+
+    /**
+     * 挑选一个输入不含 compacting 中任何表、且与进行中的任务互不冲突的压缩任务，没有时返回 null
+     * 由后台调度器在持有树的写锁时调用
+     */
+    LeveledCompactionStrategy.CompactionTask pickCompaction(List<SSTable> ssTables, Set<SSTable> compacting);
+
+    /**
+     * 合并任务的输入并写出新表；不修改表列表，也不删除输入
+     */
+    List<SSTable> runCompaction(LeveledCompactionStrategy.CompactionTask task) throws IOException;
+
     void setCompressionStrategy(CompressionStrategy compressionStrategy);
+    void setOptions(LSMTreeOptions options);
 }
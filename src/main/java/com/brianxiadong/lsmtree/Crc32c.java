@@ -0,0 +1,70 @@
+package com.brianxiadong.lsmtree;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C（Castagnoli）校验和
+ * Java 9+ 优先使用 JDK 自带的 java.util.zip.CRC32C（有硬件指令加速），Java 8 使用查表实现
+ */
+public class Crc32c implements Checksum {
+    private static final int POLY = 0x82F63B78; // 反射形式的 Castagnoli 多项式
+    private static final int[] TABLE = new int[256];
+    private static final Class<?> JDK_CRC32C;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+        Class<?> jdk;
+        try {
+            jdk = Class.forName("java.util.zip.CRC32C");
+        } catch (ClassNotFoundException e) {
+            jdk = null;
+        }
+        JDK_CRC32C = jdk;
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * 创建校验和实例，可用时返回 JDK 实现
+     */
+    public static Checksum create() {
+        if (JDK_CRC32C != null) {
+            try {
+                return (Checksum) JDK_CRC32C.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ignored) {
+                // 退回查表实现
+            }
+        }
+        return new Crc32c();
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int c = crc;
+        for (int i = off; i < off + len; i++) {
+            c = (c >>> 8) ^ TABLE[(c ^ b[i]) & 0xFF];
+        }
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return (~crc) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
@@ -0,0 +1,176 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 可定位的双向迭代器
+ * 创建时固定读取视图和读取序号，活跃 MemTable 不复制，直接遍历其中不超过该序号的版本；
+ * 之后的写入、刷盘和压缩都不影响它看到的数据，读取时不获取树锁；
+ * 每次定位在固定的视图上建立一个 RangeIterator，同方向的 next/prev 直接推进，换方向时从当前键重新定位；
+ * 重新定位要为每个键范围重叠的 SSTable 重新打开游标并读取一个数据块，来回换方向的扫描应尽量改为单向；
+ * 按快照创建时只看到快照时刻的数据
+ *
+ * 用法：
+ * <pre>
+ * try (DBIterator it = tree.newIterator()) {
+ *     for (it.seek(from); it.isValid(); it.next()) { ... it.key() ... it.value() ... }
+ * }
+ * </pre>
+ * 非线程安全；用完必须 close，否则被替换的 SSTable 文件不会删除
+ */
+public class DBIterator implements Closeable {
+    private final SuperVersion superVersion;
+    // 活跃 MemTable 上固定读取序号的登记，按快照读取时为 null
+    private final Snapshot pin;
+    private final long snapshot;
+    private RangeIterator cursor;
+    private boolean reverse;
+    private KeyValue current;
+    private boolean closed;
+
+    DBIterator(SuperVersion superVersion, Snapshot pin, long snapshot) {
+        this.superVersion = superVersion;
+        this.pin = pin;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 是否停在一条记录上
+     */
+    public boolean isValid() {
+        return current != null;
+    }
+
+    /**
+     * 定位到第一条记录
+     */
+    public void seekToFirst() throws IOException {
+        position(null, null, true, true, false);
+    }
+
+    /**
+     * 定位到最后一条记录
+     */
+    public void seekToLast() throws IOException {
+        position(null, null, true, true, true);
+    }
+
+    /**
+     * 定位到第一个大于等于 key 的记录
+     */
+    public void seek(String key) throws IOException {
+        checkKey(key);
+        position(key, null, true, true, false);
+    }
+
+    /**
+     * 定位到最后一个小于等于 key 的记录
+     */
+    public void seekForPrev(String key) throws IOException {
+        checkKey(key);
+        position(null, key, true, true, true);
+    }
+
+    /**
+     * 移到下一条记录，没有时变为无效
+     * 上一次移动是 prev 或 seekForPrev/seekToLast 时，要从当前键重新建立正向游标，
+     * 代价与 seek 相同：每个键范围重叠的 SSTable 都重新打开一次并读盘，而不是 O(1) 推进
+     */
+    public void next() throws IOException {
+        checkValid();
+        if (reverse) {
+            position(current.getKey(), null, false, true, false);
+        } else {
+            advance();
+        }
+    }
+
+    /**
+     * 移到上一条记录，没有时变为无效
+     * 上一次移动是 next 或 seek/seekToFirst 时，要从当前键重新建立逆向游标，
+     * 代价与 seekForPrev 相同：每个键范围重叠的 SSTable 都重新打开一次并读盘，而不是 O(1) 推进
+     */
+    public void prev() throws IOException {
+        checkValid();
+        if (reverse) {
+            advance();
+        } else {
+            position(null, current.getKey(), true, false, true);
+        }
+    }
+
+    public String key() {
+        checkValid();
+        return current.getKey();
+    }
+
+    public String value() {
+        checkValid();
+        return current.getValue();
+    }
+
+    /**
+     * 释放读取视图，可重复调用
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current = null;
+        try {
+            if (cursor != null) {
+                cursor.close();
+            }
+        } finally {
+            if (pin != null) {
+                pin.close();
+            }
+            superVersion.release();
+        }
+    }
+
+    /**
+     * 在固定视图上按给定范围和方向重新建立游标并停在第一条记录
+     */
+    private void position(String startKey, String endKey, boolean includeStart, boolean includeEnd,
+            boolean reverse) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Iterator is closed");
+        }
+        current = null;
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+        // 游标持有视图的一个额外引用，迭代器本身的引用保证这里总能成功
+        superVersion.tryAcquire();
+        try {
+            cursor = new RangeIterator(superVersion, null, startKey, endKey, includeStart, includeEnd, reverse,
+                    snapshot);
+        } catch (IOException | RuntimeException e) {
+            superVersion.release();
+            throw e;
+        }
+        this.reverse = reverse;
+        advance();
+    }
+
+    private void advance() {
+        current = cursor.hasNext() ? cursor.next() : null;
+    }
+
+    private static void checkKey(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+    }
+
+    private void checkValid() {
+        if (current == null) {
+            throw new IllegalStateException("Iterator is not positioned on an entry");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SSTable 数据块
+ * 解码后的有序记录集合，支持块内二分查找
+ */
+public class DataBlock {
+    private final List<KeyValue> entries;
+    // 解压后的块字节数，用于缓存容量计算
+    private final int byteSize;
+
+    public DataBlock(List<KeyValue> entries) {
+        this(entries, 0);
+    }
+
+    private DataBlock(List<KeyValue> entries, int byteSize) {
+        this.entries = entries;
+        this.byteSize = byteSize;
+    }
+
+    /**
+     * 从块字节解码：[记录数][记录...]
+     */
+    public static DataBlock decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return new DataBlock(readEntries(in), data.length);
+        }
+    }
+
+    /**
+     * 直接从内存映射文件的切片解码，不复制块字节
+     */
+    public static DataBlock decode(ByteBuffer data) throws IOException {
+        int size = data.remaining();
+        return new DataBlock(readEntries(new ByteBufferDataInput(data)), size);
+    }
+
+    private static List<KeyValue> readEntries(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<KeyValue> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(SSTable.readRecord(in));
+        }
+        return entries;
+    }
+
+    /**
+     * 块内二分查找
+     */
+    public KeyValue get(String key) {
+        int idx = seek(key);
+        if (idx < entries.size() && entries.get(idx).getKey().equals(key)) {
+            return entries.get(idx);
+        }
+        return null;
+    }
+
+    /**
+     * 返回第一个键大于等于给定键的位置
+     */
+    public int seek(String key) {
+        int lo = 0;
+        int hi = entries.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries.get(mid).getKey().compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public List<KeyValue> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getByteSize() {
+        return byteSize;
+    }
+}
@@ -0,0 +1,130 @@
+package com.brianxiadong.lsmtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 碎片化的范围墓碑索引
+ * 把可能相互重叠的范围墓碑按所有端点切成互不重叠、有序的片段，每个片段按降序记录覆盖它的全部序号；
+ * 查询某个键被覆盖的最大序号（或快照可见的最大序号）只需一次二分查找
+ */
+public class FragmentedRangeTombstones {
+    public static final FragmentedRangeTombstones EMPTY = new FragmentedRangeTombstones(Collections.emptyList());
+
+    // 片段 i 为 [starts[i], ends[i])，按起点升序且互不重叠；sequences[i] 为覆盖它的序号，降序
+    private final String[] starts;
+    private final String[] ends;
+    private final long[][] sequences;
+    private final List<RangeTombstone> tombstones;
+
+    public FragmentedRangeTombstones(List<RangeTombstone> tombstones) {
+        this.tombstones = Collections.unmodifiableList(new ArrayList<>(tombstones));
+        TreeSet<String> points = new TreeSet<>();
+        for (RangeTombstone t : tombstones) {
+            points.add(t.getStartKey());
+            points.add(t.getEndKey());
+        }
+        String[] bounds = points.toArray(new String[0]);
+        List<List<Long>> hits = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            hits.add(new ArrayList<>());
+        }
+        for (RangeTombstone t : tombstones) {
+            int from = Arrays.binarySearch(bounds, t.getStartKey());
+            int to = Arrays.binarySearch(bounds, t.getEndKey());
+            for (int i = from; i < to; i++) {
+                hits.get(i).add(t.getSequence());
+            }
+        }
+        List<Integer> covered = new ArrayList<>();
+        for (int i = 0; i < hits.size(); i++) {
+            if (!hits.get(i).isEmpty()) {
+                covered.add(i);
+            }
+        }
+        this.starts = new String[covered.size()];
+        this.ends = new String[covered.size()];
+        this.sequences = new long[covered.size()][];
+        for (int j = 0; j < covered.size(); j++) {
+            int i = covered.get(j);
+            starts[j] = bounds[i];
+            ends[j] = bounds[i + 1];
+            List<Long> seqs = hits.get(i);
+            long[] sorted = new long[seqs.size()];
+            for (int k = 0; k < sorted.length; k++) {
+                sorted[k] = seqs.get(k);
+            }
+            Arrays.sort(sorted);
+            // 降序存放，第一个即最大序号
+            for (int lo = 0, hi = sorted.length - 1; lo < hi; lo++, hi--) {
+                long tmp = sorted[lo];
+                sorted[lo] = sorted[hi];
+                sorted[hi] = tmp;
+            }
+            sequences[j] = sorted;
+        }
+    }
+
+    /**
+     * 覆盖该键的范围墓碑中的最大序号，没有覆盖时返回 0
+     */
+    public long maxCoveringSequence(String key) {
+        return maxCoveringSequence(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * 覆盖该键且序号不大于 snapshot 的范围墓碑中的最大序号，没有时返回 0
+     */
+    public long maxCoveringSequence(String key, long snapshot) {
+        int lo = 0;
+        int hi = starts.length - 1;
+        // 最后一个起点不大于 key 的片段
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid].compareTo(key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (found < 0 || key.compareTo(ends[found]) >= 0) {
+            return 0;
+        }
+        for (long seq : sequences[found]) {
+            if (seq <= snapshot) {
+                return seq;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 记录是否被序号更大的范围墓碑覆盖
+     */
+    public boolean covers(KeyValue kv) {
+        return maxCoveringSequence(kv.getKey()) > kv.getSequence();
+    }
+
+    /**
+     * 构造时传入的原始范围墓碑
+     */
+    public List<RangeTombstone> getTombstones() {
+        return tombstones;
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    /**
+     * 片段数
+     */
+    public int size() {
+        return starts.length;
+    }
+}
@@ -0,0 +1,29 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * SSTable 键过滤器
+ * 判断键是否可能存在，返回 false 时键一定不存在；可序列化到 SSTable 的过滤器块
+ */
+public interface KeyFilter {
+    void add(String key);
+
+    boolean mightContain(String key);
+
+    /**
+     * 使用预先计算的 BlockedBloomFilter.hash(key) 判断，一次点查访问多个 SSTable 时只计算一次哈希
+     */
+    boolean mightContain(String key, long keyHash);
+
+    /**
+     * 过滤器类型，记录在元数据块中，加载时据此选择实现
+     */
+    String getType();
+
+    /**
+     * 写入过滤器块内容
+     */
+    void writeTo(DataOutput out) throws IOException;
+}
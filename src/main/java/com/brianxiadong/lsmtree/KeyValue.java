@@ -2,30 +2,41 @@ package com.brianxiadong.lsmtree;
 
 /**
  * LSM Tree中的键值对数据结构
- * 包含键、值和时间戳信息
+ * 包含键、值和序号；同一个键的多个版本按序号区分新旧
  */
 public class KeyValue implements Comparable<KeyValue> {
     private final String key;
     private final String value;
-    private final long timestamp;
+    // 全局单调递增的写入序号，由 LSMTree 在提交 WAL 时分配
+    private final long sequence;
     private final boolean deleted; // 标记是否为删除操作
 
+    // 未分配的序号；LSMTree 分配的序号从 1 开始，写入或回放时替换它
+    static final long UNASSIGNED_SEQUENCE = 0L;
+
+    /**
+     * 未指定序号时使用未分配的序号 0，仅用于在 LSMTree 之外直接构造数据
+     */
     public KeyValue(String key, String value) {
-        this(key, value, System.currentTimeMillis(), false);
+        this(key, value, UNASSIGNED_SEQUENCE, false);
     }
 
-    public KeyValue(String key, String value, long timestamp, boolean deleted) {
+    public KeyValue(String key, String value, long sequence, boolean deleted) {
         this.key = key;
         this.value = value;
-        this.timestamp = timestamp;
+        this.sequence = sequence;
         this.deleted = deleted;
     }
 
     /**
-     * 创建删除标记的键值对
+     * 创建删除标记的键值对，序号未分配
      */
     public static KeyValue createTombstone(String key) {
-        return new KeyValue(key, null, System.currentTimeMillis(), true);
+        return new KeyValue(key, null, UNASSIGNED_SEQUENCE, true);
+    }
+
+    public static KeyValue createTombstone(String key, long sequence) {
+        return new KeyValue(key, null, sequence, true);
     }
 
     public String getKey() {
@@ -36,8 +47,16 @@ public class KeyValue implements Comparable<KeyValue> {
         return value;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @deprecated 版本号已改为序号，使用 {@link #getSequence()}
+     */
+    @Deprecated
     public long getTimestamp() {
-        return timestamp;
+        return sequence;
     }
 
     public boolean isDeleted() {
@@ -50,13 +69,13 @@ public class KeyValue implements Comparable<KeyValue> {
         if (keyCompare != 0) {
             return keyCompare;
         }
-        // 如果键相同，按时间戳降序排列（新的在前）
-        return Long.compare(other.timestamp, this.timestamp);
+        // 如果键相同，按序号降序排列（新的在前）
+        return Long.compare(other.sequence, this.sequence);
     }
 
     @Override
     public String toString() {
-        return String.format("KeyValue{key='%s', value='%s', timestamp=%d, deleted=%s}",
-                key, value, timestamp, deleted);
+        return String.format("KeyValue{key='%s', value='%s', sequence=%d, deleted=%s}",
+                key, value, sequence, deleted);
     }
 }
\ No newline at end of file
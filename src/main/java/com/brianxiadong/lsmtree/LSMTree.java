@@ -2,9 +2,11 @@ package com.brianxiadong.lsmtree;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -14,44 +16,112 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class LSMTree implements AutoCloseable {
     private final String dataDir;
     private final int memTableMaxSize;
-    private final ReadWriteLock lock;
+    private final ReentrantReadWriteLock lock;
+    // 不可变 MemTable 刷盘完成或失败时通知（写锁的条件）
+    private final Condition flushDone;
+    // 后台压缩任务结束时通知（写锁的条件）
+    private final Condition compactionDone;
 
     // 内存组件
     private volatile MemTable activeMemTable;
     private final List<MemTable> immutableMemTables;
+    // 与 immutableMemTables 一一对应的 WAL，刷盘完成后删除
+    private final List<WriteAheadLog> immutableWals;
 
     // 磁盘组件
     private final List<SSTable> ssTables;
+    // 表集合的版本变更日志：刷盘和压缩在发布新表前先记录，重启时只回放它
+    private Manifest manifest;
 
     // 后台任务
     private final ExecutorService compactionExecutor;
+    // 正在被压缩任务读取的表与运行中的任务数（写锁保护），调度时据此挑选互不冲突的任务
+    private final Set<SSTable> compactingTables = new HashSet<>();
+    private int runningCompactions;
+    // 关闭后不再调度新的压缩（写锁保护）
+    private boolean closing;
+    private final ExecutorService flushExecutor;
     private final CompactionStrategy compactionStrategy;
     private final CompressionStrategy compressionStrategy;
     private final LSMTreeMetrics metrics;
+    private final LSMTreeOptions options;
+    // 由本实例以数据目录命名并注册了监控指标的块缓存，关闭时移除指标
+    private BlockCache metricsCache;
 
-    // WAL (Write-Ahead Log) 相关
-    private final WriteAheadLog wal;
+    // WAL (Write-Ahead Log) 相关：每个 MemTable 对应一个 wal_<编号>.log，切换 MemTable 时轮转
+    private volatile WriteAheadLog wal;
+    private final AtomicLong walNumber = new AtomicLong();
+
+    // 刷盘文件序号
+    private final AtomicLong flushSequence = new AtomicLong();
+
+    // 最后分配的写入序号，在写锁内随 WAL 入队递增，用于区分同一个键的新旧版本
+    private final AtomicLong lastSequence = new AtomicLong();
+    // 活跃快照，MemTable 覆盖写入、刷盘和压缩据此保留旧版本
+    private final SnapshotList snapshots = new SnapshotList();
+
+    // 当前读取视图，在写锁内随 MemTable 切换、刷盘和压缩整体替换；读取不加锁
+    private volatile SuperVersion superVersion;
+    // 批量写入进行中时为奇数；无锁读取前后比较，变化时改为加读锁重读，保证看不到部分批次
+    private volatile long batchStamp;
+
+    // 后台刷盘失败的异常，刷盘或等待刷盘的线程据此报错（写锁保护）
+    private IOException backgroundFlushError;
+    // 写入因不可变 MemTable 达到上限而阻塞
+    private volatile boolean writeStalled;
+    private final AtomicLong writeStallCount = new AtomicLong();
 
     public LSMTree(String dataDir, int memTableMaxSize) throws IOException {
+        this(dataDir, memTableMaxSize, new LSMTreeOptions());
+    }
+
+    public LSMTree(String dataDir, int memTableMaxSize, LSMTreeOptions options) throws IOException {
         this.dataDir = dataDir;
         this.memTableMaxSize = memTableMaxSize;
+        this.options = options;
         this.lock = new ReentrantReadWriteLock();
+        this.flushDone = lock.writeLock().newCondition();
+        this.compactionDone = lock.writeLock().newCondition();
 
         // 初始化目录
         createDirectoryIfNotExists(dataDir);
 
         // 初始化组件
-        this.activeMemTable = new MemTable(memTableMaxSize);
+        this.activeMemTable = new MemTable(memTableMaxSize, snapshots);
         this.immutableMemTables = new ArrayList<>();
+        this.immutableWals = new ArrayList<>();
         this.ssTables = new ArrayList<>();
 
         this.compactionStrategy = new LeveledCompactionStrategy(dataDir, 4, 10);
         this.compressionStrategy = new NoneCompressionStrategy();
         this.compactionStrategy.setCompressionStrategy(this.compressionStrategy);
+        this.compactionStrategy.setOptions(options);
         this.metrics = new MicrometerLSMTreeMetrics("default");
 
-        // 初始化WAL
-        this.wal = new WriteAheadLog(dataDir + "/wal.log");
+        // 后台压缩线程池：刷盘完成或压缩结束时按各层得分调度
+        AtomicLong compactionThreadIds = new AtomicLong();
+        this.compactionExecutor = Executors.newFixedThreadPool(Math.max(1, options.getCompactionThreads()), r -> {
+            Thread t = new Thread(r, "LSMTree-Compaction-" + compactionThreadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        // 刷盘线程：单线程保证不可变 MemTable 按切换顺序生成 SSTable
+        this.flushExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "LSMTree-Flush");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // 恢复现有数据并打开WAL
+        recover();
+        lock.writeLock().lock();
+        try {
+            installSuperVersion();
+            maybeScheduleCompaction();
+        } finally {
+            lock.writeLock().unlock();
+        }
 
         io.micrometer.core.instrument.MeterRegistry registry = MetricsRegistry.get();
         io.micrometer.core.instrument.Gauge.builder("lsm.memtable.size", this, t -> t.activeMemTable.size())
@@ -66,19 +136,10 @@ public class LSMTree implements AutoCloseable {
                 .register(registry);
         io.micrometer.core.instrument.Gauge.builder("lsm.wal.size.bytes", this, t -> (double) t.wal.sizeBytes())
                 .register(registry);
-
-        // 启动后台压缩线程
-        this.compactionExecutor = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r, "LSMTree-Compaction");
-            t.setDaemon(true);
-            return t;
-        });
-
-        // 恢复现有数据
-        recover();
-
-        // 暂时禁用后台压缩任务，避免测试时的线程问题
-        // startBackgroundCompaction();
+        BlockCache cache = options.getBlockCache();
+        if (cache != null && cache.bindMetrics(dataDir)) {
+            metricsCache = cache;
+        }
 
         MetricsHttpServer.startIfEnabled();
     }
@@ -87,18 +148,30 @@ public class LSMTree implements AutoCloseable {
      * 插入键值对
      */
     public void put(String key, String value) throws IOException {
+        put(key, value, options.getWalDurability());
+    }
+
+    /**
+     * 插入键值对，按指定持久化级别写 WAL
+     * WAL 记录在写锁内入队以保持与 MemTable 相同的顺序，落盘等待在锁外进行，多个写入合并为一次组提交
+     */
+    public void put(String key, String value, WriteAheadLog.Durability durability) throws IOException {
         long start = System.nanoTime();
         if (key == null || value == null) {
             throw new IllegalArgumentException("Key and value cannot be null");
         }
 
+        long walSeq;
+        WriteAheadLog log;
         lock.writeLock().lock();
         try {
-            // 写入WAL
-            wal.append(WriteAheadLog.LogEntry.put(key, value));
+            // 写入WAL（记下当前日志，切换 MemTable 后 wal 会指向新文件）
+            log = wal;
+            long sequence = lastSequence.incrementAndGet();
+            walSeq = log.enqueue(WriteAheadLog.LogEntry.put(key, value, sequence));
 
             // 写入活跃MemTable
-            activeMemTable.put(key, value);
+            activeMemTable.put(key, value, sequence);
 
             // 检查是否需要刷盘
             if (activeMemTable.shouldFlush()) {
@@ -106,6 +179,10 @@ public class LSMTree implements AutoCloseable {
             }
         } finally {
             lock.writeLock().unlock();
+        }
+        try {
+            log.sync(walSeq, durability);
+        } finally {
             long end = System.nanoTime();
             metrics.recordWrite(end - start);
         }
@@ -115,17 +192,28 @@ public class LSMTree implements AutoCloseable {
      * 删除键
      */
     public void delete(String key) throws IOException {
+        delete(key, options.getWalDurability());
+    }
+
+    /**
+     * 删除键，按指定持久化级别写 WAL
+     */
+    public void delete(String key, WriteAheadLog.Durability durability) throws IOException {
         if (key == null) {
             throw new IllegalArgumentException("Key cannot be null");
         }
 
+        long walSeq;
+        WriteAheadLog log;
         lock.writeLock().lock();
         try {
             // 写入WAL
-            wal.append(WriteAheadLog.LogEntry.delete(key));
+            log = wal;
+            long sequence = lastSequence.incrementAndGet();
+            walSeq = log.enqueue(WriteAheadLog.LogEntry.delete(key, sequence));
 
             // 在活跃MemTable中标记删除
-            activeMemTable.delete(key);
+            activeMemTable.delete(key, sequence);
 
             // 检查是否需要刷盘
             if (activeMemTable.shouldFlush()) {
@@ -134,126 +222,381 @@ public class LSMTree implements AutoCloseable {
         } finally {
             lock.writeLock().unlock();
         }
+        log.sync(walSeq, durability);
+    }
+
+    /**
+     * 删除 [startKey, endKey) 内的所有键
+     */
+    public void deleteRange(String startKey, String endKey) throws IOException {
+        deleteRange(startKey, endKey, options.getWalDurability());
+    }
+
+    /**
+     * 删除 [startKey, endKey) 内的所有键：只写一条范围墓碑，不逐个读出或删除区间内的键
+     * startKey 等于 endKey 时区间为空，不写入
+     */
+    public void deleteRange(String startKey, String endKey, WriteAheadLog.Durability durability) throws IOException {
+        if (startKey == null || endKey == null) {
+            throw new IllegalArgumentException("Range bounds cannot be null");
+        }
+        if (startKey.compareTo(endKey) > 0) {
+            throw new IllegalArgumentException("startKey > endKey");
+        }
+        if (startKey.equals(endKey)) {
+            return;
+        }
+
+        long walSeq;
+        WriteAheadLog log;
+        lock.writeLock().lock();
+        try {
+            log = wal;
+            long sequence = lastSequence.incrementAndGet();
+            walSeq = log.enqueue(WriteAheadLog.LogEntry.deleteRange(startKey, endKey, sequence));
+
+            activeMemTable.deleteRange(startKey, endKey, sequence);
+
+            if (activeMemTable.shouldFlush()) {
+                flushMemTable();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.sync(walSeq, durability);
+    }
+
+    /**
+     * 原子地应用一批写入
+     */
+    public void write(WriteBatch batch) throws IOException {
+        write(batch, options.getWalDurability());
+    }
+
+    /**
+     * 原子地应用一批写入：只加一次写锁、写一条 WAL 记录；
+     * 整批进入同一个 MemTable 后才检查刷盘，读取者看不到部分应用的批次
+     */
+    public void write(WriteBatch batch, WriteAheadLog.Durability durability) throws IOException {
+        if (batch == null) {
+            throw new IllegalArgumentException("Batch cannot be null");
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long walSeq;
+        WriteAheadLog log;
+        lock.writeLock().lock();
+        try {
+            log = wal;
+            // 批内条目分配连续的序号
+            List<WriteAheadLog.LogEntry> entries = new ArrayList<>(batch.size());
+            for (WriteAheadLog.LogEntry entry : batch.getEntries()) {
+                entries.add(entry.withSequence(lastSequence.incrementAndGet()));
+            }
+            walSeq = log.enqueue(entries);
+            batchStamp++;
+            try {
+                for (WriteAheadLog.LogEntry entry : entries) {
+                    apply(activeMemTable, entry);
+                }
+            } finally {
+                batchStamp++;
+            }
+
+            if (activeMemTable.shouldFlush()) {
+                flushMemTable();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            log.sync(walSeq, durability);
+        } finally {
+            metrics.recordWrite(System.nanoTime() - start);
+        }
+    }
+
+    private static void apply(MemTable memTable, WriteAheadLog.LogEntry entry) {
+        if (entry.getOperation() == WriteAheadLog.Operation.PUT) {
+            memTable.put(entry.getKey(), entry.getValue(), entry.getSequence());
+        } else if (entry.getOperation() == WriteAheadLog.Operation.DELETE) {
+            memTable.delete(entry.getKey(), entry.getSequence());
+        } else if (entry.getOperation() == WriteAheadLog.Operation.DELETE_RANGE) {
+            memTable.deleteRange(entry.getKey(), entry.getValue(), entry.getSequence());
+        }
     }
 
     /**
      * 查询键值
+     * 固定当前读取视图后按新到旧查找，不获取树锁也不排序
      */
     public String get(String key) {
+        return get(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * 按快照查询：返回快照创建时该键的值，之后的写入和删除不可见
+     */
+    public String get(String key, Snapshot snapshot) {
+        return get(key, snapshotSequence(snapshot));
+    }
+
+    private String get(String key, long snapshot) {
         long start = System.nanoTime();
         if (key == null) {
             throw new IllegalArgumentException("Key cannot be null");
         }
 
+        try {
+            long stamp = batchStamp;
+            if ((stamp & 1) == 0) {
+                KeyValue e = lookup(key, snapshot);
+                if (batchStamp == stamp) {
+                    return e == null || e.isDeleted() ? null : e.getValue();
+                }
+            }
+            // 与批量写入重叠，加读锁等批次完成后重读
+            lock.readLock().lock();
+            try {
+                KeyValue e = lookup(key, snapshot);
+                return e == null || e.isDeleted() ? null : e.getValue();
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            long end = System.nanoTime();
+            metrics.recordRead(end - start);
+        }
+    }
+
+    /**
+     * 创建时间点快照：之后按它读取只看到此刻已写入的数据；用完必须 close，否则旧版本一直保留
+     */
+    public Snapshot getSnapshot() {
+        // 读锁排除进行中的写入和批次，最新序号之前的写入都已进入 MemTable
         lock.readLock().lock();
         try {
-            KeyValue ent = activeMemTable.getEntry(key);
+            return snapshots.create(lastSequence.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前活跃的快照数
+     */
+    public int getSnapshotCount() {
+        return snapshots.size();
+    }
+
+    private static long snapshotSequence(Snapshot snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Snapshot cannot be null");
+        }
+        if (snapshot.isReleased()) {
+            throw new IllegalStateException("Snapshot is released");
+        }
+        return snapshot.getSequence();
+    }
+
+    /**
+     * 在当前读取视图中查找键序号不大于 snapshot 的最新版本（可能是墓碑）
+     * 同时记下覆盖该键且快照可见的范围墓碑的最大序号，比找到的版本更新时按墓碑返回
+     */
+    private KeyValue lookup(String key, long snapshot) {
+        SuperVersion sv = acquireSuperVersion();
+        try {
+            // 1. 活跃MemTable
+            MemTable active = sv.getActiveMemTable();
+            long rangeSequence = active.maxCoveringSequence(key, snapshot);
+            KeyValue ent = active.getEntry(key, snapshot);
             if (ent != null) {
-                if (ent.isDeleted())
-                    return null;
-                return ent.getValue();
+                return resolve(key, ent, rangeSequence);
             }
 
-            // 2. 查询不可变MemTable（按时间倒序）
-            for (int i = immutableMemTables.size() - 1; i >= 0; i--) {
-                KeyValue e = immutableMemTables.get(i).getEntry(key);
+            // 2. 不可变MemTable（新的在前）
+            for (MemTable memTable : sv.getImmutableMemTables()) {
+                rangeSequence = Math.max(rangeSequence, memTable.maxCoveringSequence(key, snapshot));
+                KeyValue e = memTable.getEntry(key, snapshot);
                 if (e != null) {
-                    if (e.isDeleted())
-                        return null;
-                    return e.getValue();
+                    return resolve(key, e, rangeSequence);
                 }
             }
 
-            // 3. 查询SSTable（按创建时间倒序）
-            List<SSTable> sortedSSTables = new ArrayList<>(ssTables);
-            sortedSSTables.sort((a, b) -> Long.compare(b.getCreationTime(), a.getCreationTime()));
-
-            for (SSTable ssTable : sortedSSTables) {
-                KeyValue e = ssTable.getEntryRaw(key);
-                if (e != null) {
-                    if (e.isDeleted())
-                        return null;
-                    return e.getValue();
+            // 3. SSTable（按最大序号从大到小），过滤器哈希只计算一次，各 SSTable 共用
+            // 分层压缩后深层文件的最大序号可能大于持有更新版本的浅层文件，命中后继续检查可能更新的表
+            long keyHash = BlockedBloomFilter.hash(key);
+            KeyValue found = null;
+            for (SSTable ssTable : sv.getSSTables()) {
+                long newest = Math.max(rangeSequence, found == null ? 0 : found.getSequence());
+                if (newest > 0 && ssTable.getMaxSequence() < newest) {
+                    break;
+                }
+                // 整张表都比快照新
+                if (ssTable.getMinSequence() > snapshot || !ssTable.mayContainKey(key)) {
+                    continue;
+                }
+                rangeSequence = Math.max(rangeSequence, ssTable.maxCoveringSequence(key, snapshot));
+                KeyValue e = ssTable.getEntryRaw(key, keyHash, snapshot);
+                if (e != null && (found == null || e.getSequence() > found.getSequence())) {
+                    found = e;
                 }
             }
-
-            return null;
+            return resolve(key, found, rangeSequence);
         } finally {
-            lock.readLock().unlock();
-            long end = System.nanoTime();
-            metrics.recordRead(end - start);
+            sv.release();
+        }
+    }
+
+    /**
+     * 找到的版本被序号更大的范围墓碑覆盖时，按该序号返回一个墓碑
+     */
+    private static KeyValue resolve(String key, KeyValue found, long rangeSequence) {
+        if (rangeSequence == 0 || (found != null && found.getSequence() > rangeSequence)) {
+            return found;
+        }
+        return KeyValue.createTombstone(key, rangeSequence);
+    }
+
+    /**
+     * 固定当前读取视图；读到刚被替换并释放的视图时重试
+     */
+    private SuperVersion acquireSuperVersion() {
+        while (true) {
+            SuperVersion sv = superVersion;
+            if (sv.tryAcquire()) {
+                return sv;
+            }
+            if (sv == superVersion) {
+                // 视图已释放且没有被替换，只有关闭后才会出现
+                throw new IllegalStateException("LSMTree is closed");
+            }
+        }
+    }
+
+    /**
+     * 按当前组件发布新的读取视图（调用前必须已获取写锁）
+     */
+    private void installSuperVersion() {
+        List<MemTable> immutables = new ArrayList<>(immutableMemTables);
+        Collections.reverse(immutables);
+        List<SSTable> tables = new ArrayList<>(ssTables);
+        tables.sort((a, b) -> {
+            int c = Long.compare(b.getMaxSequence(), a.getMaxSequence());
+            return c != 0 ? c : Long.compare(b.getCreationTime(), a.getCreationTime());
+        });
+        SuperVersion old = superVersion;
+        superVersion = new SuperVersion(activeMemTable, immutables, tables);
+        if (old != null) {
+            old.release();
         }
     }
 
-    public java.util.Iterator<KeyValue> range(String startKey, String endKey, boolean includeStart, boolean includeEnd)
+    /**
+     * 范围查询：返回流式的 RangeIterator，按需从各数据源读取，可以随时停止；
+     * 没有读完时调用 close 释放固定的读取视图
+     */
+    public RangeIterator range(String startKey, String endKey, boolean includeStart, boolean includeEnd)
             throws java.io.IOException {
+        return openRange(startKey, endKey, includeStart, includeEnd, false, Long.MAX_VALUE);
+    }
+
+    /**
+     * 按快照范围查询：多个键读到的都是快照创建时的同一时刻
+     */
+    public RangeIterator range(String startKey, String endKey, boolean includeStart, boolean includeEnd,
+            Snapshot snapshot) throws java.io.IOException {
+        return openRange(startKey, endKey, includeStart, includeEnd, false, snapshotSequence(snapshot));
+    }
+
+    /**
+     * 逆序范围查询 [startKey, endKey]：各数据源直接逆向读取，按键降序流式返回
+     */
+    public RangeIterator rangeReverse(String startKey, String endKey) throws java.io.IOException {
+        return openRange(startKey, endKey, true, true, true, Long.MAX_VALUE);
+    }
+
+    /**
+     * 创建可定位的双向迭代器，固定当前的 MemTable 和 SSTable；用完需要 close
+     */
+    public DBIterator newIterator() throws java.io.IOException {
+        return newIterator(Long.MAX_VALUE);
+    }
+
+    /**
+     * 创建按快照读取的双向迭代器
+     */
+    public DBIterator newIterator(Snapshot snapshot) throws java.io.IOException {
+        return newIterator(snapshotSequence(snapshot));
+    }
+
+    private DBIterator newIterator(long snapshot) throws java.io.IOException {
+        return openView(snapshot, (sv, sequence, pin) -> new DBIterator(sv, pin, sequence));
+    }
+
+    private RangeIterator openRange(String startKey, String endKey, boolean includeStart, boolean includeEnd,
+            boolean reverse, long snapshot) throws java.io.IOException {
         if (startKey != null && endKey != null && startKey.compareTo(endKey) > 0) {
             throw new IllegalArgumentException("startKey > endKey");
         }
+        return openView(snapshot, (sv, sequence, pin) -> new RangeIterator(sv, pin, startKey, endKey, includeStart,
+                includeEnd, reverse, sequence));
+    }
+
+    /**
+     * 固定读取视图和读取序号后交给 reader 构造直接遍历活跃 MemTable 的迭代器，不复制其中的记录
+     * 按快照读取时读取序号就是快照序号；读取最新数据时取当前最新序号并登记到活跃 MemTable 上，
+     * 之后的覆盖写入不再删除它看得到的版本，迭代时跳过更新的版本即可
+     * 不加锁时登记后核对：期间有写入（版本可能在登记前被删除、最新序号的记录可能尚未插入）或批次时加读锁重来；
+     * reader 构造成功后由返回的迭代器负责释放视图和登记
+     */
+    private <T> T openView(long snapshot, ViewReader<T> reader) throws IOException {
+        if (snapshot != Long.MAX_VALUE) {
+            // 快照在读锁内创建，序号之前的写入都已进入 MemTable，更新的版本由快照保留
+            return open(acquireSuperVersion(), snapshot, null, reader);
+        }
+        long stamp = batchStamp;
+        if ((stamp & 1) == 0) {
+            SuperVersion sv = acquireSuperVersion();
+            long sequence = lastSequence.get();
+            Snapshot pin = sv.getActiveMemTable().pin(sequence);
+            if (batchStamp == stamp && !lock.isWriteLocked() && lastSequence.get() == sequence) {
+                return open(sv, sequence, pin, reader);
+            }
+            pin.close();
+            sv.release();
+        }
         lock.readLock().lock();
         try {
-            java.util.List<java.util.List<KeyValue>> sources = new java.util.ArrayList<>();
-            sources.add(activeMemTable.getRangeEntriesRaw(startKey, endKey, includeStart, includeEnd));
-            for (int i = immutableMemTables.size() - 1; i >= 0; i--) {
-                sources.add(immutableMemTables.get(i).getRangeEntriesRaw(startKey, endKey, includeStart, includeEnd));
-            }
-            java.util.List<SSTable> tables = new java.util.ArrayList<>(ssTables);
-            tables.sort((x, y) -> Long.compare(y.getCreationTime(), x.getCreationTime()));
-            for (SSTable t : tables) {
-                sources.add(t.getRangeEntries(startKey, endKey, includeStart, includeEnd));
-            }
-
-            java.util.List<KeyValue> out = new java.util.ArrayList<>();
-            java.util.List<Integer> idx = new java.util.ArrayList<>();
-            for (int i = 0; i < sources.size(); i++)
-                idx.add(0);
-            java.util.Comparator<int[]> cmp = (a, b) -> {
-                KeyValue ka = sources.get(a[0]).get(a[1]);
-                KeyValue kb = sources.get(b[0]).get(b[1]);
-                int kc = ka.getKey().compareTo(kb.getKey());
-                if (kc != 0)
-                    return kc;
-                return Long.compare(kb.getTimestamp(), ka.getTimestamp());
-            };
-            java.util.PriorityQueue<int[]> pq = new java.util.PriorityQueue<>(cmp);
-            for (int s = 0; s < sources.size(); s++) {
-                if (!sources.get(s).isEmpty())
-                    pq.add(new int[] { s, 0 });
-            }
-            while (!pq.isEmpty()) {
-                int[] top = pq.poll();
-                KeyValue best = sources.get(top[0]).get(top[1]);
-                String k = best.getKey();
-                if (top[1] + 1 < sources.get(top[0]).size())
-                    pq.add(new int[] { top[0], top[1] + 1 });
-                while (!pq.isEmpty()) {
-                    int[] n = pq.peek();
-                    KeyValue kvn = sources.get(n[0]).get(n[1]);
-                    if (!kvn.getKey().equals(k))
-                        break;
-                    pq.poll();
-                    if (kvn.getTimestamp() > best.getTimestamp())
-                        best = kvn;
-                    if (n[1] + 1 < sources.get(n[0]).size())
-                        pq.add(new int[] { n[0], n[1] + 1 });
-                }
-                if (!best.isDeleted())
-                    out.add(best);
-            }
-            out.sort((x, y) -> x.getKey().compareTo(y.getKey()));
-            return out.iterator();
+            SuperVersion sv = acquireSuperVersion();
+            long sequence = lastSequence.get();
+            return open(sv, sequence, sv.getActiveMemTable().pin(sequence), reader);
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    public java.util.Iterator<KeyValue> rangeReverse(String startKey, String endKey) throws java.io.IOException {
-        java.util.Iterator<KeyValue> it = range(startKey, endKey, true, true);
-        java.util.List<KeyValue> list = new java.util.ArrayList<>();
-        while (it.hasNext())
-            list.add(it.next());
-        list.sort((x, y) -> y.getKey().compareTo(x.getKey()));
-        return list.iterator();
+    private static <T> T open(SuperVersion sv, long sequence, Snapshot pin, ViewReader<T> reader)
+            throws IOException {
+        try {
+            return reader.open(sv, sequence, pin);
+        } catch (IOException | RuntimeException e) {
+            if (pin != null) {
+                pin.close();
+            }
+            sv.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 在固定的读取视图上按读取序号构造迭代器；pin 为活跃 MemTable 上的登记，按快照读取时为 null
+     */
+    @FunctionalInterface
+    private interface ViewReader<T> {
+        T open(SuperVersion sv, long sequence, Snapshot pin) throws IOException;
     }
 
     // 范围检查辅助方法 - 保留以备将来使用
@@ -273,139 +616,302 @@ public class LSMTree implements AutoCloseable {
     }
 
     /**
-     * 刷新MemTable到磁盘
+     * 切换 MemTable（调用前必须已获取写锁）
+     * 锁内只做切换和 WAL 轮转，SSTable 由刷盘线程在锁外生成；
+     * 不可变 MemTable 达到上限时阻塞写入，等待期间释放写锁
      */
     private void flushMemTable() throws IOException {
+        int maxImmutable = options.getMaxImmutableMemTables();
+        if (immutableMemTables.size() >= maxImmutable) {
+            long stallStart = System.nanoTime();
+            writeStalled = true;
+            writeStallCount.incrementAndGet();
+            try {
+                while (immutableMemTables.size() >= maxImmutable) {
+                    if (backgroundFlushError != null) {
+                        throw new IOException("Background flush failed", backgroundFlushError);
+                    }
+                    flushDone.awaitUninterruptibly();
+                }
+            } finally {
+                writeStalled = false;
+                metrics.recordWriteStall(System.nanoTime() - stallStart);
+            }
+        }
+
+        // 等待期间其他写入者可能已完成切换
         if (activeMemTable.isEmpty()) {
             return;
         }
 
-        // 将活跃MemTable转为不可变
+        WriteAheadLog newWal = openWal(walNumber.incrementAndGet());
         immutableMemTables.add(activeMemTable);
-        activeMemTable = new MemTable(memTableMaxSize);
+        immutableWals.add(wal);
+        activeMemTable = new MemTable(memTableMaxSize, snapshots);
+        wal = newWal;
+        installSuperVersion();
+
+        flushExecutor.execute(this::flushImmutableMemTables);
+    }
 
-        // 同步刷盘，避免死锁
-        flushImmutableMemTable();
+    private WriteAheadLog openWal(long number) throws IOException {
+        return new WriteAheadLog(String.format("%s/wal_%d.log", dataDir, number), options.getWalDurability());
     }
 
     /**
-     * 刷新不可变MemTable到SSTable（调用前必须已获取写锁）
+     * 刷盘线程：按切换顺序把不可变 MemTable 写成 SSTable
+     * 写文件时不持有锁，仅在发布新 SSTable 时短暂获取写锁
      */
-    private void flushImmutableMemTable() throws IOException {
-        if (immutableMemTables.isEmpty()) {
-            return;
-        }
-
-        MemTable memTable = immutableMemTables.remove(0);
-        List<KeyValue> entries = memTable.getAllEntries();
-
-        if (!entries.isEmpty()) {
-            long flushStart = System.nanoTime();
-            // 排序
-            entries.sort(KeyValue::compareTo);
+    private void flushImmutableMemTables() {
+        while (true) {
+            MemTable memTable;
+            WriteAheadLog memTableWal;
+            lock.readLock().lock();
+            try {
+                if (immutableMemTables.isEmpty()) {
+                    return;
+                }
+                memTable = immutableMemTables.get(0);
+                memTableWal = immutableWals.get(0);
+            } finally {
+                lock.readLock().unlock();
+            }
 
-            // 创建SSTable文件
-            String fileName = String.format("%s/sstable_level0_%d.db",
-                    dataDir, System.currentTimeMillis());
+            SSTable newSSTable = null;
+            boolean logging = false;
             try {
-                SSTable newSSTable = new SSTable(fileName, entries, compressionStrategy);
-                ssTables.add(newSSTable);
-                wal.checkpoint();
+                newSSTable = writeSSTable(memTable);
+                // 先记入 MANIFEST 再发布，之后崩溃时重启能找回这张表；
+                // 表的内容在写出时已落盘，记入前再落盘目录项，否则断电后 MANIFEST 可能指向不存在的文件
+                Manifest.VersionEdit edit = new Manifest.VersionEdit().setLastSequence(lastSequence.get());
+                if (newSSTable != null) {
+                    Manifest.syncDirectory(dataDir);
+                    edit.addFile(newSSTable.toFileMetaData());
+                }
+                logging = true;
+                manifest.logEdit(edit);
             } catch (IOException e) {
+                // 记入 MANIFEST 失败时变更可能已经落盘，表不能删除；没有记入的话重启时作为孤儿清理
+                if (newSSTable != null && !logging) {
+                    try {
+                        newSSTable.delete();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
                 metrics.recordFlushFailure();
-                throw e;
+                lock.writeLock().lock();
+                try {
+                    backgroundFlushError = e;
+                    flushDone.signalAll();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                return;
+            }
+
+            // 数据已在落盘的 SSTable 中并记入 MANIFEST，对应的 WAL 不再需要；在发布前删除，等待刷盘的线程醒来时日志已清理
+            try {
+                memTableWal.delete();
+            } catch (IOException e) {
+                e.printStackTrace(); // 实际项目中应该使用日志
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (newSSTable != null) {
+                    ssTables.add(newSSTable);
+                }
+                immutableMemTables.remove(0);
+                immutableWals.remove(0);
+                installSuperVersion();
+                flushDone.signalAll();
+                maybeScheduleCompaction();
+            } finally {
+                lock.writeLock().unlock();
             }
-            long flushEnd = System.nanoTime();
-            long bytes = new java.io.File(fileName).length();
-            metrics.recordFlush(flushEnd - flushStart, bytes);
         }
     }
 
     /**
-     * 启动后台压缩任务
+     * 把不可变 MemTable 写成 level0 SSTable，MemTable 为空时返回 null
      */
-    // 后台压缩任务 - 暂时禁用以避免测试线程问题
-    @SuppressWarnings("unused")
-    private void startBackgroundCompaction() {
-        compactionExecutor.submit(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    Thread.sleep(30000); // 每30秒检查一次
+    private SSTable writeSSTable(MemTable memTable) throws IOException {
+        List<KeyValue> entries = memTable.getVisibleEntries();
+        List<RangeTombstone> rangeTombstones = memTable.getRangeTombstones().getTombstones();
+        if (entries.isEmpty() && rangeTombstones.isEmpty()) {
+            return null;
+        }
+        long flushStart = System.nanoTime();
+        // 排序
+        entries.sort(KeyValue::compareTo);
+
+        // 创建SSTable文件（同一毫秒内多次刷盘时用序号区分文件名）
+        String fileName = String.format("%s/sstable_level0_%d_%d.db",
+                dataDir, System.currentTimeMillis(), flushSequence.incrementAndGet());
+        SSTable newSSTable = new SSTable(fileName, entries, rangeTombstones, compressionStrategy, options);
+        long flushEnd = System.nanoTime();
+        long bytes = new java.io.File(fileName).length();
+        metrics.recordFlush(flushEnd - flushStart, bytes);
+        return newSSTable;
+    }
 
-                    if (compactionStrategy.needsCompaction(ssTables)) {
-                        performCompaction();
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
+    /**
+     * 按压缩策略挑选互不冲突的任务提交到压缩线程池，直到线程占满或没有可做的任务
+     * 调用方需持有写锁
+     */
+    private void maybeScheduleCompaction() {
+        if (closing) {
+            return;
+        }
+        while (runningCompactions < options.getCompactionThreads()) {
+            LeveledCompactionStrategy.CompactionTask task = compactionStrategy.pickCompaction(ssTables,
+                    compactingTables);
+            if (task == null) {
+                return;
+            }
+            task.setSnapshots(snapshots.toArray());
+            compactingTables.addAll(task.getInputs());
+            runningCompactions++;
+            compactionExecutor.execute(() -> runCompaction(task));
+        }
+    }
+
+    /**
+     * 执行一个压缩任务：不持锁合并写出新表，再在写锁内一次性替换输入并安装新的读取视图
+     * 失败时输入保持不变，等下次刷盘再重新调度
+     */
+    private void runCompaction(LeveledCompactionStrategy.CompactionTask task) {
+        long start = System.nanoTime();
+        List<SSTable> inputs = task.getInputs();
+        if (task.isTrivialMove()) {
+            finishCompaction(inputs, trivialMove(task.getTables(), task.getLevel() + 1, start));
+            return;
+        }
+        List<SSTable> outputs = null;
+        try {
+            outputs = compactionStrategy.runCompaction(task);
+            logCompaction(inputs, outputs);
+        } catch (IOException | RuntimeException e) {
+            // 合并失败时压缩已删除自己写出的文件；记入 MANIFEST 失败时变更可能已经落盘，输出可能已被引用，
+            // 只放弃安装，不删除文件（没有记入的重启时作为孤儿清理）
+            outputs = null;
+            metrics.recordCompactionFailure();
+            e.printStackTrace(); // 实际项目中应该使用日志
+        }
+
+        if (outputs != null) {
+            lock.writeLock().lock();
+            try {
+                ssTables.removeAll(inputs);
+                ssTables.addAll(outputs);
+                installSuperVersion();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            long bytesOut = 0L;
+            for (SSTable t : outputs) {
+                bytesOut += t.getFileSize();
+            }
+            metrics.recordCompaction(System.nanoTime() - start, bytesOut);
+
+            // 旧表已不在读取视图中，仍在进行的读取结束后文件才会真正删除
+            for (SSTable t : inputs) {
+                try {
+                    t.delete();
+                } catch (IOException e) {
                     e.printStackTrace(); // 实际项目中应该使用日志
                 }
             }
-        });
+        }
+
+        finishCompaction(inputs, outputs != null);
     }
 
     /**
-     * 执行压缩操作
+     * 平移：只把新层级记入 MANIFEST 并更新表的层级，数据文件不动
      */
-    private void performCompaction() throws IOException {
-        long start = System.nanoTime();
+    private boolean trivialMove(List<SSTable> tables, int targetLevel, long start) {
+        // 同名文件的新记录覆盖旧的层级
+        Manifest.VersionEdit edit = new Manifest.VersionEdit();
+        for (SSTable t : tables) {
+            edit.addFile(t.toFileMetaData().withLevel(targetLevel));
+        }
+        try {
+            manifest.logEdit(edit);
+        } catch (IOException e) {
+            metrics.recordCompactionFailure();
+            e.printStackTrace(); // 实际项目中应该使用日志
+            return false;
+        }
         lock.writeLock().lock();
-        long bytesBeforeCompaction = 0L;
         try {
-            for (SSTable t : ssTables) {
-                java.io.File f = new java.io.File(t.getFilePath());
-                if (f.exists())
-                    bytesBeforeCompaction += f.length();
-            }
-            List<SSTable> newSSTables;
-            try {
-                newSSTables = compactionStrategy.compact(ssTables);
-            } catch (IOException e) {
-                metrics.recordCompactionFailure();
-                throw e;
+            for (SSTable t : tables) {
+                t.setLevel(targetLevel);
             }
-            ssTables.clear();
-            ssTables.addAll(newSSTables);
         } finally {
             lock.writeLock().unlock();
-            long end = System.nanoTime();
-            long bytesOut = 0L;
-            for (SSTable t : ssTables) {
-                java.io.File f = new java.io.File(t.getFilePath());
-                if (f.exists())
-                    bytesOut += f.length();
+        }
+        metrics.recordCompaction(System.nanoTime() - start, 0L);
+        return true;
+    }
+
+    /**
+     * 压缩任务结束：释放输入的压缩标记，成功时继续调度
+     */
+    private void finishCompaction(List<SSTable> inputs, boolean succeeded) {
+        lock.writeLock().lock();
+        try {
+            compactingTables.removeAll(inputs);
+            runningCompactions--;
+            if (succeeded) {
+                maybeScheduleCompaction();
             }
-            long bytesCompacted = bytesOut;
-            metrics.recordCompaction(end - start, bytesCompacted);
+            compactionDone.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-            // 调试信息：记录压缩效率
-            if (bytesBeforeCompaction > 0) {
-                double compressionRatio = (double) bytesOut / bytesBeforeCompaction;
-                double spaceSaved = 1.0 - compressionRatio;
-                System.out.printf(
-                        "[DEBUG] Compaction completed: before=%,d bytes, after=%,d bytes, ratio=%.2f, saved=%.1f%%\n",
-                        bytesBeforeCompaction, bytesOut, compressionRatio, spaceSaved * 100);
+    /**
+     * 触发一次调度并等待所有后台压缩结束
+     */
+    public void waitForCompactions() {
+        lock.writeLock().lock();
+        try {
+            maybeScheduleCompaction();
+            while (runningCompactions > 0) {
+                compactionDone.awaitUninterruptibly();
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
+    /**
+     * 把一次压缩的输入和输出作为一条版本变更记入 MANIFEST
+     * 输出表的内容在写出时已落盘，记入前再落盘目录项；记入之后输入才会被删除
+     */
+    private void logCompaction(List<SSTable> inputs, List<SSTable> outputs) throws IOException {
+        if (!outputs.isEmpty()) {
+            Manifest.syncDirectory(dataDir);
+        }
+        Manifest.VersionEdit edit = new Manifest.VersionEdit();
+        for (SSTable t : inputs) {
+            edit.deleteFile(new File(t.getFilePath()).getName());
+        }
+        for (SSTable t : outputs) {
+            edit.addFile(t.toFileMetaData());
+        }
+        manifest.logEdit(edit);
+    }
+
     private int countLevel(int level) {
         int c = 0;
         for (SSTable t : ssTables) {
-            String path = t.getFilePath();
-            int idx = path.indexOf("level");
-            if (idx >= 0) {
-                int s = idx + 5;
-                int e = path.indexOf('_', s);
-                if (e > s) {
-                    try {
-                        int lv = Integer.parseInt(path.substring(s, e));
-                        if (lv == level)
-                            c++;
-                    } catch (Exception ignored) {
-                    }
-                }
+            if (t.getLevel() == level) {
+                c++;
             }
         }
         return c;
@@ -420,31 +926,140 @@ public class LSMTree implements AutoCloseable {
     }
 
     /**
-     * 从WAL和SSTable恢复数据
+     * 最后分配的写入序号
      */
-    private void recover() throws IOException {
-        // 1. 恢复SSTable
-        File dir = new File(dataDir);
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".db"));
+    public long getLastSequence() {
+        return lastSequence.get();
+    }
 
-        if (files != null) {
-            Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    /**
+     * 写入当前是否因等待后台刷盘而阻塞
+     */
+    public boolean isWriteStalled() {
+        return writeStalled;
+    }
 
-            for (File file : files) {
-                SSTable ssTable = new SSTable(file.getAbsolutePath());
+    /**
+     * 累计写阻塞次数
+     */
+    public long getWriteStallCount() {
+        return writeStallCount.get();
+    }
+
+    /**
+     * 从MANIFEST、SSTable和WAL恢复数据
+     */
+    private void recover() throws IOException {
+        // 1. 恢复SSTable：有 MANIFEST 时只回放它，表的索引和过滤器在第一次读取时才加载
+        File dir = new File(dataDir);
+        if (Manifest.exists(dataDir)) {
+            manifest = Manifest.open(dataDir);
+            Set<String> live = new HashSet<>();
+            for (Manifest.FileMetaData meta : manifest.getFiles()) {
+                live.add(meta.getFileName());
+                SSTable ssTable = new SSTable(new File(dataDir, meta.getFileName()).getAbsolutePath(), meta, options);
                 ssTables.add(ssTable);
+                lastSequence.set(Math.max(lastSequence.get(), ssTable.getMaxSequence()));
             }
+            lastSequence.set(Math.max(lastSequence.get(), manifest.getLastSequence()));
+
+            // 写出后未记入 MANIFEST 的表（刷盘或压缩中途崩溃）不属于任何版本，直接删除；
+            // 丢弃了写到一半的尾部记录时不清理，那条变更里的表是否已被引用无法确定，下次打开时 MANIFEST 已完整再清理
+            File[] orphans = manifest.hasTornTail() ? null
+                    : dir.listFiles((d, name) -> name.startsWith("sstable_") && name.endsWith(".db")
+                            && !live.contains(name));
+            if (orphans != null) {
+                for (File orphan : orphans) {
+                    Files.deleteIfExists(orphan.toPath());
+                }
+            }
+        } else {
+            // 没有 MANIFEST 的旧数据目录：按修改时间打开全部 .db 文件，再写入 MANIFEST 完成迁移
+            File[] files = dir.listFiles((d, name) -> name.endsWith(".db"));
+            if (files != null) {
+                Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+                for (File file : files) {
+                    SSTable ssTable = new SSTable(file.getAbsolutePath(), options);
+                    ssTables.add(ssTable);
+                    lastSequence.set(Math.max(lastSequence.get(), ssTable.getMaxSequence()));
+                }
+            }
+            manifest = Manifest.open(dataDir);
+            Manifest.VersionEdit edit = new Manifest.VersionEdit().setLastSequence(lastSequence.get());
+            for (SSTable t : ssTables) {
+                edit.addFile(t.toFileMetaData());
+            }
+            manifest.logEdit(edit);
         }
 
-        // 2. 从WAL恢复未刷盘的数据
-        List<WriteAheadLog.LogEntry> entries = wal.recover();
-        for (WriteAheadLog.LogEntry entry : entries) {
-            if (entry.getOperation() == WriteAheadLog.Operation.PUT) {
-                activeMemTable.put(entry.getKey(), entry.getValue());
-            } else if (entry.getOperation() == WriteAheadLog.Operation.DELETE) {
-                activeMemTable.delete(entry.getKey());
+        // 2. 按编号顺序回放WAL（旧版本的 wal.log 最早），恢复未刷盘的数据
+        List<File> walFiles = new ArrayList<>();
+        File legacyWal = new File(dataDir, "wal.log");
+        if (legacyWal.exists()) {
+            walFiles.add(legacyWal);
+        }
+        File[] numbered = dir.listFiles((d, name) -> name.matches("wal_\\d+\\.log"));
+        if (numbered != null) {
+            Arrays.sort(numbered, Comparator.comparingLong(LSMTree::walFileNumber));
+            walFiles.addAll(Arrays.asList(numbered));
+            if (numbered.length > 0) {
+                walNumber.set(walFileNumber(numbered[numbered.length - 1]));
             }
         }
+
+        if (walFiles.size() == 1 && walFiles.get(0) != legacyWal) {
+            // 只有一个日志时直接作为活跃WAL继续追加
+            this.wal = openWal(walNumber.get());
+            replay(assignSequences(wal.recover()));
+            return;
+        }
+
+        // 多个日志（刷盘未完成时崩溃）合并写入新的活跃WAL，落盘后再删除旧文件
+        List<WriteAheadLog.LogEntry> entries = new ArrayList<>();
+        for (File f : walFiles) {
+            WriteAheadLog old = new WriteAheadLog(f.getAbsolutePath());
+            entries.addAll(old.recover());
+            old.close();
+        }
+        entries = assignSequences(entries);
+        this.wal = openWal(walNumber.incrementAndGet());
+        long lastSeq = 0;
+        for (WriteAheadLog.LogEntry entry : entries) {
+            lastSeq = wal.enqueue(entry);
+        }
+        wal.sync(lastSeq, WriteAheadLog.Durability.FSYNC);
+        replay(entries);
+        for (File f : walFiles) {
+            Files.deleteIfExists(f.toPath());
+        }
+    }
+
+    private static long walFileNumber(File f) {
+        String name = f.getName();
+        return Long.parseLong(name.substring("wal_".length(), name.length() - ".log".length()));
+    }
+
+    /**
+     * 未分配序号的条目（旧文本格式的 WAL、单独写入 WAL 的条目）按回放顺序接在已恢复的最新序号之后分配
+     */
+    private List<WriteAheadLog.LogEntry> assignSequences(List<WriteAheadLog.LogEntry> entries) {
+        List<WriteAheadLog.LogEntry> res = new ArrayList<>(entries.size());
+        long next = lastSequence.get();
+        for (WriteAheadLog.LogEntry entry : entries) {
+            next = Math.max(next, entry.getSequence());
+        }
+        for (WriteAheadLog.LogEntry entry : entries) {
+            res.add(entry.getSequence() == KeyValue.UNASSIGNED_SEQUENCE ? entry.withSequence(++next) : entry);
+        }
+        return res;
+    }
+
+    private void replay(List<WriteAheadLog.LogEntry> entries) {
+        for (WriteAheadLog.LogEntry entry : entries) {
+            apply(activeMemTable, entry);
+            lastSequence.set(Math.max(lastSequence.get(), entry.getSequence()));
+        }
     }
 
     /**
@@ -453,14 +1068,23 @@ public class LSMTree implements AutoCloseable {
     public void flush() throws IOException {
         lock.writeLock().lock();
         try {
-            // 刷新活跃MemTable
+            // 上次后台刷盘失败时重新提交剩余的不可变MemTable
+            if (backgroundFlushError != null && !immutableMemTables.isEmpty()) {
+                backgroundFlushError = null;
+                flushExecutor.execute(this::flushImmutableMemTables);
+            }
+
+            // 切换活跃MemTable
             if (!activeMemTable.isEmpty()) {
                 flushMemTable();
             }
 
-            // 刷新所有剩余的不可变MemTable
+            // 等待所有不可变MemTable刷盘完成
             while (!immutableMemTables.isEmpty()) {
-                flushImmutableMemTable();
+                if (backgroundFlushError != null) {
+                    throw new IOException("Background flush failed", backgroundFlushError);
+                }
+                flushDone.awaitUninterruptibly();
             }
         } finally {
             lock.writeLock().unlock();
@@ -473,13 +1097,35 @@ public class LSMTree implements AutoCloseable {
     public void close() throws IOException {
         // 刷盘所有内存数据
         flush();
+        flushExecutor.shutdown();
 
-        // 关闭WAL
+        // 停止调度并等待进行中的压缩安装结果
+        lock.writeLock().lock();
+        try {
+            closing = true;
+            while (runningCompactions > 0) {
+                compactionDone.awaitUninterruptibly();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compactionExecutor.shutdown();
+
+        // 关闭WAL和MANIFEST
         wal.close();
+        manifest.close();
 
-        // 立即关闭线程池，不等待
-        compactionExecutor.shutdownNow();
+        // 释放读取视图，被替换的SSTable随之删除
+        superVersion.release();
 
+        // 释放SSTable的内存映射
+        for (SSTable t : ssTables) {
+            t.close();
+        }
+
+        if (metricsCache != null) {
+            metricsCache.unbindMetrics();
+        }
         MetricsHttpServer.stopIfRunning();
     }
 
@@ -7,4 +7,5 @@ public interface LSMTreeMetrics {
     void recordFlush(long durationNanos, long bytesFlushed);
     void recordCompactionFailure();
     void recordFlushFailure();
+    void recordWriteStall(long durationNanos);
 }
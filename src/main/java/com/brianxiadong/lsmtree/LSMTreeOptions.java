@@ -0,0 +1,106 @@
+package com.brianxiadong.lsmtree;
+
+/**
+ * LSM Tree 配置项
+ * 同一个实例可传给多个 LSMTree（如 PartitionedLSMTree 的各个分片），共享其中的块缓存
+ */
+public class LSMTreeOptions {
+    // 数据块缓存；为 null 时每次读取都直接访问文件。监控指标由使用它的 LSMTree 按数据目录命名
+    private BlockCache blockCache = new BlockCache(BlockCache.DEFAULT_CAPACITY_BYTES);
+
+    // 打开块格式 SSTable 时用 mmap 映射整个文件，读取直接从映射内存解码
+    private boolean mmapReads = false;
+
+    // 新写入 SSTable 的布隆过滤器每键位数，10 位约 1% 误判率
+    private int bloomBitsPerKey = BlockedBloomFilter.DEFAULT_BITS_PER_KEY;
+
+    // 未指定时每次写入的 WAL 持久化级别
+    private WriteAheadLog.Durability walDurability = WriteAheadLog.Durability.FLUSH;
+
+    // 等待后台刷盘的不可变 MemTable 上限，达到后写入阻塞直到有刷盘完成
+    private int maxImmutableMemTables = 2;
+
+    // 后台压缩线程数，互不冲突的压缩任务并行执行；为 0 时不自动压缩
+    private int compactionThreads = 2;
+
+    // 单个压缩任务最多切分成的键区间数，各区间在 fork/join 线程池中并行合并；1 表示不切分
+    private int maxSubcompactions = 1;
+
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    public LSMTreeOptions setBlockCache(BlockCache blockCache) {
+        this.blockCache = blockCache;
+        return this;
+    }
+
+    public boolean isMmapReads() {
+        return mmapReads;
+    }
+
+    public LSMTreeOptions setMmapReads(boolean mmapReads) {
+        this.mmapReads = mmapReads;
+        return this;
+    }
+
+    public int getBloomBitsPerKey() {
+        return bloomBitsPerKey;
+    }
+
+    public LSMTreeOptions setBloomBitsPerKey(int bloomBitsPerKey) {
+        if (bloomBitsPerKey <= 0) {
+            throw new IllegalArgumentException("bloomBitsPerKey must be positive");
+        }
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        return this;
+    }
+
+    public WriteAheadLog.Durability getWalDurability() {
+        return walDurability;
+    }
+
+    public LSMTreeOptions setWalDurability(WriteAheadLog.Durability walDurability) {
+        if (walDurability == null) {
+            throw new IllegalArgumentException("walDurability cannot be null");
+        }
+        this.walDurability = walDurability;
+        return this;
+    }
+
+    public int getMaxImmutableMemTables() {
+        return maxImmutableMemTables;
+    }
+
+    public LSMTreeOptions setMaxImmutableMemTables(int maxImmutableMemTables) {
+        if (maxImmutableMemTables <= 0) {
+            throw new IllegalArgumentException("maxImmutableMemTables must be positive");
+        }
+        this.maxImmutableMemTables = maxImmutableMemTables;
+        return this;
+    }
+
+    public int getCompactionThreads() {
+        return compactionThreads;
+    }
+
+    public LSMTreeOptions setCompactionThreads(int compactionThreads) {
+        if (compactionThreads < 0) {
+            throw new IllegalArgumentException("compactionThreads must not be negative");
+        }
+        this.compactionThreads = compactionThreads;
+        return this;
+    }
+
+    public int getMaxSubcompactions() {
+        return maxSubcompactions;
+    }
+
+    public LSMTreeOptions setMaxSubcompactions(int maxSubcompactions) {
+        if (maxSubcompactions <= 0) {
+            throw new IllegalArgumentException("maxSubcompactions must be positive");
+        }
+        this.maxSubcompactions = maxSubcompactions;
+        return this;
+    }
+}
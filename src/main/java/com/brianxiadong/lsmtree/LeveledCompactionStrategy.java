@@ -3,188 +3,357 @@ package com.brianxiadong.lsmtree;
 import java.io.IOException;
 import java.util.*;
 
+/**
+ * 分层压缩策略
+ * L0 按文件数触发，整体与 L1 中重叠的文件合并；L1 及以上按字节数设定目标大小，
+ * 超出时轮流挑选本层一个文件，只与下一层中键范围重叠的文件合并，保持 L1+ 各层内文件互不重叠
+ * 输入互不相交的任务可由后台调度器并行执行
+ * 挑中的文件彼此不重叠、与下一层也没有重叠时为平移任务：只修改层级，不读写数据文件
+ * 合并时任务以外没有更旧版本的墓碑直接丢弃，删除的键不会一直占用空间
+ */
 public class LeveledCompactionStrategy implements CompactionStrategy {
+    // 层数，最后一层没有大小上限
+    public static final int NUM_LEVELS = 7;
+    public static final long DEFAULT_MAX_BYTES_FOR_LEVEL_BASE = 10L * 1024 * 1024;
+    private static final int ENTRIES_PER_TABLE = 10000;
+
     private final String dataDir;
     private final int maxLevelSize;
     private final int levelSizeMultiplier;
+    private final long maxBytesForLevelBase;
     private CompressionStrategy compressionStrategy = new NoneCompressionStrategy();
+    private LSMTreeOptions options;
+    // 每层上次压缩到的最大键，下次从其后的文件开始挑选
+    private final Map<Integer, String> compactPointers = new HashMap<>();
 
+    /**
+     * @param maxLevelSize        L0 文件数阈值
+     * @param levelSizeMultiplier 相邻层目标字节数的倍数
+     */
     public LeveledCompactionStrategy(String dataDir, int maxLevelSize, int levelSizeMultiplier) {
+        this(dataDir, maxLevelSize, levelSizeMultiplier, DEFAULT_MAX_BYTES_FOR_LEVEL_BASE);
+    }
+
+    /**
+     * @param maxBytesForLevelBase L1 目标字节数，Ln 为其乘以 levelSizeMultiplier^(n-1)
+     */
+    public LeveledCompactionStrategy(String dataDir, int maxLevelSize, int levelSizeMultiplier,
+            long maxBytesForLevelBase) {
         this.dataDir = dataDir;
         this.maxLevelSize = maxLevelSize;
         this.levelSizeMultiplier = levelSizeMultiplier;
+        this.maxBytesForLevelBase = maxBytesForLevelBase;
     }
 
     /**
      * 检查是否需要压缩
      */
     public boolean needsCompaction(List<SSTable> ssTables) {
-        Map<Integer, List<SSTable>> levelMap = groupByLevel(ssTables);
-
-        for (Map.Entry<Integer, List<SSTable>> entry : levelMap.entrySet()) {
-            int level = entry.getKey();
-            List<SSTable> tablesInLevel = entry.getValue();
-
-            int maxSize = level == 0 ? maxLevelSize : maxLevelSize * (int) Math.pow(levelSizeMultiplier, level);
-            if (tablesInLevel.size() > maxSize) {
-                return true;
-            }
-        }
-
-        return false;
+        return selectCompactionTask(ssTables) != null;
     }
 
     /**
      * 执行压缩操作
+     * 反复挑选并执行压缩任务直到各层都不超出目标；输入表在全部成功后才删除
      */
     public List<SSTable> compact(List<SSTable> ssTables) throws IOException {
-        Map<Integer, List<SSTable>> levelMap = groupByLevel(ssTables);
-        List<SSTable> newTables = new ArrayList<>();
-
-        for (Map.Entry<Integer, List<SSTable>> entry : levelMap.entrySet()) {
-            int level = entry.getKey();
-            List<SSTable> tablesInLevel = entry.getValue();
-
-            int maxSize = level == 0 ? maxLevelSize : maxLevelSize * (int) Math.pow(levelSizeMultiplier, level);
-
-            if (tablesInLevel.size() > maxSize) {
-                // 需要压缩这个级别
-                List<SSTable> compactedTables = compactLevel(tablesInLevel, level + 1);
-                newTables.addAll(compactedTables);
-
-                // 删除旧的SSTable文件
-                for (SSTable oldTable : tablesInLevel) {
-                    oldTable.delete();
+        List<SSTable> current = new ArrayList<>(ssTables);
+        Set<SSTable> consumed = new HashSet<>();
+        Set<SSTable> produced = new HashSet<>();
+        try {
+            CompactionTask task;
+            while ((task = pickCompaction(current, Collections.emptySet())) != null) {
+                if (task.isTrivialMove()) {
+                    for (SSTable t : task.getTables()) {
+                        t.setLevel(task.getLevel() + 1);
+                    }
+                    continue;
                 }
-            } else {
-                newTables.addAll(tablesInLevel);
+                List<SSTable> inputs = task.getInputs();
+                List<SSTable> outputs = runCompaction(task);
+                current.removeAll(inputs);
+                current.addAll(outputs);
+                consumed.addAll(inputs);
+                produced.addAll(outputs);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 已写出的中间结果作废，原输入保持不变
+            for (SSTable t : produced) {
+                t.delete();
             }
+            throw e;
+        }
+
+        // 输出的目录项落盘后再删除旧的SSTable文件
+        if (!produced.isEmpty()) {
+            Manifest.syncDirectory(dataDir);
         }
+        for (SSTable oldTable : consumed) {
+            oldTable.delete();
+        }
+        return current;
+    }
 
-        return newTables;
+    @Override
+    public List<SSTable> runCompaction(CompactionTask task) throws IOException {
+        return compactLevel(task.getInputs(), task.getLevel() + 1, task);
     }
 
     /**
      * 压缩指定级别的SSTable
+     * 流式归并输入表，边合并边写出，每个输出表最多 10000 条
      */
-    private List<SSTable> compactLevel(List<SSTable> tables, int targetLevel) throws IOException {
-        // 收集所有键值对
-        List<KeyValue> allEntries = new ArrayList<>();
-
-        for (SSTable table : tables) {
-            allEntries.addAll(table.getAllEntries());
-        }
-
-        // 合并排序并去重
-        List<KeyValue> mergedEntries = mergeAndDedup(allEntries);
+    private List<SSTable> compactLevel(List<SSTable> tables, int targetLevel, StreamingCompaction.TombstoneFilter tombstoneFilter)
+            throws IOException {
+        final long stamp = StreamingCompaction.nextFileStamp();
+        return StreamingCompaction.merge(tables,
+                i -> String.format("%s/sstable_level%d_%d_%d.db", dataDir, targetLevel, stamp, i * ENTRIES_PER_TABLE),
+                ENTRIES_PER_TABLE, compressionStrategy, options, tombstoneFilter);
+    }
 
-        // 分割成多个SSTable（如果数据太大）
-        List<SSTable> newTables = new ArrayList<>();
-        int entriesPerTable = 10000; // 每个SSTable的最大条目数
+    /**
+     * 查看当前得分最高的压缩任务，不推进压缩指针
+     */
+    public CompactionTask selectCompactionTask(List<SSTable> ssTables) {
+        return withOutsideTables(pick(ssTables, Collections.emptySet(), false), ssTables);
+    }
 
-        for (int i = 0; i < mergedEntries.size(); i += entriesPerTable) {
-            int endIndex = Math.min(i + entriesPerTable, mergedEntries.size());
-            List<KeyValue> tableEntries = mergedEntries.subList(i, endIndex);
+    @Override
+    public CompactionTask pickCompaction(List<SSTable> ssTables, Set<SSTable> compacting) {
+        return withOutsideTables(pick(ssTables, compacting, true), ssTables);
+    }
 
-            String fileName = String.format("%s/sstable_level%d_%d_%d.db",
-                    dataDir, targetLevel, System.currentTimeMillis(), i);
-            SSTable newTable = new SSTable(fileName, tableEntries, compressionStrategy);
-            newTables.add(newTable);
+    /**
+     * 记下任务以外、键范围与输入重叠且可能含有更旧版本的表，合并时据此判断墓碑能否丢弃
+     */
+    static CompactionTask withOutsideTables(CompactionTask task, List<SSTable> ssTables) {
+        if (task == null || task.isTrivialMove()) {
+            return task;
         }
-
-        return newTables;
+        List<SSTable> inputs = task.getInputs();
+        String smallest = smallestKeyOf(inputs);
+        String largest = largestKeyOf(inputs);
+        long maxSequence = 0;
+        for (SSTable t : inputs) {
+            maxSequence = Math.max(maxSequence, t.getMaxSequence());
+        }
+        Set<SSTable> inputSet = new HashSet<>(inputs);
+        List<SSTable> outside = new ArrayList<>();
+        for (SSTable t : ssTables) {
+            // 最小序号不小于输入最大序号的表只有更新的版本，不会被墓碑遮蔽
+            if (!inputSet.contains(t) && t.getMinSequence() < maxSequence && t.overlaps(smallest, largest)) {
+                outside.add(t);
+            }
+        }
+        task.setOutsideTables(outside);
+        return task;
     }
 
     /**
-     * 合并和去重键值对
-     * 保留每个键的最新版本
+     * 挑选压缩任务：按得分从高到低检查超过 1 的层，取第一个不与进行中任务冲突的任务
+     * L0 得分为文件数 / maxLevelSize，L1+ 为字节数 / 目标字节数，最后一层不参与
      */
-    private List<KeyValue> mergeAndDedup(List<KeyValue> entries) {
-        // 按键和时间戳排序
-        entries.sort(KeyValue::compareTo);
-
-        List<KeyValue> dedupedEntries = new ArrayList<>();
-        Map<String, KeyValue> latestEntries = new HashMap<>();
+    private CompactionTask pick(List<SSTable> ssTables, Set<SSTable> compacting, boolean advance) {
+        Map<Integer, List<SSTable>> levelMap = groupByLevel(ssTables);
 
-        // 保留每个键的最新版本
-        for (KeyValue entry : entries) {
-            String key = entry.getKey();
-            if (!latestEntries.containsKey(key) ||
-                    entry.getTimestamp() > latestEntries.get(key).getTimestamp()) {
-                latestEntries.put(key, entry);
+        Map<Integer, Double> scores = new HashMap<>();
+        for (Map.Entry<Integer, List<SSTable>> entry : levelMap.entrySet()) {
+            int level = entry.getKey();
+            if (level >= NUM_LEVELS - 1) {
+                continue;
+            }
+            double score = level == 0
+                    ? (double) entry.getValue().size() / maxLevelSize
+                    : (double) totalBytes(entry.getValue()) / maxBytesForLevel(level);
+            if (score > 1.0) {
+                scores.put(level, score);
             }
         }
+        List<Integer> levels = new ArrayList<>(scores.keySet());
+        levels.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+
+        for (int level : levels) {
+            List<SSTable> next = levelMap.getOrDefault(level + 1, Collections.emptyList());
+            if (level == 0) {
+                // L0 文件之间可能重叠，整体下推；同一时间只能有一个 L0 任务
+                List<SSTable> l0 = levelMap.get(0);
+                CompactionTask task = taskFor(0, l0, next, compacting);
+                if (task != null) {
+                    return task;
+                }
+                continue;
+            }
+            for (SSTable candidate : filesInPickOrder(level, levelMap.get(level))) {
+                CompactionTask task = taskFor(level, Collections.singletonList(candidate), next, compacting);
+                if (task != null) {
+                    if (advance) {
+                        compactPointers.put(level, candidate.getLargestKey());
+                    }
+                    return task;
+                }
+            }
+        }
+        return null; // 不需要压缩
+    }
 
-        // 保留最新版本（包含墓碑）
-        dedupedEntries.addAll(latestEntries.values());
-
-        // 最终排序
-        dedupedEntries.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+    /**
+     * 以 picked 为起点加上下一层重叠的文件组成任务；任一输入已在压缩中时返回 null
+     * 下一层没有重叠文件且 picked 彼此不重叠时标记为平移
+     */
+    private static CompactionTask taskFor(int level, List<SSTable> picked, List<SSTable> nextLevel,
+            Set<SSTable> compacting) {
+        for (SSTable t : picked) {
+            if (compacting.contains(t)) {
+                return null;
+            }
+        }
+        List<SSTable> overlapping = new ArrayList<>();
+        String smallest = smallestKeyOf(picked);
+        String largest = largestKeyOf(picked);
+        for (SSTable t : nextLevel) {
+            if (t.overlaps(smallest, largest)) {
+                if (compacting.contains(t)) {
+                    return null;
+                }
+                overlapping.add(t);
+            }
+        }
+        return new CompactionTask(level, picked, overlapping, overlapping.isEmpty() && disjoint(picked));
+    }
 
-        return dedupedEntries;
+    /**
+     * 一组表的键范围是否已知且两两不重叠
+     */
+    private static boolean disjoint(List<SSTable> tables) {
+        List<SSTable> sorted = new ArrayList<>();
+        for (SSTable t : tables) {
+            if (t.getSmallestKey() == null) {
+                // 键范围未知的表不能平移；空表没有数据，不影响重叠判断
+                if (!t.isKeyRangeKnown()) {
+                    return false;
+                }
+                continue;
+            }
+            sorted.add(t);
+        }
+        sorted.sort(Comparator.comparing(SSTable::getSmallestKey));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).getSmallestKey().compareTo(sorted.get(i - 1).getLargestKey()) <= 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * 按级别分组SSTable
+     * Ln 的目标字节数
      */
-    private Map<Integer, List<SSTable>> groupByLevel(List<SSTable> ssTables) {
-        Map<Integer, List<SSTable>> levelMap = new HashMap<>();
+    long maxBytesForLevel(int level) {
+        return (long) (maxBytesForLevelBase * Math.pow(levelSizeMultiplier, level - 1));
+    }
 
-        for (SSTable table : ssTables) {
-            int level = extractLevelFromPath(table.getFilePath());
-            levelMap.computeIfAbsent(level, k -> new ArrayList<>()).add(table);
+    /**
+     * 按压缩指针轮流挑选：从最小键大于上次压缩最大键的文件开始，到末尾后回到开头
+     */
+    private List<SSTable> filesInPickOrder(int level, List<SSTable> tables) {
+        List<SSTable> sorted = new ArrayList<>(tables);
+        sorted.sort(Comparator.comparing(SSTable::getSmallestKey, Comparator.nullsFirst(Comparator.naturalOrder())));
+        String pointer = compactPointers.get(level);
+        int start = 0;
+        if (pointer != null) {
+            while (start < sorted.size() && (sorted.get(start).getSmallestKey() == null
+                    || sorted.get(start).getSmallestKey().compareTo(pointer) <= 0)) {
+                start++;
+            }
+            if (start == sorted.size()) {
+                start = 0;
+            }
         }
+        List<SSTable> ordered = new ArrayList<>(sorted.subList(start, sorted.size()));
+        ordered.addAll(sorted.subList(0, start));
+        return ordered;
+    }
 
-        return levelMap;
+    private static long totalBytes(List<SSTable> tables) {
+        long bytes = 0;
+        for (SSTable t : tables) {
+            bytes += t.getFileSize();
+        }
+        return bytes;
     }
 
     /**
-     * 从文件路径中提取级别信息
+     * 一组表的最小键；任一表键范围未知时返回 null（无界）
      */
-    private int extractLevelFromPath(String filePath) {
-        // 从文件名中解析级别，例如: sstable_level1_timestamp_index.db
-        String fileName = filePath.substring(filePath.lastIndexOf('/') + 1);
-        if (fileName.contains("level")) {
-            try {
-                String levelStr = fileName.substring(fileName.indexOf("level") + 5);
-                levelStr = levelStr.substring(0, levelStr.indexOf('_'));
-                return Integer.parseInt(levelStr);
-            } catch (Exception e) {
-                return 0; // 默认级别
+    private static String smallestKeyOf(List<SSTable> tables) {
+        String smallest = null;
+        for (SSTable t : tables) {
+            if (t.getSmallestKey() == null) {
+                return null;
+            }
+            if (smallest == null || t.getSmallestKey().compareTo(smallest) < 0) {
+                smallest = t.getSmallestKey();
+            }
+        }
+        return smallest;
+    }
+
+    private static String largestKeyOf(List<SSTable> tables) {
+        String largest = null;
+        for (SSTable t : tables) {
+            if (t.getLargestKey() == null) {
+                return null;
+            }
+            if (largest == null || t.getLargestKey().compareTo(largest) > 0) {
+                largest = t.getLargestKey();
             }
         }
-        return 0;
+        return largest;
     }
 
     /**
-     * 大小分层压缩策略
-     * 当某个级别的SSTable数量超过阈值时触发压缩
+     * 按级别分组SSTable
      */
-    public CompactionTask selectCompactionTask(List<SSTable> ssTables) {
-        Map<Integer, List<SSTable>> levelMap = groupByLevel(ssTables);
-
-        for (int level = 0; level < 10; level++) { // 最多10个级别
-            List<SSTable> tablesInLevel = levelMap.getOrDefault(level, new ArrayList<>());
-            int maxSize = level == 0 ? maxLevelSize : maxLevelSize * (int) Math.pow(levelSizeMultiplier, level);
+    private Map<Integer, List<SSTable>> groupByLevel(List<SSTable> ssTables) {
+        Map<Integer, List<SSTable>> levelMap = new HashMap<>();
 
-            if (tablesInLevel.size() > maxSize) {
-                return new CompactionTask(level, tablesInLevel);
-            }
+        for (SSTable table : ssTables) {
+            int level = table.getLevel();
+            levelMap.computeIfAbsent(level, k -> new ArrayList<>()).add(table);
         }
 
-        return null; // 不需要压缩
+        return levelMap;
     }
 
     /**
      * 压缩任务类
      */
-    public static class CompactionTask {
+    public static class CompactionTask implements StreamingCompaction.TombstoneFilter {
         private final int level;
         private final List<SSTable> tables;
+        // 下一层中与 tables 键范围重叠的文件
+        private final List<SSTable> overlappingTables;
+        // 只需把 tables 移到下一层，无需合并
+        private final boolean trivialMove;
+        // 任务以外与输入重叠、可能含有更旧版本的表（挑选时的快照，只用到内存中的元数据）
+        private List<SSTable> outsideTables = Collections.emptyList();
+        // 挑选时的活跃快照序号，升序；之后新建的快照序号不小于任何输入记录，不影响保留判断
+        private long[] snapshots = new long[0];
 
         public CompactionTask(int level, List<SSTable> tables) {
+            this(level, tables, Collections.emptyList());
+        }
+
+        public CompactionTask(int level, List<SSTable> tables, List<SSTable> overlappingTables) {
+            this(level, tables, overlappingTables, false);
+        }
+
+        public CompactionTask(int level, List<SSTable> tables, List<SSTable> overlappingTables,
+                boolean trivialMove) {
             this.level = level;
             this.tables = tables;
+            this.overlappingTables = overlappingTables;
+            this.trivialMove = trivialMove;
         }
 
         public int getLevel() {
@@ -194,10 +363,81 @@ public class LeveledCompactionStrategy implements CompactionStrategy {
         public List<SSTable> getTables() {
             return tables;
         }
+
+        public List<SSTable> getOverlappingTables() {
+            return overlappingTables;
+        }
+
+        public boolean isTrivialMove() {
+            return trivialMove;
+        }
+
+        public List<SSTable> getOutsideTables() {
+            return outsideTables;
+        }
+
+        void setOutsideTables(List<SSTable> outsideTables) {
+            this.outsideTables = outsideTables;
+        }
+
+        void setSnapshots(long[] snapshots) {
+            this.snapshots = snapshots;
+        }
+
+        /**
+         * 墓碑在任务以外没有更旧的版本时可以丢弃：任何可能包含该键的外部表序号都不比它小
+         * 输入内被它遮蔽的旧版本在归并时已经去掉
+         */
+        @Override
+        public boolean canDropTombstone(KeyValue tombstone) {
+            for (SSTable t : outsideTables) {
+                if (t.getMinSequence() < tombstone.getSequence() && t.mayContainKey(tombstone.getKey())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 范围墓碑同理：任务以外与它重叠的表都不含比它旧的版本；
+         * 此外不能有早于它的快照，否则被它遮蔽的旧版本仍要保留，丢掉它会让这些版本重新对新读取可见
+         */
+        @Override
+        public boolean canDropTombstone(RangeTombstone tombstone) {
+            if (SnapshotList.anyInRange(snapshots, Long.MIN_VALUE, tombstone.getSequence())) {
+                return false;
+            }
+            for (SSTable t : outsideTables) {
+                if (t.getMinSequence() < tombstone.getSequence()
+                        && t.overlaps(tombstone.getStartKey(), tombstone.getEndKey())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean hasSnapshotIn(long from, long to) {
+            return SnapshotList.anyInRange(snapshots, from, to);
+        }
+
+        /**
+         * 参与合并的全部输入
+         */
+        public List<SSTable> getInputs() {
+            List<SSTable> inputs = new ArrayList<>(tables);
+            inputs.addAll(overlappingTables);
+            return inputs;
+        }
     }
 
     @Override
     public void setCompressionStrategy(CompressionStrategy compressionStrategy) {
         this.compressionStrategy = compressionStrategy == null ? new NoneCompressionStrategy() : compressionStrategy;
     }
+
+    @Override
+    public void setOptions(LSMTreeOptions options) {
+        this.options = options;
+    }
 }
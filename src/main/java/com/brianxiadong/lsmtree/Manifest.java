@@ -0,0 +1,436 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+/**
+ * MANIFEST：只追加的版本变更日志
+ * 每条记录是一次版本变更（VersionEdit）：新增的 SSTable 及其层级、键范围、序号范围和大小，删除的 SSTable，
+ * 以及当时已分配的最后序号。打开数据目录时只回放 MANIFEST 就能得到当前的表集合，不需要列目录或读取数据文件
+ *
+ * 文件格式：[魔数 "MAN1"][记录...]，记录为 [负载长度 int][负载的 CRC32C int][负载]
+ * 只有最后一条记录允许不完整或校验失败（写入时崩溃），回放时忽略；之前的记录损坏时拒绝打开，
+ * 否则其后的所有变更都会丢失，其中新增的表会被当作孤儿删除
+ * 每次打开时把回放结果写成只含一条快照记录的新文件再原子替换，日志不会无限增长
+ *
+ * 追加失败后不再接受变更：失败的记录可能已经部分或全部落盘，继续追加会让它成为中间的坏记录
+ */
+public class Manifest implements Closeable {
+    public static final String FILE_NAME = "MANIFEST";
+    static final int MAGIC = 0x4D414E31; // "MAN1"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    // 当前版本：文件名 -> 元数据，保持加入顺序
+    private final Map<String, FileMetaData> files;
+    private long lastSequence;
+    // 打开时丢弃了写到一半的尾部记录
+    private final boolean tornTail;
+    // 第一次追加失败的异常，之后拒绝所有变更
+    private IOException failure;
+
+    private Manifest(FileChannel channel, Map<String, FileMetaData> files, long lastSequence, boolean tornTail) {
+        this.channel = channel;
+        this.files = files;
+        this.lastSequence = lastSequence;
+        this.tornTail = tornTail;
+    }
+
+    /**
+     * 数据目录下是否已有 MANIFEST
+     */
+    public static boolean exists(String dataDir) {
+        return new File(dataDir, FILE_NAME).exists();
+    }
+
+    /**
+     * 打开数据目录下的 MANIFEST：回放已有记录，写成快照后继续追加；不存在时创建空的 MANIFEST
+     */
+    public static Manifest open(String dataDir) throws IOException {
+        Path path = Paths.get(dataDir, FILE_NAME);
+        VersionEdit snapshot = new VersionEdit();
+        boolean tornTail = false;
+        if (Files.exists(path)) {
+            Replay replayed = replay(path.toString());
+            for (FileMetaData f : replayed.files.values()) {
+                snapshot.addFile(f);
+            }
+            snapshot.setLastSequence(replayed.lastSequence);
+            tornTail = replayed.tornTail;
+        }
+
+        // 先写临时文件并落盘，再原子替换，崩溃时旧 MANIFEST 仍然完整
+        Path tmp = Paths.get(dataDir, FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC));
+            writeFully(out, encodeRecord(snapshot));
+            out.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(dataDir);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        Map<String, FileMetaData> files = new LinkedHashMap<>();
+        long lastSeq = apply(files, snapshot, 0);
+        return new Manifest(channel, files, lastSeq, tornTail);
+    }
+
+    /**
+     * 追加一次版本变更并落盘，随后更新内存中的当前版本
+     * 抛出异常时变更可能已经落盘也可能没有：调用方不能删除其中新增的表（重启时未记入的会作为孤儿清理），
+     * 本实例之后的变更一律拒绝，重新打开后才能继续
+     */
+    public synchronized void logEdit(VersionEdit edit) throws IOException {
+        if (failure != null) {
+            throw new IOException("MANIFEST is unusable after a failed write", failure);
+        }
+        try {
+            writeFully(channel, encodeRecord(edit));
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        lastSequence = apply(files, edit, lastSequence);
+    }
+
+    /**
+     * 打开时是否丢弃了写到一半的尾部记录；此时其中新增的表不在当前版本中，但不能确定它们是孤儿
+     */
+    public boolean hasTornTail() {
+        return tornTail;
+    }
+
+    /**
+     * 把变更应用到表集合上，返回更新后的最后序号
+     */
+    private static long apply(Map<String, FileMetaData> files, VersionEdit edit, long lastSequence) {
+        for (String name : edit.getDeletedFiles()) {
+            files.remove(name);
+        }
+        for (FileMetaData f : edit.getAddedFiles()) {
+            files.put(f.getFileName(), f);
+        }
+        return Math.max(lastSequence, edit.getLastSequence());
+    }
+
+    /**
+     * 当前版本中的全部表
+     */
+    public synchronized List<FileMetaData> getFiles() {
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * 已记录的最大序号
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 回放结果：表集合、最大的最后序号，以及是否丢弃了尾部记录
+     */
+    static final class Replay {
+        final Map<String, FileMetaData> files = new LinkedHashMap<>();
+        long lastSequence;
+        boolean tornTail;
+    }
+
+    /**
+     * 顺序回放全部记录（打开时总会重写为快照，文件不大，整体读入）
+     * 坏记录只有在它是最后一条时才按写入中途崩溃忽略：记录声明的长度到达文件末尾，或从它开始全是零（预分配的空间）；
+     * 否则说明中间的记录损坏，抛出异常
+     */
+    static Replay replay(String filePath) throws IOException {
+        byte[] data = Files.readAllBytes(Paths.get(filePath));
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException("Not a MANIFEST file: " + filePath);
+        }
+        Checksum crc = Crc32c.create();
+        Replay replay = new Replay();
+        while (buf.hasRemaining()) {
+            int offset = buf.position();
+            if (buf.remaining() < RECORD_HEADER_SIZE) {
+                replay.tornTail = true; // 只写了一部分记录头
+                break;
+            }
+            int size = buf.getInt();
+            int expected = buf.getInt();
+            boolean valid = size > 0 && size <= buf.remaining();
+            if (valid) {
+                crc.reset();
+                crc.update(data, buf.position(), size);
+                valid = (int) crc.getValue() == expected;
+            }
+            if (!valid) {
+                boolean last = size >= 0 && (long) offset + RECORD_HEADER_SIZE + size >= data.length;
+                if (!last && !allZero(data, offset)) {
+                    throw new IOException("Corrupted MANIFEST record at offset " + offset + ": " + filePath);
+                }
+                replay.tornTail = true;
+                break;
+            }
+            byte[] payload = new byte[size];
+            buf.get(payload);
+            replay.lastSequence = apply(replay.files, decode(payload), replay.lastSequence);
+        }
+        return replay;
+    }
+
+    private static boolean allZero(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer encodeRecord(VersionEdit edit) throws IOException {
+        byte[] payload = encode(edit);
+        Checksum crc = Crc32c.create();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * 负载：[最后序号][删除数][文件名...][新增数][文件元数据...]
+     */
+    private static byte[] encode(VersionEdit edit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(edit.getLastSequence());
+            out.writeInt(edit.getDeletedFiles().size());
+            for (String name : edit.getDeletedFiles()) {
+                out.writeUTF(name);
+            }
+            out.writeInt(edit.getAddedFiles().size());
+            for (FileMetaData f : edit.getAddedFiles()) {
+                out.writeUTF(f.getFileName());
+                out.writeInt(f.getLevel());
+                out.writeLong(f.getFileSize());
+                out.writeInt(f.getEntryCount());
+                out.writeInt(f.getTombstoneCount());
+                out.writeBoolean(f.isKeyRangeKnown());
+                out.writeBoolean(f.getSmallestKey() != null);
+                if (f.getSmallestKey() != null) {
+                    out.writeUTF(f.getSmallestKey());
+                    out.writeUTF(f.getLargestKey());
+                }
+                out.writeLong(f.getMinSequence());
+                out.writeLong(f.getMaxSequence());
+                out.writeLong(f.getCreationTime());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static VersionEdit decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            VersionEdit edit = new VersionEdit();
+            edit.setLastSequence(in.readLong());
+            int deleted = in.readInt();
+            for (int i = 0; i < deleted; i++) {
+                edit.deleteFile(in.readUTF());
+            }
+            int added = in.readInt();
+            for (int i = 0; i < added; i++) {
+                String name = in.readUTF();
+                int level = in.readInt();
+                long fileSize = in.readLong();
+                int entryCount = in.readInt();
+                int tombstoneCount = in.readInt();
+                boolean keyRangeKnown = in.readBoolean();
+                String smallest = null;
+                String largest = null;
+                if (in.readBoolean()) {
+                    smallest = in.readUTF();
+                    largest = in.readUTF();
+                }
+                long minSequence = in.readLong();
+                long maxSequence = in.readLong();
+                long creationTime = in.readLong();
+                edit.addFile(new FileMetaData(name, level, fileSize, entryCount, tombstoneCount, keyRangeKnown,
+                        smallest, largest, minSequence, maxSequence, creationTime));
+            }
+            return edit;
+        } catch (EOFException e) {
+            throw new IOException("Truncated MANIFEST record", e);
+        }
+    }
+
+    /**
+     * 把目录项落盘：新建、改名或删除的文件在 fsync 目录之后才能在断电后保留
+     * 不支持打开目录的平台（Windows）上忽略
+     */
+    public static void syncDirectory(String dataDir) throws IOException {
+        try (FileChannel dir = FileChannel.open(Paths.get(dataDir), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (AccessDeniedException e) {
+            if (!System.getProperty("os.name", "").toLowerCase().startsWith("windows")) {
+                throw e;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * 一次版本变更：新增和删除的表，以及已分配的最后序号（-1 表示不更新）
+     */
+    public static class VersionEdit {
+        private final List<FileMetaData> addedFiles = new ArrayList<>();
+        private final List<String> deletedFiles = new ArrayList<>();
+        private long lastSequence = -1;
+
+        public VersionEdit addFile(FileMetaData file) {
+            addedFiles.add(file);
+            return this;
+        }
+
+        public VersionEdit deleteFile(String fileName) {
+            deletedFiles.add(fileName);
+            return this;
+        }
+
+        public VersionEdit setLastSequence(long lastSequence) {
+            this.lastSequence = lastSequence;
+            return this;
+        }
+
+        public List<FileMetaData> getAddedFiles() {
+            return Collections.unmodifiableList(addedFiles);
+        }
+
+        public List<String> getDeletedFiles() {
+            return Collections.unmodifiableList(deletedFiles);
+        }
+
+        public long getLastSequence() {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * 表的元数据：文件名（相对数据目录）、层级、大小、条目与墓碑数、键范围和序号范围
+     * 空表的最小/最大键为 null；keyRangeKnown 为 false 表示早期文件未记录键范围
+     */
+    public static class FileMetaData {
+        private final String fileName;
+        private final int level;
+        private final long fileSize;
+        private final int entryCount;
+        private final int tombstoneCount;
+        private final boolean keyRangeKnown;
+        private final String smallestKey;
+        private final String largestKey;
+        private final long minSequence;
+        private final long maxSequence;
+        private final long creationTime;
+
+        public FileMetaData(String fileName, int level, long fileSize, int entryCount, int tombstoneCount,
+                boolean keyRangeKnown, String smallestKey, String largestKey, long minSequence, long maxSequence,
+                long creationTime) {
+            this.fileName = fileName;
+            this.level = level;
+            this.fileSize = fileSize;
+            this.entryCount = entryCount;
+            this.tombstoneCount = tombstoneCount;
+            this.keyRangeKnown = keyRangeKnown;
+            this.smallestKey = smallestKey;
+            this.largestKey = largestKey;
+            this.minSequence = minSequence;
+            this.maxSequence = maxSequence;
+            this.creationTime = creationTime;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        public int getTombstoneCount() {
+            return tombstoneCount;
+        }
+
+        public boolean isKeyRangeKnown() {
+            return keyRangeKnown;
+        }
+
+        public String getSmallestKey() {
+            return smallestKey;
+        }
+
+        public String getLargestKey() {
+            return largestKey;
+        }
+
+        public long getMinSequence() {
+            return minSequence;
+        }
+
+        public long getMaxSequence() {
+            return maxSequence;
+        }
+
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        /**
+         * 同一文件移到另一层级后的元数据
+         */
+        public FileMetaData withLevel(int newLevel) {
+            return new FileMetaData(fileName, newLevel, fileSize, entryCount, tombstoneCount, keyRangeKnown,
+                    smallestKey, largestKey, minSequence, maxSequence, creationTime);
+        }
+    }
+}
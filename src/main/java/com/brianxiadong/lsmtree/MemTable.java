@@ -3,18 +3,36 @@ package com.brianxiadong.lsmtree;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
 
 /**
  * 内存表实现
- * 使用跳表保证有序性和线程安全
+ * 使用跳表保证有序性和线程安全；按 (键升序, 序号降序) 存放，同一个键的第一条即最新版本
+ * 覆盖写入时旧版本只在仍有快照或固定了序号的迭代器看得到它时保留，否则立即删除
+ * 范围墓碑单独存放，写入只追加；碎片化索引在写入后的第一次读取时重建，读取时据此判断键是否已被范围删除
  */
 public class MemTable {
-    private final ConcurrentSkipListMap<String, KeyValue> data;
+    private final ConcurrentSkipListMap<KeyValue, KeyValue> data;
+    // 范围墓碑在自身监视器内追加并递增版本；索引记录构建时的版本，落后时由读取者在写锁外重建
+    private final List<RangeTombstone> rangeTombstones = new ArrayList<>();
+    private volatile long tombstoneVersion;
+    private volatile IndexedTombstones rangeTombstoneIndex = IndexedTombstones.EMPTY;
+    private final SnapshotList snapshots;
+    // 直接遍历本表的迭代器固定的序号，只影响覆盖写入，不影响刷盘和压缩
+    private final SnapshotList readers = new SnapshotList();
     private final int maxSize;
     private volatile int currentSize;
 
     public MemTable(int maxSize) {
+        this(maxSize, new SnapshotList());
+    }
+
+    public MemTable(int maxSize, SnapshotList snapshots) {
         this.data = new ConcurrentSkipListMap<>();
+        this.snapshots = snapshots;
         this.maxSize = maxSize;
         this.currentSize = 0;
     }
@@ -23,37 +41,157 @@ public class MemTable {
      * 插入键值对
      */
     public void put(String key, String value) {
-        KeyValue kv = new KeyValue(key, value);
-        KeyValue oldValue = data.put(key, kv);
-        if (oldValue == null) {
-            currentSize++;
-        }
+        insert(new KeyValue(key, value));
+    }
+
+    /**
+     * 以指定序号插入键值对
+     */
+    public void put(String key, String value, long sequence) {
+        insert(new KeyValue(key, value, sequence, false));
     }
 
     /**
      * 删除键（插入删除标记）
      */
     public void delete(String key) {
-        KeyValue tombstone = KeyValue.createTombstone(key);
-        KeyValue oldValue = data.put(key, tombstone);
-        if (oldValue == null) {
+        insert(KeyValue.createTombstone(key));
+    }
+
+    public void delete(String key, long sequence) {
+        insert(KeyValue.createTombstone(key, sequence));
+    }
+
+    /**
+     * 删除 [startKey, endKey) 内序号更小的所有版本
+     */
+    public void deleteRange(String startKey, String endKey, long sequence) {
+        RangeTombstone tombstone = new RangeTombstone(startKey, endKey, sequence);
+        synchronized (rangeTombstones) {
+            rangeTombstones.add(tombstone);
+            tombstoneVersion++;
+        }
+        currentSize++;
+    }
+
+    /**
+     * 覆盖该键的范围墓碑的最大序号，没有时返回 0
+     */
+    public long maxCoveringSequence(String key) {
+        return rangeTombstoneIndex().maxCoveringSequence(key);
+    }
+
+    /**
+     * 覆盖该键且快照可见的范围墓碑的最大序号，没有时返回 0
+     */
+    public long maxCoveringSequence(String key, long snapshot) {
+        return rangeTombstoneIndex().maxCoveringSequence(key, snapshot);
+    }
+
+    /**
+     * 固定序号不大于 sequence 的版本：登记期间覆盖写入不删除它们，迭代器可以不复制地遍历仍在写入的表；用完 close
+     * 调用方保证登记前没有进行中的写入会覆盖这些版本
+     */
+    Snapshot pin(long sequence) {
+        return readers.create(sequence);
+    }
+
+    public FragmentedRangeTombstones getRangeTombstones() {
+        return rangeTombstoneIndex();
+    }
+
+    /**
+     * 当前版本的碎片化索引；落后时复制墓碑列表后在监视器外重建，连续的范围删除不再每次都重建
+     */
+    private FragmentedRangeTombstones rangeTombstoneIndex() {
+        IndexedTombstones current = rangeTombstoneIndex;
+        if (current.version == tombstoneVersion) {
+            return current.index;
+        }
+        List<RangeTombstone> copy;
+        long version;
+        synchronized (rangeTombstones) {
+            copy = new ArrayList<>(rangeTombstones);
+            version = tombstoneVersion;
+        }
+        IndexedTombstones built = new IndexedTombstones(version, new FragmentedRangeTombstones(copy));
+        synchronized (rangeTombstones) {
+            // 并发重建时只保留版本更新的那个
+            if (rangeTombstoneIndex.version < version) {
+                rangeTombstoneIndex = built;
+            }
+        }
+        return built.index;
+    }
+
+    /**
+     * 先插入新版本再删除旧版本，并发读取者不会看到键短暂消失
+     * 序号相同（未指定序号的写入）时原地替换；
+     * 比已有最新版本更旧的记录（乱序到达）不替换最新版本，只在仍有快照看得到它时作为旧版本保留
+     */
+    private void insert(KeyValue kv) {
+        KeyValue newest = getEntry(kv.getKey());
+        if (newest != null && newest.getSequence() > kv.getSequence()) {
+            // 同一个键内序号越大越靠前，前一条即比它新的最近版本
+            KeyValue newer = data.lowerKey(kv);
+            if (pinned(kv.getSequence(), newer.getSequence()) && data.putIfAbsent(kv, kv) == null) {
+                currentSize++;
+            }
+            return;
+        }
+        data.put(kv, kv);
+        if (newest == null) {
+            currentSize++;
+            return;
+        }
+        if (newest.getSequence() == kv.getSequence()) {
+            return;
+        }
+        if (pinned(newest.getSequence(), Long.MAX_VALUE)) {
             currentSize++;
+        } else {
+            data.remove(newest);
         }
     }
 
+    /**
+     * 是否有快照或迭代器看得到序号为 from、下一个更新版本序号为 to 的记录
+     */
+    private boolean pinned(long from, long to) {
+        return snapshots.anyInRange(from, to) || readers.anyInRange(from, to);
+    }
+
     /**
      * 查询键值
      */
     public String get(String key) {
-        KeyValue kv = data.get(key);
+        KeyValue kv = getEntry(key);
         if (kv == null || kv.isDeleted()) {
             return null;
         }
         return kv.getValue();
     }
 
+    /**
+     * 键的最新版本
+     */
     public KeyValue getEntry(String key) {
-        return data.get(key);
+        return getEntry(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * 序号不大于 snapshot 的最新版本
+     */
+    public KeyValue getEntry(String key, long snapshot) {
+        Map.Entry<KeyValue, KeyValue> e = data.ceilingEntry(probe(key, snapshot));
+        return e != null && e.getKey().getKey().equals(key) ? e.getValue() : null;
+    }
+
+    /**
+     * 查找用的边界记录：同一个键内序号越大越靠前
+     */
+    private static KeyValue probe(String key, long sequence) {
+        return new KeyValue(key, null, sequence, false);
     }
 
     /**
@@ -64,52 +202,88 @@ public class MemTable {
     }
 
     /**
-     * 获取所有键值对的有序列表
+     * 获取所有记录的有序列表（含快照保留的旧版本）
      */
     public List<KeyValue> getAllEntries() {
         return new ArrayList<>(data.values());
     }
 
-    public List<KeyValue> getRange(String startKey, String endKey, boolean includeStart, boolean includeEnd) {
-        ConcurrentSkipListMap<String, KeyValue> m = this.data;
-        String from = startKey;
-        String to = endKey;
-        boolean fromIncl = includeStart;
-        boolean toIncl = includeEnd;
+    /**
+     * 刷盘用：每个键的最新版本，加上仍有快照看得到的旧版本
+     */
+    public List<KeyValue> getVisibleEntries() {
         List<KeyValue> res = new ArrayList<>();
-        if (from == null && to == null) {
-            for (KeyValue kv : m.values()) if (!kv.isDeleted()) res.add(kv);
-            return res;
+        KeyValue newer = null;
+        for (KeyValue kv : data.values()) {
+            if (newer == null || !newer.getKey().equals(kv.getKey())
+                    || snapshots.anyInRange(kv.getSequence(), newer.getSequence())) {
+                res.add(kv);
+            }
+            newer = kv;
         }
-        if (from == null) {
-            for (KeyValue kv : m.headMap(to, toIncl).values()) if (!kv.isDeleted()) res.add(kv);
-            return res;
-        }
-        if (to == null) {
-            for (KeyValue kv : m.tailMap(from, fromIncl).values()) if (!kv.isDeleted()) res.add(kv);
-            return res;
+        return res;
+    }
+
+    /**
+     * 范围内每个键的最新版本，跳过已删除的键
+     */
+    public List<KeyValue> getRange(String startKey, String endKey, boolean includeStart, boolean includeEnd) {
+        List<KeyValue> res = new ArrayList<>();
+        String last = null;
+        for (KeyValue kv : rangeView(startKey, endKey, includeStart, includeEnd).values()) {
+            if (kv.getKey().equals(last)) {
+                continue;
+            }
+            last = kv.getKey();
+            if (!kv.isDeleted()) {
+                res.add(kv);
+            }
         }
-        for (KeyValue kv : m.subMap(from, fromIncl, to, toIncl).values()) if (!kv.isDeleted()) res.add(kv);
         return res;
     }
 
     public List<KeyValue> getRangeEntriesRaw(String startKey, String endKey, boolean includeStart, boolean includeEnd) {
-        ConcurrentSkipListMap<String, KeyValue> m = this.data;
-        List<KeyValue> res = new ArrayList<>();
-        if (startKey == null && endKey == null) {
-            res.addAll(m.values());
-            return res;
+        return new ArrayList<>(rangeView(startKey, endKey, includeStart, includeEnd).values());
+    }
+
+    /**
+     * 按键升序遍历范围内的记录（含墓碑和旧版本，同一个键新的在前），直接走跳表的子视图，不复制
+     * 写入中的 MemTable 上遍历是弱一致的，需先用 pin 固定序号，并跳过比它新的版本
+     */
+    public Iterator<KeyValue> iterator(String startKey, String endKey, boolean includeStart, boolean includeEnd) {
+        return rangeView(startKey, endKey, includeStart, includeEnd).values().iterator();
+    }
+
+    /**
+     * 按键降序遍历范围内的记录（含墓碑和旧版本，同一个键旧的在前），走跳表子视图的逆序视图
+     */
+    public Iterator<KeyValue> descendingIterator(String startKey, String endKey, boolean includeStart,
+            boolean includeEnd) {
+        return rangeView(startKey, endKey, includeStart, includeEnd).descendingMap().values().iterator();
+    }
+
+    /**
+     * 按键范围截取：包含边界键时取它的全部版本，不包含时跳过全部版本
+     */
+    private NavigableMap<KeyValue, KeyValue> rangeView(String startKey, String endKey, boolean includeStart,
+            boolean includeEnd) {
+        ConcurrentSkipListMap<KeyValue, KeyValue> m = this.data;
+        KeyValue from = startKey == null ? null
+                : probe(startKey, includeStart ? Long.MAX_VALUE : Long.MIN_VALUE);
+        KeyValue to = endKey == null ? null : probe(endKey, includeEnd ? Long.MIN_VALUE : Long.MAX_VALUE);
+        if (from == null && to == null) {
+            return m;
         }
-        if (startKey == null) {
-            res.addAll(m.headMap(endKey, includeEnd).values());
-            return res;
+        if (from == null) {
+            return m.headMap(to, includeEnd);
         }
-        if (endKey == null) {
-            res.addAll(m.tailMap(startKey, includeStart).values());
-            return res;
+        if (to == null) {
+            return m.tailMap(from, includeStart);
         }
-        res.addAll(m.subMap(startKey, includeStart, endKey, includeEnd).values());
-        return res;
+        if (from.compareTo(to) > 0) {
+            return Collections.emptyNavigableMap();
+        }
+        return m.subMap(from, includeStart, to, includeEnd);
     }
 
     /**
@@ -117,11 +291,15 @@ public class MemTable {
      */
     public void clear() {
         data.clear();
+        synchronized (rangeTombstones) {
+            rangeTombstones.clear();
+            tombstoneVersion++;
+        }
         currentSize = 0;
     }
 
     /**
-     * 获取当前大小
+     * 获取当前记录数（含旧版本）
      */
     public int size() {
         return data.size();
@@ -133,4 +311,19 @@ public class MemTable {
     public boolean isEmpty() {
         return currentSize == 0;
     }
+
+    /**
+     * 碎片化索引及构建它时的墓碑版本
+     */
+    private static final class IndexedTombstones {
+        static final IndexedTombstones EMPTY = new IndexedTombstones(0, FragmentedRangeTombstones.EMPTY);
+
+        final long version;
+        final FragmentedRangeTombstones index;
+
+        IndexedTombstones(long version, FragmentedRangeTombstones index) {
+            this.version = version;
+            this.index = index;
+        }
+    }
 }
@@ -0,0 +1,120 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * 多路归并迭代器
+ * 输入各自按键升序，输出按键升序且每个键只保留序号最大的版本（包括墓碑）；
+ * 逆序模式下输入和输出都按键降序；保留全部版本模式下同一个键的各版本按序号降序依次输出（只用于正序）
+ * 只持有每个输入的当前元素，内存与输入数量成正比
+ * 关闭时一并关闭实现了 Closeable 的输入
+ */
+public class MergingIterator implements CloseableIterator<KeyValue> {
+    private final PriorityQueue<Head> heap;
+    private final List<Iterator<KeyValue>> inputs;
+    private final boolean allVersions;
+    private KeyValue next;
+
+    public MergingIterator(List<? extends Iterator<KeyValue>> inputs) {
+        this(inputs, false);
+    }
+
+    public MergingIterator(List<? extends Iterator<KeyValue>> inputs, boolean reverse) {
+        this(inputs, reverse, false);
+    }
+
+    public MergingIterator(List<? extends Iterator<KeyValue>> inputs, boolean reverse, boolean allVersions) {
+        this.inputs = new ArrayList<>(inputs);
+        this.allVersions = allVersions;
+        // 键升序（逆序模式为降序），同键按序号降序，堆顶即该键的最新版本
+        this.heap = new PriorityQueue<>(Math.max(1, inputs.size()), (a, b) -> {
+            int c = a.current.getKey().compareTo(b.current.getKey());
+            if (reverse) {
+                c = -c;
+            }
+            return c != 0 ? c : Long.compare(b.current.getSequence(), a.current.getSequence());
+        });
+        for (Iterator<KeyValue> it : inputs) {
+            if (it.hasNext()) {
+                heap.add(new Head(it));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (heap.isEmpty()) {
+            return false;
+        }
+        Head top = heap.poll();
+        next = top.current;
+        advance(top);
+        if (allVersions) {
+            return true;
+        }
+        // 同一个键的其余版本里取序号最大的；单个输入内同键的版本可能按序号升序排列（逆序遍历时）
+        while (!heap.isEmpty() && heap.peek().current.getKey().equals(next.getKey())) {
+            Head same = heap.poll();
+            if (same.current.getSequence() > next.getSequence()) {
+                next = same.current;
+            }
+            advance(same);
+        }
+        return true;
+    }
+
+    @Override
+    public KeyValue next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        KeyValue kv = next;
+        next = null;
+        return kv;
+    }
+
+    @Override
+    public void close() throws IOException {
+        heap.clear();
+        next = null;
+        IOException failure = null;
+        for (Iterator<KeyValue> it : inputs) {
+            if (it instanceof Closeable) {
+                try {
+                    ((Closeable) it).close();
+                } catch (IOException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void advance(Head head) {
+        if (head.input.hasNext()) {
+            head.current = head.input.next();
+            heap.add(head);
+        }
+    }
+
+    private static final class Head {
+        private final Iterator<KeyValue> input;
+        private KeyValue current;
+
+        Head(Iterator<KeyValue> input) {
+            this.input = input;
+            this.current = input.next();
+        }
+    }
+}
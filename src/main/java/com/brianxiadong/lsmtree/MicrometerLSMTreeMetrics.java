@@ -15,6 +15,7 @@ public class MicrometerLSMTreeMetrics implements LSMTreeMetrics {
     private final DistributionSummary flushBytes;
     private final Counter compactionFailures;
     private final Counter flushFailures;
+    private final Timer writeStalls;
 
     public MicrometerLSMTreeMetrics(String name) {
         MeterRegistry registry = MetricsRegistry.get();
@@ -25,6 +26,7 @@ public class MicrometerLSMTreeMetrics implements LSMTreeMetrics {
         this.flushBytes = DistributionSummary.builder("lsm.flush.bytes").tag("name", name).register(registry);
         this.compactionFailures = Counter.builder("lsm.compaction.failures").tag("name", name).register(registry);
         this.flushFailures = Counter.builder("lsm.flush.failures").tag("name", name).register(registry);
+        this.writeStalls = Timer.builder("lsm.write.stall").tag("name", name).register(registry);
     }
 
     @Override
@@ -57,4 +59,9 @@ public class MicrometerLSMTreeMetrics implements LSMTreeMetrics {
     public void recordFlushFailure() {
         flushFailures.increment();
     }
+
+    @Override
+    public void recordWriteStall(long durationNanos) {
+        writeStalls.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
 }
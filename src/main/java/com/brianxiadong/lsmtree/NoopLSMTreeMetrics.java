@@ -18,4 +18,7 @@ public class NoopLSMTreeMetrics implements LSMTreeMetrics {
 
     @Override
     public void recordFlushFailure() {}
+
+    @Override
+    public void recordWriteStall(long durationNanos) {}
 }
@@ -2,20 +2,32 @@ package com.brianxiadong.lsmtree;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 
 public class PartitionedLSMTree implements AutoCloseable, RangeQuery {
     private final List<LSMTree> shards;
     private final PartitionStrategy strategy;
+    // 以根目录命名并注册了监控指标的共享块缓存
+    private BlockCache metricsCache;
 
     public PartitionedLSMTree(String dataDir, int numPartitions, int memTableMaxSize, PartitionStrategy strategy) throws IOException {
+        this(dataDir, numPartitions, memTableMaxSize, strategy, new LSMTreeOptions());
+    }
+
+    /**
+     * 所有分片共用同一份配置，因此共享同一个块缓存，其监控指标以根目录命名
+     */
+    public PartitionedLSMTree(String dataDir, int numPartitions, int memTableMaxSize, PartitionStrategy strategy,
+            LSMTreeOptions options) throws IOException {
         this.strategy = strategy;
         this.shards = new ArrayList<>(numPartitions);
+        BlockCache cache = options.getBlockCache();
+        if (cache != null && cache.bindMetrics(dataDir)) {
+            metricsCache = cache;
+        }
         for (int i = 0; i < numPartitions; i++) {
             String dir = dataDir + "/part-" + i;
-            shards.add(new LSMTree(dir, memTableMaxSize));
+            shards.add(new LSMTree(dir, memTableMaxSize, options));
         }
         io.micrometer.core.instrument.MeterRegistry registry = MetricsRegistry.get();
         for (int i = 0; i < shards.size(); i++) {
@@ -37,52 +49,85 @@ public class PartitionedLSMTree implements AutoCloseable, RangeQuery {
         shards.get(p).delete(key);
     }
 
+    /**
+     * 在区间可能落入的每个分片上各写一条范围墓碑；跨分片不保证原子性
+     */
+    public void deleteRange(String startKey, String endKey) throws IOException {
+        for (Integer p : strategy.getPartitionsForRange(startKey, endKey, shards.size())) {
+            shards.get(p).deleteRange(startKey, endKey);
+        }
+    }
+
+    /**
+     * 按分片拆分批次后分别写入；每个分片内原子，跨分片不保证原子性
+     */
+    public void write(WriteBatch batch) throws IOException {
+        if (shards.size() == 1) {
+            shards.get(0).write(batch);
+            return;
+        }
+        WriteBatch[] perShard = new WriteBatch[shards.size()];
+        for (WriteAheadLog.LogEntry entry : batch.getEntries()) {
+            int p = strategy.getPartition(entry.getKey(), shards.size());
+            if (perShard[p] == null) {
+                perShard[p] = new WriteBatch();
+            }
+            perShard[p].add(entry);
+        }
+        for (int p = 0; p < perShard.length; p++) {
+            if (perShard[p] != null) {
+                shards.get(p).write(perShard[p]);
+            }
+        }
+    }
+
     public String get(String key) {
         int p = strategy.getPartition(key, shards.size());
         return shards.get(p).get(key);
     }
 
     @Override
-    public Iterator<KeyValue> range(String startKey, String endKey, boolean includeStart, boolean includeEnd) throws IOException {
-        List<Integer> parts = strategy.getPartitionsForRange(startKey, endKey, shards.size());
-        List<List<KeyValue>> sources = new ArrayList<>();
-        for (Integer p : parts) {
-            Iterator<KeyValue> it = shards.get(p).range(startKey, endKey, includeStart, includeEnd);
-            List<KeyValue> list = new ArrayList<>();
-            while (it.hasNext()) list.add(it.next());
-            sources.add(list);
-        }
-        PriorityQueue<int[]> pq = new PriorityQueue<>((a,b)->{
-            KeyValue ka = sources.get(a[0]).get(a[1]);
-            KeyValue kb = sources.get(b[0]).get(b[1]);
-            return ka.getKey().compareTo(kb.getKey());
-        });
-        for (int i = 0; i < sources.size(); i++) if (!sources.get(i).isEmpty()) pq.add(new int[]{i,0});
-        List<KeyValue> out = new ArrayList<>();
-        String last = null;
-        while (!pq.isEmpty()) {
-            int[] t = pq.poll();
-            KeyValue kv = sources.get(t[0]).get(t[1]);
-            if (!kv.isDeleted() && (last == null || !kv.getKey().equals(last))) {
-                out.add(kv);
-                last = kv.getKey();
-            }
-            if (t[1] + 1 < sources.get(t[0]).size()) pq.add(new int[]{t[0], t[1]+1});
-        }
-        return out.iterator();
+    public CloseableIterator<KeyValue> range(String startKey, String endKey, boolean includeStart, boolean includeEnd) throws IOException {
+        return merge(startKey, endKey, includeStart, includeEnd, false);
     }
 
     @Override
-    public Iterator<KeyValue> rangeReverse(String startKey, String endKey) throws IOException {
-        List<KeyValue> list = new ArrayList<>();
-        Iterator<KeyValue> it = range(startKey, endKey, true, true);
-        while (it.hasNext()) list.add(it.next());
-        list.sort((a,b)->b.getKey().compareTo(a.getKey()));
-        return list.iterator();
+    public CloseableIterator<KeyValue> rangeReverse(String startKey, String endKey) throws IOException {
+        return merge(startKey, endKey, true, true, true);
+    }
+
+    /**
+     * 各分片的键互不相交，按键归并即可；返回的迭代器可以 close 提前释放各分片的读取视图
+     */
+    private MergingIterator merge(String startKey, String endKey, boolean includeStart, boolean includeEnd,
+            boolean reverse) throws IOException {
+        List<Integer> parts = strategy.getPartitionsForRange(startKey, endKey, shards.size());
+        List<RangeIterator> sources = new ArrayList<>(parts.size());
+        try {
+            for (Integer p : parts) {
+                LSMTree shard = shards.get(p);
+                sources.add(reverse ? shard.rangeReverse(startKey, endKey)
+                        : shard.range(startKey, endKey, includeStart, includeEnd));
+            }
+            // 构造时各分片读取第一条记录，可能读盘失败
+            return new MergingIterator(sources, reverse);
+        } catch (IOException | RuntimeException e) {
+            for (RangeIterator it : sources) {
+                try {
+                    it.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
     }
 
     @Override
     public void close() throws Exception {
         for (LSMTree t : shards) t.close();
+        if (metricsCache != null) {
+            metricsCache.unbindMetrics();
+        }
     }
 }
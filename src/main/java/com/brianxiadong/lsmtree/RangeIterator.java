@@ -0,0 +1,205 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * LSMTree 范围查询迭代器
+ * 对读取视图中各数据源的有序游标做多路归并，按需产出每个键的最新可见版本，跳过墓碑和被范围墓碑覆盖的版本；
+ * 每个 SSTable 只驻留当前数据块，内存与数据源数量成正比，与结果条数无关；
+ * 逆序模式下各数据源使用逆向游标（跳表逆序视图、SSTable 逐块向前读取），按键降序产出；
+ * 按快照读取时各数据源只产出序号不大于快照的版本，范围墓碑同样按快照过滤
+ *
+ * 活跃 MemTable 直接遍历跳表，在其上登记读取序号并跳过更新的版本，覆盖写入不会删除迭代器看得到的版本；
+ * 迭代期间固定读取视图，被压缩替换的 SSTable 在迭代结束前不会删除；
+ * 读完时自动释放，提前结束时调用 close 释放
+ */
+public class RangeIterator implements CloseableIterator<KeyValue> {
+    private final SuperVersion superVersion;
+    // 活跃 MemTable 上固定读取序号的登记，没有时为 null
+    private final Snapshot pin;
+    private final MergingIterator merged;
+    private final FragmentedRangeTombstones rangeTombstones;
+    // 查询范围，null 表示无界
+    private final String startKey;
+    private final String endKey;
+    private final boolean includeStart;
+    private final boolean includeEnd;
+    private final boolean reverse;
+    private KeyValue next;
+    private boolean closed;
+
+    /**
+     * 活跃 MemTable 仍在写入，调用方须已在其上固定 snapshot（快照或 pin 登记），迭代器只读不超过它的版本；
+     * pin 为 null 时由调用方释放登记；构造成功后由迭代器负责释放 superVersion 的一个引用和 pin
+     */
+    RangeIterator(SuperVersion superVersion, Snapshot pin, String startKey, String endKey, boolean includeStart,
+            boolean includeEnd, boolean reverse, long snapshot) throws IOException {
+        this.superVersion = superVersion;
+        this.pin = pin;
+        this.startKey = startKey;
+        this.endKey = endKey;
+        this.includeStart = includeStart;
+        this.includeEnd = includeEnd;
+        this.reverse = reverse;
+
+        List<Iterator<KeyValue>> sources = new ArrayList<>();
+        List<RangeTombstone> tombstones = new ArrayList<>();
+        List<MemTable> memTables = new ArrayList<>();
+        memTables.add(superVersion.getActiveMemTable());
+        memTables.addAll(superVersion.getImmutableMemTables());
+        for (MemTable memTable : memTables) {
+            sources.add(reverse ? memTable.descendingIterator(startKey, endKey, includeStart, includeEnd)
+                    : memTable.iterator(startKey, endKey, includeStart, includeEnd));
+            tombstones.addAll(memTable.getRangeTombstones().getTombstones());
+        }
+        try {
+            for (SSTable t : superVersion.getSSTables()) {
+                // 键范围不重叠或整张表都比快照新的表直接跳过
+                if (!t.overlaps(startKey, endKey) || t.getMinSequence() > snapshot) {
+                    continue;
+                }
+                // 正向表迭代器的结束键是开区间，包含结束键时由本迭代器截断；逆向表迭代器是闭区间
+                sources.add(reverse ? t.reverseIterator(startKey, endKey)
+                        : t.iterator(startKey, includeEnd ? null : endKey));
+                tombstones.addAll(t.getRangeTombstones());
+            }
+            if (snapshot != Long.MAX_VALUE) {
+                for (int i = 0; i < sources.size(); i++) {
+                    sources.set(i, new SnapshotFilter(sources.get(i), snapshot));
+                }
+                tombstones.removeIf(t -> t.getSequence() > snapshot);
+            }
+            // 构造时各数据源读取第一条记录，可能读盘失败
+            this.merged = new MergingIterator(sources, reverse);
+        } catch (IOException | RuntimeException e) {
+            for (Iterator<KeyValue> it : sources) {
+                if (it instanceof Closeable) {
+                    ((Closeable) it).close();
+                }
+            }
+            throw e;
+        }
+        this.rangeTombstones = tombstones.isEmpty() ? FragmentedRangeTombstones.EMPTY
+                : new FragmentedRangeTombstones(tombstones);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !closed) {
+            if (!merged.hasNext()) {
+                closeQuietly();
+                break;
+            }
+            KeyValue kv = merged.next();
+            // 先到达的边界只需跳过，后到达的边界之外不再有结果
+            String skipKey = reverse ? endKey : startKey;
+            boolean skipInclusive = reverse ? includeEnd : includeStart;
+            if (!skipInclusive && kv.getKey().equals(skipKey)) {
+                continue;
+            }
+            String stopKey = reverse ? startKey : endKey;
+            boolean stopInclusive = reverse ? includeStart : includeEnd;
+            if (stopKey != null) {
+                int c = kv.getKey().compareTo(stopKey);
+                if (reverse) {
+                    c = -c;
+                }
+                if (c > 0 || (c == 0 && !stopInclusive)) {
+                    closeQuietly();
+                    break;
+                }
+            }
+            if (kv.isDeleted() || rangeTombstones.covers(kv)) {
+                continue;
+            }
+            next = kv;
+        }
+        return next != null;
+    }
+
+    @Override
+    public KeyValue next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        KeyValue kv = next;
+        next = null;
+        return kv;
+    }
+
+    /**
+     * 关闭各数据源并释放读取视图，可重复调用
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        next = null;
+        try {
+            merged.close();
+        } finally {
+            if (pin != null) {
+                pin.close();
+            }
+            superVersion.release();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 跳过比快照新的版本，关闭时一并关闭被包装的游标
+     */
+    private static final class SnapshotFilter implements Iterator<KeyValue>, Closeable {
+        private final Iterator<KeyValue> source;
+        private final long snapshot;
+        private KeyValue next;
+
+        SnapshotFilter(Iterator<KeyValue> source, long snapshot) {
+            this.source = source;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && source.hasNext()) {
+                KeyValue kv = source.next();
+                if (kv.getSequence() <= snapshot) {
+                    next = kv;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public KeyValue next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            KeyValue kv = next;
+            next = null;
+            return kv;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (source instanceof Closeable) {
+                ((Closeable) source).close();
+            }
+        }
+    }
+}
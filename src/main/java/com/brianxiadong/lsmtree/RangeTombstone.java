@@ -0,0 +1,62 @@
+package com.brianxiadong.lsmtree;
+
+/**
+ * 范围墓碑
+ * 删除 [startKey, endKey) 内序号小于 sequence 的所有版本，写入时只占一条记录
+ */
+public class RangeTombstone {
+    private final String startKey;
+    private final String endKey;
+    private final long sequence;
+
+    public RangeTombstone(String startKey, String endKey, long sequence) {
+        if (startKey == null || endKey == null) {
+            throw new IllegalArgumentException("Range bounds cannot be null");
+        }
+        if (startKey.compareTo(endKey) >= 0) {
+            throw new IllegalArgumentException("startKey must be less than endKey");
+        }
+        this.startKey = startKey;
+        this.endKey = endKey;
+        this.sequence = sequence;
+    }
+
+    /**
+     * 键是否落在 [startKey, endKey) 内
+     */
+    public boolean contains(String key) {
+        return key.compareTo(startKey) >= 0 && key.compareTo(endKey) < 0;
+    }
+
+    /**
+     * 截取到 [lower, upper) 内的部分（null 表示无界），没有交集时返回 null
+     */
+    public RangeTombstone clip(String lower, String upper) {
+        String start = lower != null && lower.compareTo(startKey) > 0 ? lower : startKey;
+        String end = upper != null && upper.compareTo(endKey) < 0 ? upper : endKey;
+        if (start.compareTo(end) >= 0) {
+            return null;
+        }
+        if (start.equals(startKey) && end.equals(endKey)) {
+            return this;
+        }
+        return new RangeTombstone(start, end, sequence);
+    }
+
+    public String getStartKey() {
+        return startKey;
+    }
+
+    public String getEndKey() {
+        return endKey;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RangeTombstone{[%s, %s), sequence=%d}", startKey, endKey, sequence);
+    }
+}
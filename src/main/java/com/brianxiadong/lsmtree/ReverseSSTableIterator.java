@@ -0,0 +1,123 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * SSTable 逆序迭代器
+ * 块格式通过索引定位到结束键所在的数据块，逐块向前读取、块内倒序输出，内存中只保留当前数据块；
+ * 旧格式无法向前定位，只能顺序读出范围内的记录后倒序输出
+ * 键范围为闭区间 [startKey, endKey]，null 表示无界；读取失败时抛出 UncheckedIOException
+ */
+public class ReverseSSTableIterator implements Iterator<KeyValue>, Closeable {
+    private final SSTable table;
+    private final String startKey;
+    private final String endKey;
+    // 块格式：复用的文件句柄（映射读取时为 null）、当前块和块内位置（从后往前）
+    private RandomAccessFile raf;
+    private List<KeyValue> block;
+    private int prevBlock;
+    private int pos;
+    private KeyValue pending;
+    private boolean done;
+
+    ReverseSSTableIterator(SSTable table, String startKey, String endKey) throws IOException {
+        this.table = table;
+        this.startKey = startKey;
+        this.endKey = endKey;
+        if (table.isBlockBased()) {
+            if (!table.isMapped()) {
+                raf = new RandomAccessFile(table.getFilePath(), "r");
+            }
+            int last = endKey == null ? -1 : table.findBlock(endKey);
+            prevBlock = last < 0 ? table.getBlockCount() - 1 : last;
+        } else {
+            block = readLegacy();
+            pos = block.size();
+            prevBlock = -1;
+        }
+    }
+
+    /**
+     * 旧格式：顺序读出范围内的记录
+     */
+    private List<KeyValue> readLegacy() throws IOException {
+        List<KeyValue> entries = new ArrayList<>();
+        for (KeyValue kv : table.getAllEntries()) {
+            if (endKey != null && kv.getKey().compareTo(endKey) > 0) {
+                break;
+            }
+            if (startKey == null || kv.getKey().compareTo(startKey) >= 0) {
+                entries.add(kv);
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pending == null && !done) {
+            try {
+                pending = advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            done = pending == null;
+        }
+        return pending != null;
+    }
+
+    @Override
+    public KeyValue next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        KeyValue kv = pending;
+        pending = null;
+        return kv;
+    }
+
+    /**
+     * 读取范围内的上一条记录，没有时返回 null
+     */
+    private KeyValue advance() throws IOException {
+        while (true) {
+            KeyValue kv = readPrev();
+            if (kv == null) {
+                return null;
+            }
+            if (endKey != null && kv.getKey().compareTo(endKey) > 0) {
+                continue;
+            }
+            if (startKey != null && kv.getKey().compareTo(startKey) < 0) {
+                return null;
+            }
+            return kv;
+        }
+    }
+
+    private KeyValue readPrev() throws IOException {
+        while (block == null || pos <= 0) {
+            if (prevBlock < 0) {
+                return null;
+            }
+            block = table.readBlock(prevBlock--, raf).getEntries();
+            pos = block.size();
+        }
+        return block.get(--pos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        block = null;
+        if (raf != null) {
+            raf.close();
+        }
+    }
+}
@@ -1,120 +1,636 @@
 package com.brianxiadong.lsmtree;
 
 import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Sorted String Table (SSTable) 实现
  * 磁盘上的有序不可变文件
+ *
+ * 块格式布局：[数据块...][过滤器块][范围墓碑块][索引块][元数据块][Footer]
+ * - 数据块：约 4KB 的有序记录（记录数 + 记录），每块单独压缩，首字节记录压缩类型
+ * - 过滤器块：按条目数确定大小的键过滤器（默认按缓存行分块的布隆过滤器）
+ * - 范围墓碑块：表内全部范围墓碑（起始键、结束键、序号），打开时整体加载并碎片化
+ * - 索引块：每个数据块的最后一个键、偏移和长度（稀疏索引）
+ * - 元数据块：条目数、块大小、过滤器块位置、压缩类型、最小/最大键、墓碑数、过滤器类型、最大/最小序号、范围墓碑块位置
+ * - Footer：索引块与元数据块的位置以及魔数，固定 32 字节
+ * 末尾没有魔数的文件按旧格式（顺序记录，可带 LSM1 压缩头）读取
+ *
+ * 开启 mmapReads 时块格式文件在打开时整体映射，数据块直接从映射内存解码；
+ * 映射通过引用计数管理，close/delete 后等正在进行的读取结束再解除映射
+ *
+ * 由 MANIFEST 元数据构造的表不读文件，键范围、序号范围等统计直接取自元数据，
+ * 索引和过滤器在第一次读取时才加载
  */
 public class SSTable {
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    static final long TABLE_MAGIC = 0x4C534D54424C4B32L; // "LSMTBLK2"
+    static final int FOOTER_SIZE = 32;
+
+    // 数据块压缩类型
+    static final byte CODEC_NONE = 0;
+    static final byte CODEC_LZ4 = 1;
+    private static final CompressionStrategy LZ4_DECOMPRESSOR = new LZ4CompressionStrategy();
+
+    // 进程内唯一的文件 id，作为块缓存键的一部分
+    private static final AtomicLong FILE_IDS = new AtomicLong();
+
     private final String filePath;
-    private final BloomFilter bloomFilter;
+    private volatile KeyFilter bloomFilter;
     private final long creationTime;
+    // 块格式的稀疏索引；旧格式文件为 null
+    private volatile BlockIndex index;
+    // 表内的范围墓碑，与索引一起加载
+    private volatile FragmentedRangeTombstones rangeTombstones = FragmentedRangeTombstones.EMPTY;
+    // 索引和过滤器是否已加载；由 MANIFEST 元数据构造的表延迟到第一次读取
+    private volatile boolean loaded;
+    private final LSMTreeOptions options;
+    private final long fileId = FILE_IDS.incrementAndGet();
+    // 共享块缓存，可为 null
+    private final BlockCache blockCache;
+    // 内存映射（未开启 mmapReads 或旧格式时为 null）
+    private volatile MappedByteBuffer mapped;
+    // 映射的引用计数：表自身持有 1，每个进行中的读取各持有 1
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    // 引用该表的读取视图数；被压缩替换后等引用全部释放才删除文件
+    private final AtomicInteger viewRefs = new AtomicInteger();
+    private volatile boolean obsolete;
+    private final AtomicBoolean deleted = new AtomicBoolean(false);
 
-    public SSTable(String filePath, List<KeyValue> sortedData) throws IOException {
-        this.filePath = filePath;
-        this.creationTime = System.currentTimeMillis();
-        this.bloomFilter = new BloomFilter(sortedData.size(), 0.01);
+    // 键范围与统计；空表的最小/最大键为 null
+    private String smallestKey;
+    private String largestKey;
+    private int entryCount;
+    private int tombstoneCount;
+    // 表内最小/最大序号，恢复时用于确定下一个序号
+    private long minSequence;
+    private long maxSequence;
+    // 早期块格式文件未记录键范围，此时不做范围过滤
+    private boolean keyRangeKnown = true;
+    private long fileSize;
+    // 所在层级，由 MANIFEST 记录；没有 MANIFEST 时从文件名解析
+    private volatile int level;
 
-        writeToFile(sortedData);
+    public SSTable(String filePath, List<KeyValue> sortedData) throws IOException {
+        this(filePath, sortedData, null);
     }
 
     public SSTable(String filePath, List<KeyValue> sortedData, CompressionStrategy compression) throws IOException {
+        this(filePath, sortedData, compression, null);
+    }
+
+    public SSTable(String filePath, List<KeyValue> sortedData, CompressionStrategy compression,
+            LSMTreeOptions options) throws IOException {
+        this(filePath, sortedData, Collections.emptyList(), compression, options);
+    }
+
+    /**
+     * 写入有序记录和范围墓碑
+     */
+    public SSTable(String filePath, List<KeyValue> sortedData, List<RangeTombstone> rangeTombstones,
+            CompressionStrategy compression, LSMTreeOptions options) throws IOException {
         this.filePath = filePath;
         this.creationTime = System.currentTimeMillis();
-        this.bloomFilter = new BloomFilter(sortedData.size(), 0.01);
-        writeToFile(sortedData, compression);
+        this.options = options;
+        this.blockCache = options == null ? null : options.getBlockCache();
+        this.level = levelOf(filePath);
+        this.bloomFilter = writeToFile(sortedData, rangeTombstones, compression, options);
+        if (!rangeTombstones.isEmpty()) {
+            this.rangeTombstones = new FragmentedRangeTombstones(rangeTombstones);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+            this.index = readIndex(raf, readFooter(raf));
+        }
+        this.fileSize = new File(filePath).length();
+        this.loaded = true;
+        mapIfEnabled(options);
     }
 
     /**
      * 从文件路径加载已存在的SSTable
+     * 块格式直接读取持久化的布隆过滤器和索引，旧格式需要扫描全文件重建过滤器
      */
     public SSTable(String filePath) throws IOException {
+        this(filePath, (LSMTreeOptions) null);
+    }
+
+    public SSTable(String filePath, LSMTreeOptions options) throws IOException {
         this.filePath = filePath;
         this.creationTime = Files.getLastModifiedTime(Paths.get(filePath)).toMillis();
-        this.bloomFilter = new BloomFilter(1000, 0.01);
+        this.options = options;
+        this.blockCache = options == null ? null : options.getBlockCache();
+        this.level = levelOf(filePath);
+        this.fileSize = new File(filePath).length();
+        if (isBlockFormat(filePath)) {
+            try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+                Footer footer = readFooter(raf);
+                Meta meta = readMeta(raf, footer);
+                this.index = readIndex(raf, footer);
+                this.bloomFilter = readFilter(raf, meta);
+                this.rangeTombstones = readRangeTombstones(raf, meta);
+                this.entryCount = meta.entryCount;
+                this.tombstoneCount = meta.tombstoneCount;
+                this.smallestKey = meta.smallestKey;
+                this.largestKey = meta.largestKey;
+                this.keyRangeKnown = meta.hasKeyRange;
+                // 未记录序号的文件中版本号是写入时的毫秒时间，不会超过文件修改时间
+                this.maxSequence = meta.maxSequence >= 0 ? meta.maxSequence : creationTime;
+                this.minSequence = meta.minSequence >= 0 ? meta.minSequence : 0;
+            }
+            mapIfEnabled(options);
+        } else {
+            this.index = null;
+            this.bloomFilter = rebuildBloomFilter();
+        }
+        this.loaded = true;
+    }
+
+    /**
+     * 按 MANIFEST 中的元数据构造，不做任何 IO；索引和过滤器在第一次读取时加载
+     */
+    SSTable(String filePath, Manifest.FileMetaData meta, LSMTreeOptions options) {
+        this.filePath = filePath;
+        this.creationTime = meta.getCreationTime();
+        this.options = options;
+        this.blockCache = options == null ? null : options.getBlockCache();
+        this.level = meta.getLevel();
+        this.fileSize = meta.getFileSize();
+        this.entryCount = meta.getEntryCount();
+        this.tombstoneCount = meta.getTombstoneCount();
+        this.keyRangeKnown = meta.isKeyRangeKnown();
+        this.smallestKey = meta.getSmallestKey();
+        this.largestKey = meta.getLargestKey();
+        this.minSequence = meta.getMinSequence();
+        this.maxSequence = meta.getMaxSequence();
+    }
+
+    /**
+     * 加载索引和过滤器（只在第一次读取时执行一次）；表已关闭时不再建立映射
+     */
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (isBlockFormat(filePath)) {
+                try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+                    Footer footer = readFooter(raf);
+                    Meta meta = readMeta(raf, footer);
+                    this.index = readIndex(raf, footer);
+                    this.bloomFilter = readFilter(raf, meta);
+                    this.rangeTombstones = readRangeTombstones(raf, meta);
+                }
+                if (!closed.get()) {
+                    mapIfEnabled(options);
+                }
+            } else {
+                this.bloomFilter = rebuildBloomFilter();
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * 无需抛出受检异常的读取路径使用
+     */
+    private void ensureLoadedUnchecked() {
+        try {
+            ensureLoaded();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 从文件名解析层级，例如 sstable_level1_timestamp.db；无法解析时为 0
+     */
+    static int levelOf(String filePath) {
+        String fileName = new File(filePath).getName();
+        if (fileName.contains("level")) {
+            try {
+                String levelStr = fileName.substring(fileName.indexOf("level") + 5);
+                levelStr = levelStr.substring(0, levelStr.indexOf('_'));
+                return Integer.parseInt(levelStr);
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 按配置只读映射整个文件；超过 2GB 的文件无法单次映射，退回普通读取
+     */
+    private void mapIfEnabled(LSMTreeOptions options) throws IOException {
+        if (options == null || !options.isMmapReads() || index == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+    }
+
+    /**
+     * 判断文件是否为块格式（末尾带魔数的 Footer）
+     */
+    public static boolean isBlockFormat(String filePath) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+            long len = raf.length();
+            if (len < FOOTER_SIZE) {
+                return false;
+            }
+            raf.seek(len - 8);
+            return raf.readLong() == TABLE_MAGIC;
+        }
+    }
+
+    private static Footer readFooter(RandomAccessFile raf) throws IOException {
+        raf.seek(raf.length() - FOOTER_SIZE);
+        Footer footer = new Footer(raf.readLong(), raf.readInt(), raf.readLong(), raf.readInt());
+        if (raf.readLong() != TABLE_MAGIC) {
+            throw new IOException("Invalid SSTable footer");
+        }
+        return footer;
+    }
+
+    private static byte[] readBytes(RandomAccessFile raf, long offset, int size) throws IOException {
+        byte[] buf = new byte[size];
+        raf.seek(offset);
+        raf.readFully(buf);
+        return buf;
+    }
+
+    /**
+     * 读取索引块
+     */
+    private static BlockIndex readIndex(RandomAccessFile raf, Footer footer) throws IOException {
+        byte[] buf = readBytes(raf, footer.indexOffset, footer.indexSize);
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(buf))) {
+            int count = dis.readInt();
+            String[] keys = new String[count];
+            long[] offsets = new long[count];
+            int[] sizes = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = dis.readUTF();
+                offsets[i] = dis.readLong();
+                sizes[i] = dis.readInt();
+            }
+            return new BlockIndex(keys, offsets, sizes);
+        }
+    }
+
+    /**
+     * 读取元数据块；早期块格式文件没有键范围和墓碑数，按整表可能包含任意键处理
+     */
+    private static Meta readMeta(RandomAccessFile raf, Footer footer) throws IOException {
+        byte[] bytes = readBytes(raf, footer.metaOffset, footer.metaSize);
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Meta meta = new Meta();
+            meta.entryCount = dis.readInt();
+            dis.readInt(); // 块大小
+            meta.filterOffset = dis.readLong();
+            meta.filterSize = dis.readInt();
+            dis.readUTF(); // 压缩类型
+            if (dis.available() > 0) {
+                meta.hasKeyRange = true;
+                if (dis.readBoolean()) {
+                    meta.smallestKey = dis.readUTF();
+                    meta.largestKey = dis.readUTF();
+                }
+                meta.tombstoneCount = dis.readInt();
+            }
+            // 早期块格式文件没有过滤器类型，为旧的 BloomFilter
+            meta.filterType = dis.available() > 0 ? dis.readUTF() : BloomFilter.TYPE;
+            meta.maxSequence = dis.available() > 0 ? dis.readLong() : -1;
+            meta.minSequence = dis.available() > 0 ? dis.readLong() : -1;
+            if (dis.available() > 0) {
+                meta.rangeDelOffset = dis.readLong();
+                meta.rangeDelSize = dis.readInt();
+            }
+            return meta;
+        }
+    }
+
+    /**
+     * 通过元数据块定位并加载过滤器块
+     */
+    private static KeyFilter readFilter(RandomAccessFile raf, Meta meta) throws IOException {
+        byte[] filter = readBytes(raf, meta.filterOffset, meta.filterSize);
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(filter))) {
+            switch (meta.filterType) {
+                case BlockedBloomFilter.TYPE:
+                    return BlockedBloomFilter.readFrom(dis);
+                case BloomFilter.TYPE:
+                    return BloomFilter.readFrom(dis);
+                default:
+                    throw new IOException("Unknown filter type: " + meta.filterType);
+            }
+        }
+    }
 
-        // 重新构建布隆过滤器
-        rebuildBloomFilter();
+    /**
+     * 读取范围墓碑块；早期文件没有该块
+     */
+    private static FragmentedRangeTombstones readRangeTombstones(RandomAccessFile raf, Meta meta)
+            throws IOException {
+        if (meta.rangeDelSize <= 0) {
+            return FragmentedRangeTombstones.EMPTY;
+        }
+        byte[] bytes = readBytes(raf, meta.rangeDelOffset, meta.rangeDelSize);
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = dis.readInt();
+            if (count == 0) {
+                return FragmentedRangeTombstones.EMPTY;
+            }
+            List<RangeTombstone> tombstones = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                tombstones.add(new RangeTombstone(dis.readUTF(), dis.readUTF(), dis.readLong()));
+            }
+            return new FragmentedRangeTombstones(tombstones);
+        }
     }
 
     /**
-     * 重新构建布隆过滤器
+     * 旧格式：扫描全文件重新构建布隆过滤器，同时统计键范围和墓碑数
      */
-    private void rebuildBloomFilter() throws IOException {
+    private KeyFilter rebuildBloomFilter() throws IOException {
         try (DataInputStream dis = openPayloadInput()) {
             int totalEntries = dis.readInt();
+            KeyFilter filter = new BlockedBloomFilter(totalEntries);
+            long minSeq = Long.MAX_VALUE;
+            long maxSeq = 0;
+            int tombstones = 0;
             for (int i = 0; i < totalEntries; i++) {
-                String key = dis.readUTF();
-                boolean deleted = dis.readBoolean();
-                if (!deleted) {
-                    dis.readUTF();
+                KeyValue kv = readRecord(dis);
+                filter.add(kv.getKey());
+                if (i == 0) {
+                    smallestKey = kv.getKey();
+                }
+                largestKey = kv.getKey();
+                if (kv.isDeleted()) {
+                    tombstones++;
                 }
-                dis.readLong();
-                bloomFilter.add(key);
+                minSeq = Math.min(minSeq, kv.getSequence());
+                maxSeq = Math.max(maxSeq, kv.getSequence());
             }
+            entryCount = totalEntries;
+            tombstoneCount = tombstones;
+            minSequence = totalEntries == 0 ? 0 : minSeq;
+            maxSequence = maxSeq;
+            return filter;
         }
     }
 
     /**
-     * 将排序数据写入文件
+     * 将排序数据按块写入文件，返回写入器构建的布隆过滤器
      */
-    private void writeToFile(List<KeyValue> sortedData) throws IOException {
-        try (DataOutputStream dos = new DataOutputStream(
-                new BufferedOutputStream(new FileOutputStream(filePath)))) {
+    private KeyFilter writeToFile(List<KeyValue> sortedData, List<RangeTombstone> tombstones,
+            CompressionStrategy compression, LSMTreeOptions options) throws IOException {
+        int bitsPerKey = options == null ? BlockedBloomFilter.DEFAULT_BITS_PER_KEY : options.getBloomBitsPerKey();
+        try (SSTableWriter writer = new SSTableWriter(filePath, sortedData.size(), compression, DEFAULT_BLOCK_SIZE,
+                bitsPerKey)) {
+            for (KeyValue kv : sortedData) {
+                writer.add(kv);
+            }
+            for (RangeTombstone t : tombstones) {
+                writer.addRangeTombstone(t);
+            }
+            writer.finish();
+            this.entryCount = writer.getEntryCount();
+            this.tombstoneCount = writer.getTombstoneCount();
+            this.smallestKey = writer.getSmallestKey();
+            this.largestKey = writer.getLargestKey();
+            this.minSequence = writer.getMinSequence();
+            this.maxSequence = writer.getMaxSequence();
+            return writer.getFilter();
+        }
+    }
 
-            // 写入条目数量
-            dos.writeInt(sortedData.size());
+    /**
+     * 压缩策略对应的块压缩类型
+     */
+    static byte codecOf(CompressionStrategy compression) {
+        if (compression != null && "LZ4".equals(compression.getType())) {
+            return CODEC_LZ4;
+        }
+        return CODEC_NONE;
+    }
 
-            // 写入所有数据条目
-            for (KeyValue kv : sortedData) {
-                // 添加到布隆过滤器
-                bloomFilter.add(kv.getKey());
-
-                // 写入数据：key, deleted, value(如果不是删除), timestamp
-                dos.writeUTF(kv.getKey());
-                dos.writeBoolean(kv.isDeleted());
-                if (!kv.isDeleted()) {
-                    dos.writeUTF(kv.getValue());
-                }
-                dos.writeLong(kv.getTimestamp());
+    /**
+     * 按块首字节的压缩类型解压数据块
+     */
+    static byte[] decompressBlock(byte[] block) throws IOException {
+        byte[] payload = Arrays.copyOfRange(block, 1, block.length);
+        switch (block[0]) {
+            case CODEC_NONE:
+                return payload;
+            case CODEC_LZ4:
+                return LZ4_DECOMPRESSOR.decompress(payload);
+            default:
+                throw new IOException("Unknown block compression type: " + block[0]);
+        }
+    }
+
+    /**
+     * 写入单条记录：key, deleted, value(如果不是删除), sequence
+     */
+    static void writeRecord(DataOutput out, KeyValue kv) throws IOException {
+        out.writeUTF(kv.getKey());
+        out.writeBoolean(kv.isDeleted());
+        if (!kv.isDeleted()) {
+            out.writeUTF(kv.getValue());
+        }
+        out.writeLong(kv.getSequence());
+    }
+
+    static KeyValue readRecord(DataInput in) throws IOException {
+        String key = in.readUTF();
+        boolean deleted = in.readBoolean();
+        String value = null;
+        if (!deleted) {
+            value = in.readUTF();
+        }
+        long sequence = in.readLong();
+        return new KeyValue(key, value, sequence, deleted);
+    }
+
+    /**
+     * 获取第 i 个数据块：优先查块缓存，未命中时读文件并放入缓存
+     */
+    private DataBlock getBlock(int i) throws IOException {
+        long offset = index.offsets[i];
+        if (blockCache != null) {
+            DataBlock cached = blockCache.get(fileId, offset);
+            if (cached != null) {
+                return cached;
             }
         }
+        DataBlock block = loadBlock(i, null);
+        if (blockCache != null) {
+            blockCache.put(fileId, offset, block, block.getByteSize());
+        }
+        return block;
     }
 
-    private void writeToFile(List<KeyValue> sortedData, CompressionStrategy compression) throws IOException {
-        if (compression == null || "NONE".equals(compression.getType())) {
-            writeToFile(sortedData);
-            return;
+    /**
+     * 读取、解压并解码第 i 个数据块（不经过缓存）
+     * 有映射时直接从映射内存解码；否则使用传入的 raf，为 null 时临时打开文件
+     */
+    private DataBlock loadBlock(int i, RandomAccessFile raf) throws IOException {
+        if (mapped != null && acquire()) {
+            try {
+                return decodeMapped(i);
+            } finally {
+                release();
+            }
         }
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(baos))) {
-            dos.writeInt(sortedData.size());
-            for (KeyValue kv : sortedData) {
-                bloomFilter.add(kv.getKey());
-                dos.writeUTF(kv.getKey());
-                dos.writeBoolean(kv.isDeleted());
-                if (!kv.isDeleted()) {
-                    dos.writeUTF(kv.getValue());
-                }
-                dos.writeLong(kv.getTimestamp());
+        if (raf != null) {
+            return DataBlock.decode(decompressBlock(readBytes(raf, index.offsets[i], index.sizes[i])));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            return DataBlock.decode(decompressBlock(readBytes(file, index.offsets[i], index.sizes[i])));
+        }
+    }
+
+    /**
+     * 从映射内存解码数据块：未压缩的块直接在切片上解码，压缩块复制负载后解压
+     */
+    private DataBlock decodeMapped(int i) throws IOException {
+        ByteBuffer buf = mapped.duplicate();
+        int start = (int) index.offsets[i];
+        buf.limit(start + index.sizes[i]).position(start);
+        byte codec = buf.get();
+        switch (codec) {
+            case CODEC_NONE:
+                return DataBlock.decode(buf.slice());
+            case CODEC_LZ4:
+                byte[] payload = new byte[buf.remaining()];
+                buf.get(payload);
+                return DataBlock.decode(LZ4_DECOMPRESSOR.decompress(payload));
+            default:
+                throw new IOException("Unknown block compression type: " + codec);
+        }
+    }
+
+    /**
+     * 读取前获取映射引用；表已关闭时返回 false，调用方改为读文件
+     */
+    private boolean acquire() {
+        while (true) {
+            int r = refs.get();
+            if (r <= 0) {
+                return false;
+            }
+            if (refs.compareAndSet(r, r + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release() {
+        if (refs.decrementAndGet() == 0) {
+            MappedByteBuffer buffer = mapped;
+            mapped = null;
+            if (buffer != null) {
+                unmap(buffer);
             }
         }
-        byte[] payload = baos.toByteArray();
-        byte[] compressed = compression.compress(payload);
-        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
-            out.writeBytes("LSM1");
-            String type = compression.getType();
-            String four = (type + "    ").substring(0, 4);
-            out.writeBytes(four);
-            out.write(compressed);
+    }
+
+    /**
+     * 立即解除映射，避免已删除文件的映射占用磁盘空间直到 GC
+     * Java 9+ 使用 Unsafe.invokeCleaner，Java 8 使用 DirectBuffer 的 cleaner，都不可用时交给 GC
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ignored) {
+                // 交给 GC 回收
+            }
+        } catch (Exception ignored) {
+            // 交给 GC 回收
         }
     }
 
-    private DataInputStream openPayloadInput() throws IOException {
+    /**
+     * 按键顺序逐块读取全部记录，同一时刻只持有一个数据块
+     * 不经过块缓存，避免压缩等整表扫描挤掉热点块
+     */
+    public SSTableIterator iterator() throws IOException {
+        ensureLoaded();
+        return new SSTableIterator(this);
+    }
+
+    /**
+     * 只迭代键范围 [startKey, endKey) 内的记录（null 表示无界），用于子压缩
+     */
+    public SSTableIterator iterator(String startKey, String endKey) throws IOException {
+        ensureLoaded();
+        return new SSTableIterator(this, startKey, endKey);
+    }
+
+    /**
+     * 按键降序迭代闭区间 [startKey, endKey] 内的记录（null 表示无界），从结束键所在的数据块向前逐块读取
+     */
+    public ReverseSSTableIterator reverseIterator(String startKey, String endKey) throws IOException {
+        ensureLoaded();
+        return new ReverseSSTableIterator(this, startKey, endKey);
+    }
+
+    /**
+     * 第一个最后键大于等于 key 的数据块，key 大于所有键时返回 -1
+     */
+    int findBlock(String key) {
+        ensureLoadedUnchecked();
+        return index.findBlock(key);
+    }
+
+    /**
+     * 各数据块的最后一个键，旧格式返回空列表；用于把压缩输入切分成大小相近的键区间
+     */
+    List<String> getBlockBoundaryKeys() {
+        ensureLoadedUnchecked();
+        return index == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(index.lastKeys));
+    }
+
+    /**
+     * 读取第 i 个数据块（不经过缓存），供 SSTableIterator 使用
+     */
+    DataBlock readBlock(int i, RandomAccessFile raf) throws IOException {
+        return loadBlock(i, raf);
+    }
+
+    DataInputStream openPayloadInput() throws IOException {
         FileInputStream fis = new FileInputStream(filePath);
         BufferedInputStream bis = new BufferedInputStream(fis);
         bis.mark(8);
@@ -146,64 +662,91 @@ public class SSTable {
     }
 
     /**
-     * 查询键值 - 简化实现，顺序搜索
+     * 查询键值
      */
     public String get(String key) {
-        // 首先检查布隆过滤器
-        if (!bloomFilter.mightContain(key)) {
+        KeyValue kv = getEntryRaw(key);
+        if (kv == null || kv.isDeleted()) {
             return null;
         }
-        try (DataInputStream dis = openPayloadInput()) {
-            int totalEntries = dis.readInt();
-            // 顺序搜索所有条目
-            for (int i = 0; i < totalEntries; i++) {
-                String currentKey = dis.readUTF();
-                boolean deleted = dis.readBoolean();
-                String value = null;
-                if (!deleted) {
-                    value = dis.readUTF();
-                }
-                
-                // 读取时间戳但不使用（为了向前兼容文件格式）
-                dis.readLong();
-                if (currentKey.equals(key)) {
-                    return deleted ? null : value;
-                }
+        return kv.getValue();
+    }
 
-                // 由于数据有序，如果当前键大于目标键，则不存在
-                if (currentKey.compareTo(key) > 0) {
-                    break;
+    /**
+     * 查询键的原始记录（包含墓碑）
+     * 块格式通过稀疏索引定位到唯一的数据块，再在块内二分查找
+     */
+    public KeyValue getEntryRaw(String key) {
+        return getEntryRaw(key, BlockedBloomFilter.hash(key));
+    }
+
+    /**
+     * 使用预先计算的键哈希（BlockedBloomFilter.hash）查询，避免逐表重复计算
+     */
+    public KeyValue getEntryRaw(String key, long keyHash) {
+        return getEntryRaw(key, keyHash, Long.MAX_VALUE);
+    }
+
+    /**
+     * 序号不大于 snapshot 的最新版本；同一个键的多个版本按序号降序相邻存放
+     */
+    public KeyValue getEntryRaw(String key, long keyHash, long snapshot) {
+        if (!mayContainKey(key)) {
+            return null;
+        }
+        try {
+            ensureLoaded();
+            if (!bloomFilter.mightContain(key, keyHash)) {
+                return null;
+            }
+            if (index != null) {
+                int b = index.findBlock(key);
+                if (b < 0) {
+                    return null;
                 }
+                DataBlock block = getBlock(b);
+                KeyValue kv = block.get(key);
+                if (kv == null || kv.getSequence() <= snapshot) {
+                    return kv;
+                }
+                return findVisibleVersion(key, block, snapshot);
             }
+            return getEntryLegacy(key, snapshot);
         } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
-    public KeyValue getEntryRaw(String key) {
-        if (!bloomFilter.mightContain(key)) {
-            return null;
+    /**
+     * 在块内找快照可见的版本；写入时同一个键的版本不会跨块
+     */
+    private static KeyValue findVisibleVersion(String key, DataBlock block, long snapshot) {
+        List<KeyValue> entries = block.getEntries();
+        for (int i = block.seek(key); i < entries.size() && entries.get(i).getKey().equals(key); i++) {
+            if (entries.get(i).getSequence() <= snapshot) {
+                return entries.get(i);
+            }
         }
+        return null;
+    }
+
+    /**
+     * 旧格式：顺序搜索
+     */
+    private KeyValue getEntryLegacy(String key, long snapshot) throws IOException {
         try (DataInputStream dis = openPayloadInput()) {
             int totalEntries = dis.readInt();
             for (int i = 0; i < totalEntries; i++) {
-                String currentKey = dis.readUTF();
-                boolean deleted = dis.readBoolean();
-                String value = null;
-                if (!deleted) {
-                    value = dis.readUTF();
+                KeyValue kv = readRecord(dis);
+                if (kv.getKey().equals(key) && kv.getSequence() <= snapshot) {
+                    return kv;
                 }
-                long timestamp = dis.readLong();
-                if (currentKey.equals(key)) {
-                    return new KeyValue(currentKey, value, timestamp, deleted);
-                }
-                if (currentKey.compareTo(key) > 0) {
+                // 由于数据有序，如果当前键大于目标键，则不存在
+                if (kv.getKey().compareTo(key) > 0) {
                     break;
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
         return null;
     }
@@ -213,21 +756,27 @@ public class SSTable {
      */
     public List<KeyValue> getAllEntries() throws IOException {
         List<KeyValue> entries = new ArrayList<>();
+        ensureLoaded();
 
-        try (DataInputStream dis = openPayloadInput()) {
+        if (index != null) {
+            if (mapped != null) {
+                for (int b = 0; b < index.size(); b++) {
+                    entries.addAll(loadBlock(b, null).getEntries());
+                }
+                return entries;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+                for (int b = 0; b < index.size(); b++) {
+                    entries.addAll(loadBlock(b, raf).getEntries());
+                }
+            }
+            return entries;
+        }
 
+        try (DataInputStream dis = openPayloadInput()) {
             int totalEntries = dis.readInt();
-
             for (int i = 0; i < totalEntries; i++) {
-                String key = dis.readUTF();
-                boolean deleted = dis.readBoolean();
-                String value = null;
-                if (!deleted) {
-                    value = dis.readUTF();
-                }
-                long timestamp = dis.readLong();
-
-                entries.add(new KeyValue(key, value, timestamp, deleted));
+                entries.add(readRecord(dis));
             }
         }
 
@@ -237,35 +786,160 @@ public class SSTable {
     public List<KeyValue> getRangeEntries(String startKey, String endKey, boolean includeStart, boolean includeEnd)
             throws IOException {
         List<KeyValue> entries = new ArrayList<>();
+        if (!overlaps(startKey, endKey)) {
+            return entries;
+        }
+        ensureLoaded();
+        if (index != null) {
+            int first = startKey == null ? 0 : index.findBlock(startKey);
+            if (first < 0) {
+                return entries;
+            }
+            for (int b = first; b < index.size(); b++) {
+                DataBlock block = getBlock(b);
+                int i = startKey == null ? 0 : block.seek(startKey);
+                for (; i < block.size(); i++) {
+                    KeyValue kv = block.getEntries().get(i);
+                    if (!collectInRange(entries, kv, startKey, endKey, includeStart, includeEnd)) {
+                        return entries;
+                    }
+                }
+            }
+            return entries;
+        }
+
         try (DataInputStream dis = openPayloadInput()) {
             int totalEntries = dis.readInt();
             for (int i = 0; i < totalEntries; i++) {
-                String key = dis.readUTF();
-                boolean deleted = dis.readBoolean();
-                String value = null;
-                if (!deleted) {
-                    value = dis.readUTF();
-                }
-                long timestamp = dis.readLong();
-
-                int s = startKey == null ? 1 : key.compareTo(startKey);
-                if (s < 0 || (s == 0 && !includeStart)) {
-                    continue;
-                }
-                int e = endKey == null ? -1 : key.compareTo(endKey);
-                if (e > 0 || (e == 0 && !includeEnd)) {
+                KeyValue kv = readRecord(dis);
+                if (!collectInRange(entries, kv, startKey, endKey, includeStart, includeEnd)) {
                     break;
                 }
-                entries.add(new KeyValue(key, value, timestamp, deleted));
             }
         }
         return entries;
     }
 
     /**
-     * 删除SSTable文件
+     * 范围内的记录加入结果；超过上界时返回 false 以结束扫描
+     */
+    private static boolean collectInRange(List<KeyValue> out, KeyValue kv, String startKey, String endKey,
+            boolean includeStart, boolean includeEnd) {
+        String key = kv.getKey();
+        int s = startKey == null ? 1 : key.compareTo(startKey);
+        if (s < 0 || (s == 0 && !includeStart)) {
+            return true;
+        }
+        int e = endKey == null ? -1 : key.compareTo(endKey);
+        if (e > 0 || (e == 0 && !includeEnd)) {
+            return false;
+        }
+        out.add(kv);
+        return true;
+    }
+
+    /**
+     * 键是否落在表的 [最小键, 最大键] 内
+     */
+    public boolean mayContainKey(String key) {
+        if (smallestKey == null) {
+            return !keyRangeKnown;
+        }
+        return key.compareTo(smallestKey) >= 0 && key.compareTo(largestKey) <= 0;
+    }
+
+    /**
+     * 查询范围与表的键范围是否可能重叠（null 表示无界）
+     */
+    public boolean overlaps(String startKey, String endKey) {
+        if (smallestKey == null) {
+            return !keyRangeKnown;
+        }
+        return (startKey == null || startKey.compareTo(largestKey) <= 0)
+                && (endKey == null || endKey.compareTo(smallestKey) >= 0);
+    }
+
+    /**
+     * 覆盖该键的范围墓碑的最大序号，没有时返回 0
+     */
+    public long maxCoveringSequence(String key) {
+        return maxCoveringSequence(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * 覆盖该键且快照可见的范围墓碑的最大序号，没有时返回 0
+     */
+    public long maxCoveringSequence(String key, long snapshot) {
+        if (!mayContainKey(key)) {
+            return 0;
+        }
+        ensureLoadedUnchecked();
+        return rangeTombstones.maxCoveringSequence(key, snapshot);
+    }
+
+    /**
+     * 表内的范围墓碑（碎片化前的原始形式）
+     */
+    public List<RangeTombstone> getRangeTombstones() {
+        ensureLoadedUnchecked();
+        return rangeTombstones.getTombstones();
+    }
+
+    /**
+     * 布隆过滤器判断键是否可能存在
+     */
+    public boolean mightContain(String key) {
+        ensureLoadedUnchecked();
+        return bloomFilter.mightContain(key);
+    }
+
+    /**
+     * 释放表自身持有的映射引用；进行中的读取结束后解除映射
+     */
+    public synchronized void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    /**
+     * 读取视图引用该表
+     */
+    public void ref() {
+        viewRefs.incrementAndGet();
+    }
+
+    /**
+     * 读取视图释放引用；表已被删除且没有其他引用时删除文件
+     */
+    public void unref() {
+        if (viewRefs.decrementAndGet() == 0 && obsolete) {
+            try {
+                deleteFile();
+            } catch (IOException e) {
+                e.printStackTrace(); // 实际项目中应该使用日志
+            }
+        }
+    }
+
+    /**
+     * 删除SSTable文件；仍被读取视图引用时推迟到最后一个引用释放
      */
     public void delete() throws IOException {
+        obsolete = true;
+        if (viewRefs.get() == 0) {
+            deleteFile();
+        }
+    }
+
+    private void deleteFile() throws IOException {
+        if (!deleted.compareAndSet(false, true)) {
+            return;
+        }
+        close();
+        if (blockCache != null) {
+            blockCache.invalidateFile(fileId);
+        }
         Files.deleteIfExists(Paths.get(filePath));
     }
 
@@ -276,4 +950,162 @@ public class SSTable {
     public long getCreationTime() {
         return creationTime;
     }
+
+    public long getFileId() {
+        return fileId;
+    }
+
+    public String getSmallestKey() {
+        return smallestKey;
+    }
+
+    public String getLargestKey() {
+        return largestKey;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getTombstoneCount() {
+        return tombstoneCount;
+    }
+
+    public long getMaxSequence() {
+        return maxSequence;
+    }
+
+    public long getMinSequence() {
+        return minSequence;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * 平移到其他层级；调用方负责把新层级记入 MANIFEST
+     */
+    void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * 早期块格式文件未记录键范围时为 false
+     */
+    public boolean isKeyRangeKnown() {
+        return keyRangeKnown;
+    }
+
+    /**
+     * 文件字节数（打开或写入时的大小）
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 生成 MANIFEST 记录用的元数据，文件名相对数据目录
+     */
+    Manifest.FileMetaData toFileMetaData() {
+        return new Manifest.FileMetaData(new File(filePath).getName(), level, fileSize, entryCount, tombstoneCount,
+                keyRangeKnown, smallestKey, largestKey, minSequence, maxSequence, creationTime);
+    }
+
+    /**
+     * 是否通过内存映射读取
+     */
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * 是否为块格式文件
+     */
+    public boolean isBlockBased() {
+        ensureLoadedUnchecked();
+        return index != null;
+    }
+
+    /**
+     * 数据块数量（旧格式为 0）
+     */
+    public int getBlockCount() {
+        ensureLoadedUnchecked();
+        return index == null ? 0 : index.size();
+    }
+
+    /**
+     * Footer：索引块和元数据块的位置
+     */
+    private static class Footer {
+        private final long indexOffset;
+        private final int indexSize;
+        private final long metaOffset;
+        private final int metaSize;
+
+        Footer(long indexOffset, int indexSize, long metaOffset, int metaSize) {
+            this.indexOffset = indexOffset;
+            this.indexSize = indexSize;
+            this.metaOffset = metaOffset;
+            this.metaSize = metaSize;
+        }
+    }
+
+    /**
+     * 元数据块内容
+     */
+    private static class Meta {
+        private int entryCount;
+        private long filterOffset;
+        private int filterSize;
+        // 早期块格式文件没有键范围字段
+        private boolean hasKeyRange;
+        private String smallestKey;
+        private String largestKey;
+        private int tombstoneCount;
+        private String filterType;
+        // 早期文件没有该字段时为 -1
+        private long maxSequence;
+        private long minSequence;
+        // 早期文件没有范围墓碑块时大小为 0
+        private long rangeDelOffset;
+        private int rangeDelSize;
+    }
+
+    /**
+     * 稀疏索引：块最后一个键、偏移和长度
+     */
+    private static class BlockIndex {
+        private final String[] lastKeys;
+        private final long[] offsets;
+        private final int[] sizes;
+
+        BlockIndex(String[] lastKeys, long[] offsets, int[] sizes) {
+            this.lastKeys = lastKeys;
+            this.offsets = offsets;
+            this.sizes = sizes;
+        }
+
+        int size() {
+            return lastKeys.length;
+        }
+
+        /**
+         * 二分查找第一个最后键大于等于 key 的数据块；key 大于所有键时返回 -1
+         */
+        int findBlock(String key) {
+            int lo = 0;
+            int hi = lastKeys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (lastKeys[mid].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo < lastKeys.length ? lo : -1;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * SSTable 顺序迭代器
+ * 块格式逐块解码，内存中只保留当前数据块；旧格式按记录流式读取
+ * 可限定键范围 [startKey, endKey)，块格式通过索引直接定位到起始块
+ * 读取失败时抛出 UncheckedIOException
+ */
+public class SSTableIterator implements Iterator<KeyValue>, Closeable {
+    private final SSTable table;
+    // 键范围，null 表示无界
+    private final String startKey;
+    private final String endKey;
+    // 块格式：复用的文件句柄（映射读取时为 null）和当前块
+    private RandomAccessFile raf;
+    private List<KeyValue> block;
+    private int nextBlock;
+    private int pos;
+    // 旧格式：记录流和剩余条目数
+    private DataInputStream legacy;
+    private int legacyRemaining;
+    // 预读的下一条记录；done 表示已越过范围或读完
+    private KeyValue pending;
+    private boolean done;
+
+    SSTableIterator(SSTable table) throws IOException {
+        this(table, null, null);
+    }
+
+    SSTableIterator(SSTable table, String startKey, String endKey) throws IOException {
+        this.table = table;
+        this.startKey = startKey;
+        this.endKey = endKey;
+        if (table.isBlockBased()) {
+            if (!table.isMapped()) {
+                raf = new RandomAccessFile(table.getFilePath(), "r");
+            }
+            if (startKey != null) {
+                int first = table.findBlock(startKey);
+                nextBlock = first < 0 ? table.getBlockCount() : first;
+            }
+        } else {
+            legacy = table.openPayloadInput();
+            legacyRemaining = legacy.readInt();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pending == null && !done) {
+            try {
+                pending = advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            done = pending == null;
+        }
+        return pending != null;
+    }
+
+    @Override
+    public KeyValue next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        KeyValue kv = pending;
+        pending = null;
+        return kv;
+    }
+
+    /**
+     * 读取范围内的下一条记录，没有时返回 null
+     */
+    private KeyValue advance() throws IOException {
+        while (true) {
+            KeyValue kv = readNext();
+            if (kv == null) {
+                return null;
+            }
+            if (startKey != null && kv.getKey().compareTo(startKey) < 0) {
+                continue;
+            }
+            if (endKey != null && kv.getKey().compareTo(endKey) >= 0) {
+                return null;
+            }
+            return kv;
+        }
+    }
+
+    private KeyValue readNext() throws IOException {
+        if (legacy != null) {
+            if (legacyRemaining <= 0) {
+                return null;
+            }
+            legacyRemaining--;
+            return SSTable.readRecord(legacy);
+        }
+        while (block == null || pos >= block.size()) {
+            if (nextBlock >= table.getBlockCount()) {
+                return null;
+            }
+            block = table.readBlock(nextBlock++, raf).getEntries();
+            pos = 0;
+        }
+        return block.get(pos++);
+    }
+
+    @Override
+    public void close() throws IOException {
+        block = null;
+        if (raf != null) {
+            raf.close();
+        }
+        if (legacy != null) {
+            legacy.close();
+        }
+    }
+}
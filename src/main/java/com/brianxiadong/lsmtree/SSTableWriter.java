@@ -0,0 +1,293 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 块格式 SSTable 写入器
+ * 按键有序追加记录，攒满一个数据块后单独压缩写出，最后写入过滤器块、范围墓碑块、索引块、元数据块和 Footer
+ */
+public class SSTableWriter implements Closeable {
+    private final String filePath;
+    private final int blockSize;
+    private final CompressionStrategy compression;
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private long offset;
+
+    // 当前数据块缓冲
+    private final ByteArrayOutputStream blockBuffer;
+    private final DataOutputStream blockOut;
+    private int blockEntries;
+    private String lastKey;
+
+    // 稀疏索引
+    private final List<String> indexKeys = new ArrayList<>();
+    private final List<Long> blockOffsets = new ArrayList<>();
+    private final List<Integer> blockSizes = new ArrayList<>();
+
+    // 按预期条目数和每键位数确定大小的分块布隆过滤器，随文件持久化
+    private final KeyFilter filter;
+
+    // 范围墓碑，finish 时整体写入范围墓碑块
+    private final List<RangeTombstone> rangeTombstones = new ArrayList<>();
+
+    // 键范围与统计，写入元数据块
+    private String smallestKey;
+    private int entryCount;
+    private int tombstoneCount;
+    private long minSequence = Long.MAX_VALUE;
+    private long maxSequence;
+    private boolean finished;
+
+    public SSTableWriter(String filePath, int expectedEntries) throws IOException {
+        this(filePath, expectedEntries, null);
+    }
+
+    public SSTableWriter(String filePath, int expectedEntries, CompressionStrategy compression) throws IOException {
+        this(filePath, expectedEntries, compression, SSTable.DEFAULT_BLOCK_SIZE);
+    }
+
+    public SSTableWriter(String filePath, int expectedEntries, CompressionStrategy compression, int blockSize)
+            throws IOException {
+        this(filePath, expectedEntries, compression, blockSize, BlockedBloomFilter.DEFAULT_BITS_PER_KEY);
+    }
+
+    public SSTableWriter(String filePath, int expectedEntries, CompressionStrategy compression, int blockSize,
+            int bloomBitsPerKey) throws IOException {
+        this.filePath = filePath;
+        this.blockSize = blockSize;
+        this.compression = compression == null ? new NoneCompressionStrategy() : compression;
+        this.filter = new BlockedBloomFilter(expectedEntries, bloomBitsPerKey);
+        this.file = new FileOutputStream(filePath);
+        this.out = new DataOutputStream(new BufferedOutputStream(file));
+        this.blockBuffer = new ByteArrayOutputStream(blockSize * 2);
+        this.blockOut = new DataOutputStream(blockBuffer);
+    }
+
+    /**
+     * 追加一条记录，调用方保证按 (键升序, 序号降序) 排列
+     * 数据块只在换键时切分，同一个键的所有版本落在同一个块内，按块的最后一个键定位时不会漏掉版本
+     */
+    public void add(KeyValue kv) throws IOException {
+        if (blockBuffer.size() >= blockSize && !kv.getKey().equals(lastKey)) {
+            flushBlock();
+        }
+        SSTable.writeRecord(blockOut, kv);
+        filter.add(kv.getKey());
+        blockEntries++;
+        entryCount++;
+        if (kv.isDeleted()) {
+            tombstoneCount++;
+        }
+        minSequence = Math.min(minSequence, kv.getSequence());
+        maxSequence = Math.max(maxSequence, kv.getSequence());
+        if (smallestKey == null) {
+            smallestKey = kv.getKey();
+        }
+        lastKey = kv.getKey();
+    }
+
+    /**
+     * 追加一条范围墓碑，可在 finish 之前任意时刻调用；表的键范围随之扩展到覆盖它
+     */
+    public void addRangeTombstone(RangeTombstone tombstone) {
+        rangeTombstones.add(tombstone);
+        minSequence = Math.min(minSequence, tombstone.getSequence());
+        maxSequence = Math.max(maxSequence, tombstone.getSequence());
+    }
+
+    /**
+     * 将当前数据块压缩写出，并记录索引项（块内最后一个键）
+     * 块布局：[压缩类型 1 字节][压缩后的 记录数 + 记录]；压缩无收益时按原样存储
+     */
+    private void flushBlock() throws IOException {
+        if (blockEntries == 0) {
+            return;
+        }
+        blockOut.flush();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(4 + blockBuffer.size());
+        new DataOutputStream(raw).writeInt(blockEntries);
+        blockBuffer.writeTo(raw);
+        byte[] payload = raw.toByteArray();
+
+        byte codec = SSTable.codecOf(compression);
+        if (codec != SSTable.CODEC_NONE) {
+            byte[] compressed = compression.compress(payload);
+            if (compressed.length < payload.length) {
+                payload = compressed;
+            } else {
+                codec = SSTable.CODEC_NONE;
+            }
+        }
+        out.writeByte(codec);
+        out.write(payload);
+        int size = 1 + payload.length;
+
+        indexKeys.add(lastKey);
+        blockOffsets.add(offset);
+        blockSizes.add(size);
+        offset += size;
+
+        blockBuffer.reset();
+        blockEntries = 0;
+    }
+
+    /**
+     * 写入过滤器块、索引块、元数据块和 Footer，并把文件内容落盘
+     * 返回后文件可以记入 MANIFEST；新文件的目录项由调用方在记入前统一落盘（Manifest.syncDirectory）
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        flushBlock();
+
+        // 过滤器块：内容由过滤器自身序列化，类型记录在元数据块
+        long filterOffset = offset;
+        ByteArrayOutputStream filterBytes = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(filterBytes)) {
+            filter.writeTo(dos);
+        }
+        filterBytes.writeTo(out);
+        int filterSize = filterBytes.size();
+        offset += filterSize;
+
+        // 范围墓碑块：[条数][起始键][结束键][序号]...
+        long rangeDelOffset = offset;
+        ByteArrayOutputStream rangeDelBytes = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(rangeDelBytes)) {
+            dos.writeInt(rangeTombstones.size());
+            for (RangeTombstone t : rangeTombstones) {
+                dos.writeUTF(t.getStartKey());
+                dos.writeUTF(t.getEndKey());
+                dos.writeLong(t.getSequence());
+            }
+        }
+        rangeDelBytes.writeTo(out);
+        offset += rangeDelBytes.size();
+
+        long indexOffset = offset;
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(indexBytes)) {
+            dos.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                dos.writeUTF(indexKeys.get(i));
+                dos.writeLong(blockOffsets.get(i));
+                dos.writeInt(blockSizes.get(i));
+            }
+        }
+        indexBytes.writeTo(out);
+        offset += indexBytes.size();
+
+        long metaOffset = offset;
+        ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(metaBytes)) {
+            dos.writeInt(entryCount);
+            dos.writeInt(blockSize);
+            dos.writeLong(filterOffset);
+            dos.writeInt(filterSize);
+            dos.writeUTF(compression.getType());
+            // 键范围（包含范围墓碑）：是否非空、最小键、最大键；墓碑数
+            String smallest = getSmallestKey();
+            dos.writeBoolean(smallest != null);
+            if (smallest != null) {
+                dos.writeUTF(smallest);
+                dos.writeUTF(getLargestKey());
+            }
+            dos.writeInt(tombstoneCount);
+            dos.writeUTF(filter.getType());
+            dos.writeLong(maxSequence);
+            dos.writeLong(getMinSequence());
+            dos.writeLong(rangeDelOffset);
+            dos.writeInt(rangeDelBytes.size());
+        }
+        metaBytes.writeTo(out);
+        offset += metaBytes.size();
+
+        // Footer: 索引块位置、元数据块位置、魔数
+        out.writeLong(indexOffset);
+        out.writeInt(indexBytes.size());
+        out.writeLong(metaOffset);
+        out.writeInt(metaBytes.size());
+        out.writeLong(SSTable.TABLE_MAGIC);
+        offset += SSTable.FOOTER_SIZE;
+
+        out.flush();
+        file.getChannel().force(true);
+        out.close();
+        finished = true;
+    }
+
+    /**
+     * 未调用 finish() 时只关闭文件，不写 Footer（文件不可用）
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+        }
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public KeyFilter getFilter() {
+        return filter;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getTombstoneCount() {
+        return tombstoneCount;
+    }
+
+    public long getMaxSequence() {
+        return maxSequence;
+    }
+
+    /**
+     * 最小序号，空表为 0
+     */
+    public long getMinSequence() {
+        return entryCount == 0 && rangeTombstones.isEmpty() ? 0 : minSequence;
+    }
+
+    public List<RangeTombstone> getRangeTombstones() {
+        return rangeTombstones;
+    }
+
+    /**
+     * 最小键，包含范围墓碑的起始键；未写入任何记录和范围墓碑时为 null
+     */
+    public String getSmallestKey() {
+        String smallest = smallestKey;
+        for (RangeTombstone t : rangeTombstones) {
+            if (smallest == null || t.getStartKey().compareTo(smallest) < 0) {
+                smallest = t.getStartKey();
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * 最大键，包含范围墓碑的结束键（作为闭区间上界是保守的）；未写入任何记录和范围墓碑时为 null
+     */
+    public String getLargestKey() {
+        String largest = smallestKey == null ? null : lastKey;
+        for (RangeTombstone t : rangeTombstones) {
+            if (largest == null || t.getEndKey().compareTo(largest) > 0) {
+                largest = t.getEndKey();
+            }
+        }
+        return largest;
+    }
+
+    public long getFileSize() {
+        return offset;
+    }
+}
@@ -9,6 +9,7 @@ public class SizeTieredCompactionStrategy implements CompactionStrategy {
     private final long baseSizeBytes;
     private final int minFilesPerTier;
     private CompressionStrategy compressionStrategy = new NoneCompressionStrategy();
+    private LSMTreeOptions options;
 
     public SizeTieredCompactionStrategy(String dataDir, long baseSizeBytes, int minFilesPerTier) {
         this.dataDir = dataDir;
@@ -32,8 +33,12 @@ public class SizeTieredCompactionStrategy implements CompactionStrategy {
         for (Map.Entry<Integer, List<SSTable>> e : tiers.entrySet()) {
             List<SSTable> list = e.getValue();
             if (list.size() >= minFilesPerTier) {
-                out.addAll(compactTier(list));
-                for (SSTable t : list) new File(t.getFilePath()).delete();
+                LeveledCompactionStrategy.CompactionTask task = LeveledCompactionStrategy.withOutsideTables(
+                        new LeveledCompactionStrategy.CompactionTask(e.getKey(), list), ssTables);
+                out.addAll(runCompaction(task));
+                // 输出的目录项落盘后再删除输入
+                Manifest.syncDirectory(dataDir);
+                for (SSTable t : list) t.delete();
             } else {
                 out.addAll(list);
             }
@@ -43,7 +48,19 @@ public class SizeTieredCompactionStrategy implements CompactionStrategy {
 
     @Override
     public LeveledCompactionStrategy.CompactionTask selectCompactionTask(List<SSTable> ssTables) {
-        Map<Integer, List<SSTable>> tiers = groupByTier(ssTables);
+        return pickCompaction(ssTables, Collections.emptySet());
+    }
+
+    /**
+     * 只在未参与压缩的表中分层，取文件最多且达到阈值的层
+     */
+    @Override
+    public LeveledCompactionStrategy.CompactionTask pickCompaction(List<SSTable> ssTables, Set<SSTable> compacting) {
+        List<SSTable> idle = new ArrayList<>();
+        for (SSTable t : ssTables) {
+            if (!compacting.contains(t)) idle.add(t);
+        }
+        Map<Integer, List<SSTable>> tiers = groupByTier(idle);
         int bestTier = -1;
         int bestCount = 0;
         for (Map.Entry<Integer, List<SSTable>> e : tiers.entrySet()) {
@@ -53,7 +70,13 @@ public class SizeTieredCompactionStrategy implements CompactionStrategy {
             }
         }
         if (bestTier == -1) return null;
-        return new LeveledCompactionStrategy.CompactionTask(bestTier, tiers.get(bestTier));
+        return LeveledCompactionStrategy.withOutsideTables(
+                new LeveledCompactionStrategy.CompactionTask(bestTier, tiers.get(bestTier)), ssTables);
+    }
+
+    @Override
+    public List<SSTable> runCompaction(LeveledCompactionStrategy.CompactionTask task) throws IOException {
+        return compactTier(task.getTables(), task);
     }
 
     private Map<Integer, List<SSTable>> groupByTier(List<SSTable> ssTables) {
@@ -77,35 +100,21 @@ public class SizeTieredCompactionStrategy implements CompactionStrategy {
         return tier;
     }
 
-    private List<KeyValue> mergeAndDedup(List<KeyValue> entries) {
-        entries.sort(KeyValue::compareTo);
-        Map<String, KeyValue> latest = new HashMap<>();
-        for (KeyValue e : entries) {
-            KeyValue cur = latest.get(e.getKey());
-            if (cur == null || e.getTimestamp() > cur.getTimestamp()) latest.put(e.getKey(), e);
-        }
-        List<KeyValue> out = new ArrayList<>(latest.values());
-        out.sort(Comparator.comparing(KeyValue::getKey));
-        return out;
-    }
-
-    private List<SSTable> compactTier(List<SSTable> tables) throws IOException {
-        List<KeyValue> all = new ArrayList<>();
-        for (SSTable t : tables) all.addAll(t.getAllEntries());
-        List<KeyValue> merged = mergeAndDedup(all);
-        List<SSTable> res = new ArrayList<>();
-        int entriesPer = 10000;
-        for (int i = 0; i < merged.size(); i += entriesPer) {
-            int end = Math.min(i + entriesPer, merged.size());
-            List<KeyValue> part = merged.subList(i, end);
-            String file = String.format("%s/sstable_level1_%d_%d.db", dataDir, System.currentTimeMillis(), i);
-            res.add(new SSTable(file, part, compressionStrategy));
-        }
-        return res;
+    private List<SSTable> compactTier(List<SSTable> tables, StreamingCompaction.TombstoneFilter tombstoneFilter) throws IOException {
+        final int entriesPer = 10000;
+        final long stamp = StreamingCompaction.nextFileStamp();
+        return StreamingCompaction.merge(tables,
+                i -> String.format("%s/sstable_level1_%d_%d.db", dataDir, stamp, i * entriesPer),
+                entriesPer, compressionStrategy, options, tombstoneFilter);
     }
 
     @Override
     public void setCompressionStrategy(CompressionStrategy compressionStrategy) {
         this.compressionStrategy = compressionStrategy == null ? new NoneCompressionStrategy() : compressionStrategy;
     }
+
+    @Override
+    public void setOptions(LSMTreeOptions options) {
+        this.options = options;
+    }
 }
@@ -0,0 +1,43 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 时间点快照
+ * 记下创建时的最新序号，按快照读取时只看序号不大于它的版本；
+ * 快照存活期间刷盘和压缩保留它看得到的旧版本，用完必须 close
+ */
+public class Snapshot implements Closeable {
+    private final SnapshotList owner;
+    private final long sequence;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    Snapshot(SnapshotList owner, long sequence) {
+        this.owner = owner;
+        this.sequence = sequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    /**
+     * 释放快照，可重复调用
+     */
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            owner.release(sequence);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot{sequence=" + sequence + ", released=" + released.get() + "}";
+    }
+}
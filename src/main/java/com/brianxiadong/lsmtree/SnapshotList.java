@@ -0,0 +1,90 @@
+package com.brianxiadong.lsmtree;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 活跃快照的序号集合
+ * 写入、刷盘和压缩据此判断旧版本是否仍被某个快照看到；创建和释放很少，
+ * 每次变化后重建有序数组，查询时无锁二分查找
+ */
+public class SnapshotList {
+    private static final long[] NONE = new long[0];
+
+    // 序号 -> 持有该序号的快照数
+    private final TreeMap<Long, Integer> counts = new TreeMap<>();
+    private volatile long[] sequences = NONE;
+    // 活跃快照总数，同一序号上的多个快照分别计数
+    private int size;
+
+    /**
+     * 登记一个快照；调用方保证序号不小于之后写入会覆盖的任何版本（在写锁或读锁内取最新序号）
+     */
+    synchronized Snapshot create(long sequence) {
+        counts.merge(sequence, 1, Integer::sum);
+        size++;
+        rebuild();
+        return new Snapshot(this, sequence);
+    }
+
+    synchronized void release(long sequence) {
+        Integer n = counts.get(sequence);
+        if (n == null) {
+            return;
+        }
+        if (n == 1) {
+            counts.remove(sequence);
+        } else {
+            counts.put(sequence, n - 1);
+        }
+        size--;
+        rebuild();
+    }
+
+    private void rebuild() {
+        long[] s = new long[counts.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> e : counts.entrySet()) {
+            s[i++] = e.getKey();
+        }
+        sequences = s;
+    }
+
+    /**
+     * 当前活跃快照的序号，升序；返回副本
+     */
+    public long[] toArray() {
+        long[] s = sequences;
+        return s.length == 0 ? NONE : Arrays.copyOf(s, s.length);
+    }
+
+    /**
+     * 活跃快照数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return sequences.length == 0;
+    }
+
+    /**
+     * 是否有快照的序号落在 [from, to) 内，即是否有快照看得到序号为 from、下一个更新版本序号为 to 的记录
+     */
+    public boolean anyInRange(long from, long to) {
+        return anyInRange(sequences, from, to);
+    }
+
+    static boolean anyInRange(long[] sorted, long from, long to) {
+        if (sorted.length == 0 || from >= to) {
+            return false;
+        }
+        int i = Arrays.binarySearch(sorted, from);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < sorted.length && sorted[i] < to;
+    }
+}
@@ -0,0 +1,339 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * 流式合并压缩
+ * 对输入表的顺序迭代器做 k 路归并，每个键保留最新版本和仍有活跃快照看得到的旧版本，边归并边写出输出 SSTable；
+ * 被输入中序号更大的范围墓碑覆盖、且没有快照看得到的记录直接丢弃，范围墓碑按输出表的键区间截取后写入；
+ * 调用方判定下面已没有旧版本的墓碑（含范围墓碑）不再写出；
+ * 堆内存约为 输入数 × 一个数据块 加上正在写的块，与总条目数无关
+ * 每个输出表结束时文件内容已落盘（SSTableWriter.finish），调用方记入 MANIFEST 前只需再落盘目录
+ *
+ * 开启子压缩（maxSubcompactions > 1）时按输入表的数据块边界键把键空间切成互不相交的区间，
+ * 各区间在 fork/join 线程池中独立归并，输出按区间顺序一起返回
+ */
+public final class StreamingCompaction {
+    // 上次分配的输出文件时间戳
+    private static final AtomicLong LAST_STAMP = new AtomicLong();
+
+    // 子压缩共用的工作线程池，线程数等于处理器数
+    private static final ForkJoinPool SUBCOMPACTION_POOL = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors());
+
+    private StreamingCompaction() {
+    }
+
+    /**
+     * 判定墓碑能否在压缩中丢弃
+     */
+    public interface TombstoneFilter {
+        // 保留所有墓碑
+        TombstoneFilter KEEP_ALL = new TombstoneFilter() {
+            @Override
+            public boolean canDropTombstone(KeyValue tombstone) {
+                return false;
+            }
+
+            @Override
+            public boolean canDropTombstone(RangeTombstone tombstone) {
+                return false;
+            }
+
+            @Override
+            public boolean hasSnapshotIn(long from, long to) {
+                return false;
+            }
+        };
+
+        boolean canDropTombstone(KeyValue tombstone);
+
+        boolean canDropTombstone(RangeTombstone tombstone);
+
+        /**
+         * 是否有活跃快照的序号落在 [from, to) 内
+         */
+        boolean hasSnapshotIn(long from, long to);
+    }
+
+    /**
+     * 输出文件名中的时间戳：取当前毫秒，但保证严格递增，并行的压缩任务不会生成同名文件
+     */
+    static long nextFileStamp() {
+        long now = System.currentTimeMillis();
+        return LAST_STAMP.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    /**
+     * 合并输入表并写出新表，每个输出表最多 maxEntriesPerTable 条
+     * fileNames 按输出序号生成文件路径；失败时删除已写出的输出
+     */
+    public static List<SSTable> merge(List<SSTable> inputs, IntFunction<String> fileNames, int maxEntriesPerTable,
+            CompressionStrategy compression, LSMTreeOptions options) throws IOException {
+        return merge(inputs, fileNames, maxEntriesPerTable, compression, options, TombstoneFilter.KEEP_ALL);
+    }
+
+    /**
+     * 合并时丢弃 tombstoneFilter 判定为可丢弃的墓碑
+     */
+    public static List<SSTable> merge(List<SSTable> inputs, IntFunction<String> fileNames, int maxEntriesPerTable,
+            CompressionStrategy compression, LSMTreeOptions options, TombstoneFilter tombstoneFilter)
+            throws IOException {
+        int maxSubcompactions = options == null ? 1 : options.getMaxSubcompactions();
+        List<String> splits = splitKeys(inputs, maxSubcompactions, maxEntriesPerTable);
+        AtomicInteger outputNumbers = new AtomicInteger();
+        if (splits.isEmpty()) {
+            return mergeRange(inputs, null, null, fileNames, outputNumbers, maxEntriesPerTable, compression, options,
+                    tombstoneFilter);
+        }
+
+        // 区间 i 为 [splits[i-1], splits[i])，首尾无界
+        List<ForkJoinTask<List<SSTable>>> tasks = new ArrayList<>(splits.size() + 1);
+        for (int i = 0; i <= splits.size(); i++) {
+            String start = i == 0 ? null : splits.get(i - 1);
+            String end = i == splits.size() ? null : splits.get(i);
+            tasks.add(SUBCOMPACTION_POOL.submit(() -> mergeRange(inputs, start, end, fileNames, outputNumbers,
+                    maxEntriesPerTable, compression, options, tombstoneFilter)));
+        }
+
+        // 等所有区间结束再汇总，任一区间失败时删除其余区间的输出
+        List<SSTable> outputs = new ArrayList<>();
+        Throwable failure = null;
+        for (ForkJoinTask<List<SSTable>> task : tasks) {
+            try {
+                outputs.addAll(task.get());
+            } catch (ExecutionException e) {
+                failure = failure == null ? e.getCause() : failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure == null) {
+            return outputs;
+        }
+        for (SSTable t : outputs) {
+            t.delete();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IOException("Subcompaction interrupted", failure);
+    }
+
+    /**
+     * 子压缩切分点：汇总所有输入的数据块边界键排序后等距取点，使各区间的数据块数相近
+     * 每个区间至少够写满一个输出表，输入不足两个区间时返回空列表
+     */
+    static List<String> splitKeys(List<SSTable> inputs, int maxSubcompactions, int maxEntriesPerTable) {
+        long total = 0;
+        for (SSTable t : inputs) {
+            total += t.getEntryCount();
+        }
+        int ranges = (int) Math.min(maxSubcompactions, total / Math.max(1, maxEntriesPerTable));
+        List<String> splits = new ArrayList<>();
+        if (ranges <= 1) {
+            return splits;
+        }
+        List<String> boundaries = new ArrayList<>();
+        for (SSTable t : inputs) {
+            boundaries.addAll(t.getBlockBoundaryKeys());
+        }
+        boundaries.sort(null);
+        for (int i = 1; i < ranges; i++) {
+            String key = boundaries.isEmpty() ? null : boundaries.get(i * boundaries.size() / ranges);
+            // 数据块太少时相邻切分点可能相同，跳过避免空区间
+            if (key != null && (splits.isEmpty() || key.compareTo(splits.get(splits.size() - 1)) > 0)) {
+                splits.add(key);
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * 归并键区间 [startKey, endKey) 内的记录并写出，null 表示无界
+     */
+    private static List<SSTable> mergeRange(List<SSTable> inputs, String startKey, String endKey,
+            IntFunction<String> fileNames, AtomicInteger outputNumbers, int maxEntriesPerTable,
+            CompressionStrategy compression, LSMTreeOptions options, TombstoneFilter tombstoneFilter)
+            throws IOException {
+        long remaining = 0;
+        for (SSTable t : inputs) {
+            remaining += t.getEntryCount();
+        }
+        int bitsPerKey = options == null ? BlockedBloomFilter.DEFAULT_BITS_PER_KEY : options.getBloomBitsPerKey();
+
+        // 本区间内的范围墓碑：全部用于遮蔽输入记录，不能丢弃的写入输出
+        List<RangeTombstone> covering = new ArrayList<>();
+        List<RangeTombstone> kept = new ArrayList<>();
+        for (SSTable t : inputs) {
+            for (RangeTombstone tombstone : t.getRangeTombstones()) {
+                RangeTombstone clipped = tombstone.clip(startKey, endKey);
+                if (clipped != null) {
+                    covering.add(clipped);
+                    if (!tombstoneFilter.canDropTombstone(clipped)) {
+                        kept.add(clipped);
+                    }
+                }
+            }
+        }
+        FragmentedRangeTombstones coverage = covering.isEmpty() ? FragmentedRangeTombstones.EMPTY
+                : new FragmentedRangeTombstones(covering);
+
+        List<SSTableIterator> iterators = new ArrayList<>(inputs.size());
+        List<SSTable> outputs = new ArrayList<>();
+        SSTableWriter writer = null;
+        // 当前输出表负责的键区间下界，范围墓碑按输出表切开
+        String lower = startKey;
+        boolean full = false;
+        try {
+            for (SSTable t : inputs) {
+                if (startKey == null && endKey == null) {
+                    iterators.add(t.iterator());
+                } else if (t.overlaps(startKey, endKey)) {
+                    iterators.add(t.iterator(startKey, endKey));
+                }
+            }
+            MergingIterator merged = new MergingIterator(iterators, false, true);
+            List<KeyValue> versions = new ArrayList<>();
+            KeyValue pending = merged.hasNext() ? merged.next() : null;
+            while (pending != null) {
+                // 同一个键的全部版本，按序号降序
+                versions.clear();
+                versions.add(pending);
+                pending = null;
+                while (merged.hasNext()) {
+                    KeyValue kv = merged.next();
+                    if (!kv.getKey().equals(versions.get(0).getKey())) {
+                        pending = kv;
+                        break;
+                    }
+                    versions.add(kv);
+                }
+                List<KeyValue> retained = retain(versions, coverage, tombstoneFilter);
+                if (retained.isEmpty()) {
+                    remaining -= versions.size();
+                    continue;
+                }
+                String key = retained.get(0).getKey();
+                if (full) {
+                    // 写满的表在见到下一个键时才结束，这样它的范围墓碑可以截到该键为止；同一个键的版本不跨表
+                    outputs.add(finish(writer, kept, lower, key, options));
+                    writer = null;
+                    lower = key;
+                    full = false;
+                }
+                if (writer == null) {
+                    // 过滤器按本表最多可能写入的条目数确定大小
+                    int expected = (int) Math.max(1, Math.min(maxEntriesPerTable, remaining));
+                    writer = new SSTableWriter(fileNames.apply(outputNumbers.getAndIncrement()), expected,
+                            compression, SSTable.DEFAULT_BLOCK_SIZE, bitsPerKey);
+                }
+                for (KeyValue kv : retained) {
+                    writer.add(kv);
+                }
+                remaining -= versions.size();
+                full = writer.getEntryCount() >= maxEntriesPerTable;
+            }
+            if (writer == null && hasTombstoneIn(kept, lower, endKey)) {
+                writer = new SSTableWriter(fileNames.apply(outputNumbers.getAndIncrement()), 1,
+                        compression, SSTable.DEFAULT_BLOCK_SIZE, bitsPerKey);
+            }
+            if (writer != null) {
+                outputs.add(finish(writer, kept, lower, endKey, options));
+                writer = null;
+            }
+            return outputs;
+        } catch (IOException | RuntimeException e) {
+            if (writer != null) {
+                writer.close();
+                Files.deleteIfExists(Paths.get(writer.getFilePath()));
+            }
+            for (SSTable t : outputs) {
+                t.delete();
+            }
+            if (e instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e).getCause();
+            }
+            throw e;
+        } finally {
+            for (SSTableIterator it : iterators) {
+                it.close();
+            }
+        }
+    }
+
+    /**
+     * 一个键需要保留的版本（输入按序号降序）
+     * 版本 v 对序号在 [v, 上界) 内的快照可见，上界取更新一个版本的序号和覆盖它的范围墓碑序号中较小者；
+     * 最新且未被范围删除的版本总是保留，其余版本只在有快照落在可见区间内时保留；
+     * 最旧的保留版本是墓碑且下面已没有旧版本时一并丢弃，快照看到的都是"不存在"
+     */
+    static List<KeyValue> retain(List<KeyValue> versions, FragmentedRangeTombstones coverage,
+            TombstoneFilter tombstoneFilter) {
+        List<KeyValue> retained = new ArrayList<>(1);
+        long covering = coverage.maxCoveringSequence(versions.get(0).getKey());
+        long newer = Long.MAX_VALUE;
+        for (KeyValue kv : versions) {
+            long sequence = kv.getSequence();
+            if (sequence == newer) {
+                continue;
+            }
+            long upper = covering > sequence ? Math.min(newer, covering) : newer;
+            if (upper == Long.MAX_VALUE || tombstoneFilter.hasSnapshotIn(sequence, upper)) {
+                retained.add(kv);
+            }
+            newer = sequence;
+        }
+        while (!retained.isEmpty()) {
+            KeyValue oldest = retained.get(retained.size() - 1);
+            if (!oldest.isDeleted() || !tombstoneFilter.canDropTombstone(oldest)) {
+                break;
+            }
+            retained.remove(retained.size() - 1);
+        }
+        return retained;
+    }
+
+    private static boolean hasTombstoneIn(List<RangeTombstone> tombstones, String lower, String upper) {
+        for (RangeTombstone t : tombstones) {
+            if (t.clip(lower, upper) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 写入落在 [lower, upper) 内的范围墓碑后结束输出表
+     */
+    private static SSTable finish(SSTableWriter writer, List<RangeTombstone> tombstones, String lower, String upper,
+            LSMTreeOptions options) throws IOException {
+        for (RangeTombstone t : tombstones) {
+            RangeTombstone clipped = t.clip(lower, upper);
+            if (clipped != null) {
+                writer.addRangeTombstone(clipped);
+            }
+        }
+        writer.finish();
+        writer.close();
+        return new SSTable(writer.getFilePath(), options);
+    }
+}
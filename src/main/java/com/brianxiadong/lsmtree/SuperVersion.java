@@ -0,0 +1,69 @@
+package com.brianxiadong.lsmtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读取视图（super version）
+ * 某一时刻活跃 MemTable、不可变 MemTable 和 SSTable 列表的不可变快照，均按新到旧排列；
+ * 刷盘和压缩时整体替换，读取者通过引用计数固定视图，期间被替换的 SSTable 在视图释放后才删除
+ */
+public class SuperVersion {
+    private final MemTable activeMemTable;
+    private final List<MemTable> immutableMemTables;
+    private final List<SSTable> ssTables;
+    // LSMTree 持有 1 个引用，每个进行中的读取各持有 1 个
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    SuperVersion(MemTable activeMemTable, List<MemTable> immutableMemTables, List<SSTable> ssTables) {
+        this.activeMemTable = activeMemTable;
+        this.immutableMemTables = Collections.unmodifiableList(new ArrayList<>(immutableMemTables));
+        this.ssTables = Collections.unmodifiableList(new ArrayList<>(ssTables));
+        for (SSTable t : this.ssTables) {
+            t.ref();
+        }
+    }
+
+    /**
+     * 增加引用；视图已被释放时返回 false，调用方重新读取当前视图
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int r = refs.get();
+            if (r <= 0) {
+                return false;
+            }
+            if (refs.compareAndSet(r, r + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            for (SSTable t : ssTables) {
+                t.unref();
+            }
+        }
+    }
+
+    public MemTable getActiveMemTable() {
+        return activeMemTable;
+    }
+
+    /**
+     * 不可变 MemTable，新的在前
+     */
+    public List<MemTable> getImmutableMemTables() {
+        return immutableMemTables;
+    }
+
+    /**
+     * SSTable，按最大序号从新到旧
+     */
+    public List<SSTable> getSSTables() {
+        return ssTables;
+    }
+}
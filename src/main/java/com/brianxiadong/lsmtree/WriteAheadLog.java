@@ -1,31 +1,353 @@
 package com.brianxiadong.lsmtree;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Checksum;
 
 /**
  * Write-Ahead Log 实现
  * 确保数据持久性和崩溃恢复
+ *
+ * 二进制格式：[文件魔数 4 字节] 之后是若干条记录
+ * 记录：[负载长度 int][负载的 CRC32C int][负载]
+ * 负载：[操作 byte][键长 int][键 UTF-8][值长 int，-1 表示无值][值 UTF-8][序号 long]
+ * 范围删除的键为起始键、值为结束键
+ * 批量负载：[BATCH_MARKER byte][条目数 int][条目负载...]，整批共用一个校验和，恢复时要么全部生效要么全部丢弃
+ * 恢复时遇到不完整或校验失败的记录即停止，打开时截断这样的尾部；
+ * 没有魔数的旧文本格式文件在打开时转换为二进制格式
+ *
+ * 组提交：写入者把编码好的记录放入共享的待写缓冲区并得到序号，
+ * 第一个需要落盘的写入者成为 leader，交换缓冲区后在锁外一次写出整批记录，
+ * 批内有 FSYNC 请求时只调用一次 FileChannel.force，其余写入者等待自己的序号完成
+ *
+ * 写出或 force 失败后日志不再可用：失败批次可能只写了一部分，之后追加的记录会落在残缺记录后面，
+ * 恢复时读不到；因此失败后不再写出任何记录，enqueue 和尚未落盘的 sync 都抛出异常，
+ * 已经写出（FSYNC 时为已经 force）的记录仍视为完成。重新打开文件时截断残缺的尾部
  */
 public class WriteAheadLog {
+    static final int MAGIC = 0x57414C32; // "WAL2"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    // 操作 + 键长 + 值长 + 序号
+    private static final int MIN_PAYLOAD_SIZE = 1 + 4 + 4 + 8;
+    // 批量记录的标记字节，不与 Operation 的序号冲突
+    private static final byte BATCH_MARKER = (byte) 0x40;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    // NONE 模式下待写缓冲超过该大小时由当前写入者写出，限制内存占用
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
     private final String filePath;
-    private BufferedWriter writer;
-    private final Object lock = new Object();
+    private final Durability defaultDurability;
+    private FileChannel channel;
+    // 复用的编码缓冲区：负载先写入堆缓冲计算校验和，再整条拷入直接缓冲区
+    private ByteBuffer payload = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    // 双直接缓冲区：pending 接收新记录，spare 由 leader 写出后归还（写出期间为 null）
+    private ByteBuffer pending = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    private final Checksum checksum = Crc32c.create();
+    private final ReentrantLock lock = new ReentrantLock();
+    // 一批记录写出完成（或 leader 让位）时通知等待者
+    private final Condition batchDone = lock.newCondition();
+
+    // 组提交状态（均由 lock 保护）
+    private long appendedSeq; // 最后一条进入 pending 的记录序号
+    private long writtenSeq; // 已写入文件的最大序号
+    private long syncedSeq; // 已 fsync 的最大序号
+    private long syncRequestedSeq; // 请求 fsync 的最大序号
+    private boolean leaderActive;
+    private IOException failure; // 第一次写出或 force 失败的异常，之后日志不再写出
+    // 写出批次数与 fsync 次数，用于观察组提交效果
+    private long batchCount;
+    private long syncCount;
 
     public WriteAheadLog(String filePath) throws IOException {
+        this(filePath, Durability.FLUSH);
+    }
+
+    public WriteAheadLog(String filePath, Durability defaultDurability) throws IOException {
         this.filePath = filePath;
-        this.writer = new BufferedWriter(new FileWriter(filePath, true));
+        this.defaultDurability = defaultDurability;
+        File file = new File(filePath);
+        if (file.exists() && file.length() > 0 && !isBinaryFormat(filePath)) {
+            convertLegacyFile();
+        }
+        this.channel = openChannel();
     }
 
     /**
-     * 追加日志条目
+     * 打开文件用于追加：新文件写入魔数，已有文件截断不完整的尾部记录
+     */
+    private FileChannel openChannel() throws IOException {
+        FileChannel ch = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (ch.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC);
+            writeFully(ch, header);
+        } else {
+            long valid = readRecords(filePath, null);
+            if (valid < ch.size()) {
+                ch.truncate(valid);
+            }
+        }
+        ch.position(ch.size());
+        return ch;
+    }
+
+    /**
+     * 旧文本格式：读出全部条目，写成二进制格式后替换原文件
+     */
+    private void convertLegacyFile() throws IOException {
+        List<LogEntry> entries = readLegacyRecords(filePath, null);
+        Path tmp = Paths.get(filePath + ".tmp");
+        Files.deleteIfExists(tmp);
+        WriteAheadLog converted = new WriteAheadLog(tmp.toString());
+        for (LogEntry entry : entries) {
+            converted.append(entry);
+        }
+        converted.close();
+        Files.move(tmp, Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * 追加日志条目，使用默认持久化级别
      */
     public void append(LogEntry entry) throws IOException {
-        synchronized (lock) {
-            writer.write(entry.toString());
-            writer.newLine();
-            writer.flush(); // 确保立即写入磁盘
+        append(entry, defaultDurability);
+    }
+
+    /**
+     * 追加日志条目，返回时已达到指定的持久化级别
+     */
+    public void append(LogEntry entry, Durability durability) throws IOException {
+        sync(enqueue(entry), durability);
+    }
+
+    /**
+     * 编码记录放入待写缓冲区并返回序号，不做 I/O；调用方随后用 sync 等待落盘
+     * 先在调用方的锁内入队可以让日志顺序与 MemTable 的应用顺序一致，而等待放在锁外以便合并成组；
+     * 日志写出失败过时抛出异常
+     */
+    public long enqueue(LogEntry entry) throws IOException {
+        byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = entry.value == null ? null : entry.value.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            checkNotFailed();
+            ByteBuffer buf = payloadBuffer(entrySize(key, value));
+            putEntry(buf, entry, key, value);
+            return appendPayload(buf);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 多个条目编码为一条批量记录入队，返回该记录的序号
+     */
+    public long enqueue(List<LogEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("entries cannot be empty");
+        }
+        if (entries.size() == 1) {
+            return enqueue(entries.get(0));
+        }
+        int n = entries.size();
+        byte[][] keys = new byte[n][];
+        byte[][] values = new byte[n][];
+        int payloadSize = 1 + 4;
+        for (int i = 0; i < n; i++) {
+            LogEntry entry = entries.get(i);
+            keys[i] = entry.key.getBytes(StandardCharsets.UTF_8);
+            values[i] = entry.value == null ? null : entry.value.getBytes(StandardCharsets.UTF_8);
+            payloadSize += entrySize(keys[i], values[i]);
+        }
+        lock.lock();
+        try {
+            checkNotFailed();
+            ByteBuffer buf = payloadBuffer(payloadSize);
+            buf.put(BATCH_MARKER).putInt(n);
+            for (int i = 0; i < n; i++) {
+                putEntry(buf, entries.get(i), keys[i], values[i]);
+            }
+            return appendPayload(buf);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int entrySize(byte[] key, byte[] value) {
+        return MIN_PAYLOAD_SIZE + key.length + (value == null ? 0 : value.length);
+    }
+
+    private static void putEntry(ByteBuffer buf, LogEntry entry, byte[] key, byte[] value) {
+        buf.put((byte) entry.operation.ordinal());
+        buf.putInt(key.length).put(key);
+        if (value == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(value.length).put(value);
+        }
+        buf.putLong(entry.sequence);
+    }
+
+    /**
+     * 返回清空的负载缓冲区（调用时持有 lock）
+     */
+    private ByteBuffer payloadBuffer(int payloadSize) {
+        if (payload.capacity() < payloadSize) {
+            payload = ByteBuffer.allocate(payloadSize);
+        }
+        payload.clear();
+        return payload;
+    }
+
+    /**
+     * 为负载缓冲区中的内容计算校验和，作为一条记录追加到 pending（调用时持有 lock）
+     */
+    private long appendPayload(ByteBuffer buf) {
+        int payloadSize = buf.position();
+        checksum.reset();
+        checksum.update(buf.array(), 0, payloadSize);
+
+        int recordSize = RECORD_HEADER_SIZE + payloadSize;
+        if (pending.remaining() < recordSize) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(pending.capacity() * 2,
+                    pending.position() + recordSize));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.putInt(payloadSize).putInt((int) checksum.getValue());
+        pending.put(buf.array(), 0, payloadSize);
+
+        return ++appendedSeq;
+    }
+
+    /**
+     * 等待序号 seq 及之前的记录达到指定持久化级别；需要 I/O 且没有 leader 时由当前线程写出整批
+     */
+    public void sync(long seq, Durability durability) throws IOException {
+        lock.lock();
+        try {
+            if (durability == Durability.NONE) {
+                // 不等待落盘，只在积压过多时顺带写出
+                if (pending.position() < MAX_PENDING_BYTES || leaderActive) {
+                    return;
+                }
+                durability = Durability.FLUSH;
+            }
+            if (durability == Durability.FSYNC && seq > syncRequestedSeq) {
+                syncRequestedSeq = seq;
+            }
+            while (!isDurable(seq, durability)) {
+                if (leaderActive) {
+                    batchDone.awaitUninterruptibly();
+                    continue;
+                }
+                leaderActive = true;
+                try {
+                    writeBatch();
+                } finally {
+                    leaderActive = false;
+                    batchDone.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已达到要求返回 true；日志失败后不会再达到的抛出异常，而不是让等待者继续等或由后续批次误报完成
+     */
+    private boolean isDurable(long seq, Durability durability) throws IOException {
+        boolean durable = durability == Durability.FSYNC ? syncedSeq >= seq : writtenSeq >= seq;
+        if (!durable && failure != null) {
+            throw new IOException("WAL write failed", failure);
+        }
+        return durable;
+    }
+
+    private void checkNotFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException("WAL write failed", failure);
+        }
+    }
+
+    /**
+     * leader 写出当前待写缓冲区（调用时持有 lock，I/O 期间释放）
+     * 交换缓冲区后，其他写入者可以继续向新的 pending 追加，成为下一批
+     */
+    private void writeBatch() throws IOException {
+        ByteBuffer batch = pending;
+        pending = spare;
+        spare = null;
+        long batchSeq = appendedSeq;
+        boolean needSync = syncRequestedSeq > syncedSeq;
+        FileChannel ch = channel;
+
+        lock.unlock();
+        IOException error = null;
+        try {
+            batch.flip();
+            writeFully(ch, batch);
+            if (needSync) {
+                ch.force(false);
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+            batch.clear();
+            spare = batch;
+        }
+        if (error != null) {
+            // 文件末尾可能是残缺的记录，丢弃待写记录并停止写出
+            failure = error;
+            pending.clear();
+            throw error;
+        }
+        writtenSeq = Math.max(writtenSeq, batchSeq);
+        batchCount++;
+        if (needSync) {
+            syncedSeq = Math.max(syncedSeq, batchSeq);
+            syncCount++;
+        }
+    }
+
+    /**
+     * 等待进行中的批次完成并写出剩余的待写记录（调用时持有 lock）
+     */
+    private void drain() throws IOException {
+        while (leaderActive) {
+            batchDone.awaitUninterruptibly();
+        }
+        checkNotFailed();
+        if (pending.position() > 0) {
+            leaderActive = true;
+            try {
+                writeBatch();
+            } finally {
+                leaderActive = false;
+                batchDone.signalAll();
+            }
         }
     }
 
@@ -33,9 +355,13 @@ public class WriteAheadLog {
      * 检查点操作 - 清理已刷盘的日志
      */
     public void checkpoint() throws IOException {
-        synchronized (lock) {
-            if (writer != null) {
-                writer.close();
+        lock.lock();
+        try {
+            while (leaderActive) {
+                batchDone.awaitUninterruptibly();
+            }
+            if (channel != null) {
+                channel.close();
             }
 
             // 创建新的空WAL文件
@@ -44,8 +370,17 @@ public class WriteAheadLog {
                 file.delete();
             }
 
-            // 重新打开writer
-            this.writer = new BufferedWriter(new FileWriter(filePath, true));
+            // 重新打开
+            this.channel = openChannel();
+
+            // 尚未写出的记录已随刷盘的 MemTable 持久化，视为完成并唤醒等待者；新文件上可以继续写入
+            pending.clear();
+            failure = null;
+            writtenSeq = appendedSeq;
+            syncedSeq = appendedSeq;
+            batchDone.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -60,16 +395,150 @@ public class WriteAheadLog {
             return entries;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        lock.lock();
+        try {
+            drain();
+            readRecords(filePath, entries);
+        } finally {
+            lock.unlock();
+        }
+        return entries;
+    }
+
+    /**
+     * 判断文件是否为二进制格式（以魔数开头）
+     */
+    public static boolean isBinaryFormat(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filePath))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 顺序读取二进制格式的记录，遇到不完整或校验失败的记录即停止
+     * 返回最后一条有效记录结束的位置；out 为 null 时只做校验
+     */
+    public static long readRecords(String filePath, List<LogEntry> out) throws IOException {
+        Checksum crc = Crc32c.create();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            long remaining = new File(filePath).length();
+            if (remaining < HEADER_SIZE || in.readInt() != MAGIC) {
+                throw new IOException("Not a binary WAL file: " + filePath);
+            }
+            long valid = HEADER_SIZE;
+            remaining -= HEADER_SIZE;
+            byte[] buf = new byte[256];
+            while (remaining >= RECORD_HEADER_SIZE) {
+                int size = in.readInt();
+                int expected = in.readInt();
+                if (size < MIN_PAYLOAD_SIZE || size > remaining - RECORD_HEADER_SIZE) {
+                    break; // 不完整的尾部记录
+                }
+                if (buf.length < size) {
+                    buf = new byte[size];
+                }
+                in.readFully(buf, 0, size);
+                crc.reset();
+                crc.update(buf, 0, size);
+                if ((int) crc.getValue() != expected) {
+                    break; // 校验失败
+                }
+                if (!decodeRecord(ByteBuffer.wrap(buf, 0, size), out)) {
+                    break;
+                }
+                valid += RECORD_HEADER_SIZE + size;
+                remaining -= RECORD_HEADER_SIZE + size;
+            }
+            return valid;
+        }
+    }
+
+    /**
+     * 解码一条记录（单条或批量）加入 out，格式错误时返回 false 且不加入任何条目
+     */
+    private static boolean decodeRecord(ByteBuffer buf, List<LogEntry> out) {
+        if (buf.get(buf.position()) != BATCH_MARKER) {
+            LogEntry entry = decode(buf);
+            if (entry == null) {
+                return false;
+            }
+            if (out != null) {
+                out.add(entry);
+            }
+            return true;
+        }
+        buf.get();
+        if (buf.remaining() < 4) {
+            return false;
+        }
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / MIN_PAYLOAD_SIZE) {
+            return false;
+        }
+        List<LogEntry> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (buf.remaining() < MIN_PAYLOAD_SIZE) {
+                return false;
+            }
+            LogEntry entry = decode(buf);
+            if (entry == null) {
+                return false;
+            }
+            batch.add(entry);
+        }
+        if (out != null) {
+            out.addAll(batch);
+        }
+        return true;
+    }
+
+    private static LogEntry decode(ByteBuffer buf) {
+        int op = buf.get();
+        if (op < 0 || op >= Operation.values().length) {
+            return null;
+        }
+        int keyLength = buf.getInt();
+        if (keyLength < 0 || keyLength > buf.remaining() - 12) {
+            return null;
+        }
+        String key = new String(buf.array(), buf.position(), keyLength, StandardCharsets.UTF_8);
+        buf.position(buf.position() + keyLength);
+        int valueLength = buf.getInt();
+        String value = null;
+        if (valueLength >= 0) {
+            if (valueLength > buf.remaining() - 8) {
+                return null;
+            }
+            value = new String(buf.array(), buf.position(), valueLength, StandardCharsets.UTF_8);
+            buf.position(buf.position() + valueLength);
+        }
+        return new LogEntry(Operation.values()[op], key, value, buf.getLong());
+    }
+
+    /**
+     * 读取旧文本格式（每行 操作|键|值|时间戳），无效行的行号加入 invalidLines（可为 null）；
+     * 时间戳不作为序号，条目的序号均未分配
+     */
+    public static List<LogEntry> readLegacyRecords(String filePath, List<Integer> invalidLines) throws IOException {
+        List<LogEntry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String line;
+            int lineNumber = 0;
             while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
                 LogEntry entry = LogEntry.fromString(line);
                 if (entry != null) {
                     entries.add(entry);
+                } else if (invalidLines != null) {
+                    invalidLines.add(lineNumber);
                 }
             }
         }
-
         return entries;
     }
 
@@ -77,10 +546,60 @@ public class WriteAheadLog {
      * 关闭WAL
      */
     public void close() throws IOException {
-        synchronized (lock) {
-            if (writer != null) {
-                writer.close();
+        lock.lock();
+        try {
+            if (channel != null && channel.isOpen()) {
+                try {
+                    // 已失败的日志不再写出，仍在等待的写入者收到异常
+                    if (failure == null) {
+                        drain();
+                        try {
+                            channel.force(false);
+                        } catch (IOException e) {
+                            failure = e;
+                            throw e;
+                        }
+                        // 关闭后仍在等待的写入者视为已落盘：以上记录都已 force，
+                        // 轮转出的日志只在其数据所在的 SSTable 和目录落盘并记入 MANIFEST 之后才关闭删除
+                        syncedSeq = writtenSeq;
+                    }
+                } finally {
+                    channel.close();
+                    batchDone.signalAll();
+                }
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭并删除日志文件，对应的 MemTable 已刷成 SSTable 后调用
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(Paths.get(filePath));
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public long getBatchCount() {
+        lock.lock();
+        try {
+            return batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSyncCount() {
+        lock.lock();
+        try {
+            return syncCount;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -96,21 +615,46 @@ public class WriteAheadLog {
         private final Operation operation;
         private final String key;
         private final String value;
-        private final long timestamp;
+        private final long sequence;
 
-        private LogEntry(Operation operation, String key, String value, long timestamp) {
+        private LogEntry(Operation operation, String key, String value, long sequence) {
             this.operation = operation;
             this.key = key;
             this.value = value;
-            this.timestamp = timestamp;
+            this.sequence = sequence;
         }
 
+        /**
+         * 未指定序号时使用未分配的序号 0，由 LSMTree 写入或回放时分配
+         */
         public static LogEntry put(String key, String value) {
-            return new LogEntry(Operation.PUT, key, value, System.currentTimeMillis());
+            return put(key, value, KeyValue.UNASSIGNED_SEQUENCE);
+        }
+
+        public static LogEntry put(String key, String value, long sequence) {
+            return new LogEntry(Operation.PUT, key, value, sequence);
         }
 
         public static LogEntry delete(String key) {
-            return new LogEntry(Operation.DELETE, key, null, System.currentTimeMillis());
+            return delete(key, KeyValue.UNASSIGNED_SEQUENCE);
+        }
+
+        public static LogEntry delete(String key, long sequence) {
+            return new LogEntry(Operation.DELETE, key, null, sequence);
+        }
+
+        /**
+         * 删除 [startKey, endKey)：起始键存为键，结束键存为值
+         */
+        public static LogEntry deleteRange(String startKey, String endKey, long sequence) {
+            return new LogEntry(Operation.DELETE_RANGE, startKey, endKey, sequence);
+        }
+
+        /**
+         * 复制条目并赋予新的序号
+         */
+        public LogEntry withSequence(long sequence) {
+            return new LogEntry(operation, key, value, sequence);
         }
 
         public Operation getOperation() {
@@ -125,14 +669,17 @@ public class WriteAheadLog {
             return value;
         }
 
-        public long getTimestamp() {
-            return timestamp;
+        public long getSequence() {
+            return sequence;
         }
 
+        /**
+         * 旧文本格式的一行，仅用于兼容和展示
+         */
         @Override
         public String toString() {
             return String.format("%s|%s|%s|%d",
-                    operation, key, value != null ? value : "", timestamp);
+                    operation, key, value != null ? value : "", sequence);
         }
 
         public static LogEntry fromString(String line) {
@@ -149,19 +696,29 @@ public class WriteAheadLog {
                 Operation op = Operation.valueOf(parts[0]);
                 String key = parts[1];
                 String value = parts.length > 2 && !parts[2].isEmpty() ? parts[2] : null;
-                long timestamp = parts.length > 3 ? Long.parseLong(parts[3]) : System.currentTimeMillis();
-
-                return new LogEntry(op, key, value, timestamp);
+                // 第 4 列是旧版本的毫秒时间戳：只校验格式，不当作序号，回放时按顺序重新分配
+                if (parts.length > 3) {
+                    Long.parseLong(parts[3]);
+                }
+                return new LogEntry(op, key, value, KeyValue.UNASSIGNED_SEQUENCE);
             } catch (Exception e) {
                 return null; // 忽略无效的日志条目
             }
         }
     }
 
+    /**
+     * 单次写入的持久化级别
+     * NONE：只进入内存缓冲，由后续写入或关闭时写出；FLUSH：写入操作系统页缓存；FSYNC：写入并 fsync
+     */
+    public enum Durability {
+        NONE, FLUSH, FSYNC
+    }
+
     /**
      * WAL操作类型
      */
     public enum Operation {
-        PUT, DELETE
+        PUT, DELETE, DELETE_RANGE
     }
 }
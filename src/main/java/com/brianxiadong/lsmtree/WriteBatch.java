@@ -0,0 +1,53 @@
+package com.brianxiadong.lsmtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量写入
+ * 收集一组 put/delete，由 LSMTree.write 一次加锁、作为一条 WAL 记录原子地应用
+ * 同一个键多次出现时以批内最后一次操作为准
+ */
+public class WriteBatch {
+    private final List<WriteAheadLog.LogEntry> entries = new ArrayList<>();
+
+    public WriteBatch put(String key, String value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+        entries.add(WriteAheadLog.LogEntry.put(key, value));
+        return this;
+    }
+
+    public WriteBatch delete(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        entries.add(WriteAheadLog.LogEntry.delete(key));
+        return this;
+    }
+
+    /**
+     * 追加一条已有的日志条目（PartitionedLSMTree 按分片拆分批次时使用）
+     */
+    void add(WriteAheadLog.LogEntry entry) {
+        entries.add(entry);
+    }
+
+    public List<WriteAheadLog.LogEntry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
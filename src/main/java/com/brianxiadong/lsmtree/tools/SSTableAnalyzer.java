@@ -1,6 +1,7 @@
 package com.brianxiadong.lsmtree.tools;
 
 import com.brianxiadong.lsmtree.KeyValue;
+import com.brianxiadong.lsmtree.SSTable;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -88,28 +89,17 @@ public class SSTableAnalyzer {
             long totalKeySize = 0;
             long totalValueSize = 0;
             
-            try (DataInputStream dis = new DataInputStream(
-                    new BufferedInputStream(new FileInputStream(filePath)))) {
-                
-                entryCount = dis.readInt();
-                
-                for (int i = 0; i < entryCount; i++) {
-                    String key = dis.readUTF();
-                    boolean deleted = dis.readBoolean();
-                    String value = null;
-                    if (!deleted) {
-                        value = dis.readUTF();
-                        totalValueSize += value.getBytes("UTF-8").length;
-                        activeCount++;
-                    } else {
-                        deletedCount++;
-                    }
-                    long timestamp = dis.readLong();
-                    
-                    totalKeySize += key.getBytes("UTF-8").length;
-                    entries.add(new KeyValue(key, value, timestamp, deleted));
+            for (KeyValue kv : readEntries(filePath)) {
+                if (!kv.isDeleted()) {
+                    totalValueSize += kv.getValue().getBytes("UTF-8").length;
+                    activeCount++;
+                } else {
+                    deletedCount++;
                 }
+                totalKeySize += kv.getKey().getBytes("UTF-8").length;
+                entries.add(kv);
             }
+            entryCount = entries.size();
             
             // 验证数据有序性
             boolean isOrdered = isDataOrdered(entries);
@@ -120,7 +110,7 @@ public class SSTableAnalyzer {
             }
             
             // 计算压缩比（估算）
-            long rawDataSize = totalKeySize + totalValueSize + (entryCount * 16); // 16字节用于timestamp和deleted标记
+            long rawDataSize = totalKeySize + totalValueSize + (entryCount * 16); // 16字节用于sequence和deleted标记
             double compressionRatio = rawDataSize > 0 ? (double) fileSize / rawDataSize : 1.0;
             
             return new AnalysisResult(filePath, fileSize, entryCount, entries, 
@@ -134,6 +124,29 @@ public class SSTableAnalyzer {
         }
     }
     
+    /**
+     * 读取文件中的全部记录
+     * 块格式文件通过 SSTable 按索引逐块读取，否则按旧格式顺序读取
+     */
+    private static List<KeyValue> readEntries(String filePath) throws IOException {
+        if (SSTable.isBlockFormat(filePath)) {
+            return new SSTable(filePath).getAllEntries();
+        }
+        List<KeyValue> entries = new ArrayList<>();
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filePath)))) {
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = dis.readUTF();
+                boolean deleted = dis.readBoolean();
+                String value = deleted ? null : dis.readUTF();
+                long sequence = dis.readLong();
+                entries.add(new KeyValue(key, value, sequence, deleted));
+            }
+        }
+        return entries;
+    }
+    
     /**
      * 验证数据是否按键排序
      */
@@ -196,7 +209,7 @@ public class SSTableAnalyzer {
         List<KeyValue> entries = result.getEntries();
         int displayCount = Math.min(maxEntries, entries.size());
         
-        System.out.printf("%-20s %-10s %-30s %-20s%n", "键", "状态", "值", "时间戳");
+        System.out.printf("%-20s %-10s %-30s %-20s%n", "键", "状态", "值", "序号");
         System.out.println("--------------------------------------------------------------------------------");
         
         for (int i = 0; i < displayCount; i++) {
@@ -204,10 +217,8 @@ public class SSTableAnalyzer {
             String status = kv.isDeleted() ? "已删除" : "活跃";
             String value = kv.isDeleted() ? "-" : 
                           (kv.getValue().length() > 25 ? kv.getValue().substring(0, 25) + "..." : kv.getValue());
-            String timestamp = formatTimestamp(kv.getTimestamp());
-            
-            System.out.printf("%-20s %-10s %-30s %-20s%n", 
-                            kv.getKey(), status, value, timestamp);
+            System.out.printf("%-20s %-10s %-30s %-20d%n", 
+                            kv.getKey(), status, value, kv.getSequence());
         }
         
         if (entries.size() > maxEntries) {
@@ -246,7 +257,7 @@ public class SSTableAnalyzer {
                 writer.print("    {");
                 writer.print("\"key\": \"" + escapeJson(kv.getKey()) + "\", ");
                 writer.print("\"value\": " + (kv.isDeleted() ? "null" : "\"" + escapeJson(kv.getValue()) + "\"") + ", ");
-                writer.print("\"timestamp\": " + kv.getTimestamp() + ", ");
+                writer.print("\"sequence\": " + kv.getSequence() + ", ");
                 writer.print("\"deleted\": " + kv.isDeleted());
                 writer.print("}");
                 if (i < entries.size() - 1) {
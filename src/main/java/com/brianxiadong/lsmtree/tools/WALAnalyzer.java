@@ -71,23 +71,22 @@ public class WALAnalyzer {
         private final int putOperations;
         private final int deleteOperations;
         private final int invalidEntries;
-        private final long timeSpan;
-        private final long firstTimestamp;
-        private final long lastTimestamp;
+        // 条目序号范围
+        private final long firstSequence;
+        private final long lastSequence;
         private final Set<String> uniqueKeys;
         private final Map<String, Integer> keyFrequency;
 
         public WALStatistics(int totalEntries, int putOperations, int deleteOperations,
-                int invalidEntries, long timeSpan, long firstTimestamp,
-                long lastTimestamp, Set<String> uniqueKeys,
+                int invalidEntries, long firstSequence,
+                long lastSequence, Set<String> uniqueKeys,
                 Map<String, Integer> keyFrequency) {
             this.totalEntries = totalEntries;
             this.putOperations = putOperations;
             this.deleteOperations = deleteOperations;
             this.invalidEntries = invalidEntries;
-            this.timeSpan = timeSpan;
-            this.firstTimestamp = firstTimestamp;
-            this.lastTimestamp = lastTimestamp;
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
             this.uniqueKeys = uniqueKeys;
             this.keyFrequency = keyFrequency;
         }
@@ -109,16 +108,12 @@ public class WALAnalyzer {
             return invalidEntries;
         }
 
-        public long getTimeSpan() {
-            return timeSpan;
+        public long getFirstSequence() {
+            return firstSequence;
         }
 
-        public long getFirstTimestamp() {
-            return firstTimestamp;
-        }
-
-        public long getLastTimestamp() {
-            return lastTimestamp;
+        public long getLastSequence() {
+            return lastSequence;
         }
 
         public Set<String> getUniqueKeys() {
@@ -150,24 +145,17 @@ public class WALAnalyzer {
         List<WriteAheadLog.LogEntry> entries = new ArrayList<>();
         List<String> errors = new ArrayList<>();
 
-        // 解析WAL文件
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            int lineNumber = 0;
-
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-
-                if (line.trim().isEmpty()) {
-                    continue; // 跳过空行
-                }
-
-                WriteAheadLog.LogEntry entry = WriteAheadLog.LogEntry.fromString(line);
-                if (entry != null) {
-                    entries.add(entry);
-                } else {
-                    errors.add("第" + lineNumber + "行: 无效的日志条目格式 - " + line);
-                }
+        // 解析WAL文件：二进制格式按记录校验，旧文本格式按行解析
+        if (fileSize > 0 && WriteAheadLog.isBinaryFormat(filePath)) {
+            long valid = WriteAheadLog.readRecords(filePath, entries);
+            if (valid < fileSize) {
+                errors.add("偏移" + valid + ": 记录不完整或校验失败，忽略尾部 " + (fileSize - valid) + " 字节");
+            }
+        } else {
+            List<Integer> invalidLines = new ArrayList<>();
+            entries.addAll(WriteAheadLog.readLegacyRecords(filePath, invalidLines));
+            for (int lineNumber : invalidLines) {
+                errors.add("第" + lineNumber + "行: 无效的日志条目格式");
             }
         }
 
@@ -184,8 +172,8 @@ public class WALAnalyzer {
         int totalEntries = entries.size();
         int putOperations = 0;
         int deleteOperations = 0;
-        long firstTimestamp = Long.MAX_VALUE;
-        long lastTimestamp = Long.MIN_VALUE;
+        long firstSequence = Long.MAX_VALUE;
+        long lastSequence = Long.MIN_VALUE;
         Set<String> uniqueKeys = new HashSet<>();
         Map<String, Integer> keyFrequency = new HashMap<>();
 
@@ -197,13 +185,13 @@ public class WALAnalyzer {
                 deleteOperations++;
             }
 
-            // 统计时间范围
-            long timestamp = entry.getTimestamp();
-            if (timestamp < firstTimestamp) {
-                firstTimestamp = timestamp;
+            // 统计序号范围
+            long sequence = entry.getSequence();
+            if (sequence < firstSequence) {
+                firstSequence = sequence;
             }
-            if (timestamp > lastTimestamp) {
-                lastTimestamp = timestamp;
+            if (sequence > lastSequence) {
+                lastSequence = sequence;
             }
 
             // 统计键
@@ -212,14 +200,13 @@ public class WALAnalyzer {
             keyFrequency.put(key, keyFrequency.getOrDefault(key, 0) + 1);
         }
 
-        long timeSpan = totalEntries > 0 ? lastTimestamp - firstTimestamp : 0;
         if (totalEntries == 0) {
-            firstTimestamp = 0;
-            lastTimestamp = 0;
+            firstSequence = 0;
+            lastSequence = 0;
         }
 
         return new WALStatistics(totalEntries, putOperations, deleteOperations, 0,
-                timeSpan, firstTimestamp, lastTimestamp, uniqueKeys, keyFrequency);
+                firstSequence, lastSequence, uniqueKeys, keyFrequency);
     }
 
     /**
@@ -263,9 +250,8 @@ public class WALAnalyzer {
         sb.append("唯一键数: ").append(stats.getUniqueKeys().size()).append("\n");
 
         if (stats.getTotalEntries() > 0) {
-            sb.append("时间跨度: ").append(formatDuration(stats.getTimeSpan())).append("\n");
-            sb.append("开始时间: ").append(dateFormat.format(new Date(stats.getFirstTimestamp()))).append("\n");
-            sb.append("结束时间: ").append(dateFormat.format(new Date(stats.getLastTimestamp()))).append("\n");
+            sb.append("序号范围: ").append(stats.getFirstSequence()).append(" - ")
+                    .append(stats.getLastSequence()).append("\n");
         }
         sb.append("\n");
 
@@ -285,7 +271,7 @@ public class WALAnalyzer {
             sb.append(repeatString("-", 40)).append("\n");
             sb.append("日志条目\n");
             sb.append(repeatString("-", 40)).append("\n");
-            sb.append(String.format("%-10s %-20s %-30s %-20s\n", "操作", "键", "值", "时间戳"));
+            sb.append(String.format("%-10s %-20s %-30s %-20s\n", "操作", "键", "值", "序号"));
             sb.append(repeatString("-", 80)).append("\n");
 
             for (WriteAheadLog.LogEntry entry : result.getEntries()) {
@@ -297,7 +283,7 @@ public class WALAnalyzer {
                         entry.getOperation(),
                         entry.getKey(),
                         value != null ? value : "",
-                        dateFormat.format(new Date(entry.getTimestamp()))));
+                        entry.getSequence()));
             }
         }
 
@@ -344,19 +330,6 @@ public class WALAnalyzer {
         return String.format("%.1f GB", bytes / (1024.0 * 1024 * 1024));
     }
 
-    /**
-     * 格式化时间跨度
-     */
-    private static String formatDuration(long milliseconds) {
-        if (milliseconds < 1000)
-            return milliseconds + " ms";
-        if (milliseconds < 60000)
-            return String.format("%.1f s", milliseconds / 1000.0);
-        if (milliseconds < 3600000)
-            return String.format("%.1f min", milliseconds / 60000.0);
-        return String.format("%.1f h", milliseconds / 3600000.0);
-    }
-
     /**
      * 导出WAL数据为JSON格式
      */
@@ -375,9 +348,8 @@ public class WALAnalyzer {
             writer.println("    \"put_operations\": " + stats.getPutOperations() + ",");
             writer.println("    \"delete_operations\": " + stats.getDeleteOperations() + ",");
             writer.println("    \"unique_keys\": " + stats.getUniqueKeys().size() + ",");
-            writer.println("    \"time_span\": " + stats.getTimeSpan() + ",");
-            writer.println("    \"first_timestamp\": " + stats.getFirstTimestamp() + ",");
-            writer.println("    \"last_timestamp\": " + stats.getLastTimestamp());
+            writer.println("    \"first_sequence\": " + stats.getFirstSequence() + ",");
+            writer.println("    \"last_sequence\": " + stats.getLastSequence());
             writer.println("  },");
 
             writer.println("  \"entries\": [");
@@ -389,7 +361,7 @@ public class WALAnalyzer {
                 writer.println("      \"key\": \"" + entry.getKey() + "\",");
                 writer.println("      \"value\": "
                         + (entry.getValue() != null ? "\"" + escapeJson(entry.getValue()) + "\"" : "null") + ",");
-                writer.println("      \"timestamp\": " + entry.getTimestamp());
+                writer.println("      \"sequence\": " + entry.getSequence());
                 writer.print("    }");
                 if (i < entries.size() - 1) {
                     writer.println(",");
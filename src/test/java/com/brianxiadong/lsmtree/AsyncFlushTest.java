@@ -0,0 +1,86 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class AsyncFlushTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private String[] walFiles(String dir) {
+        return new File(dir).list((d, name) -> name.startsWith("wal"));
+    }
+
+    @Test
+    public void testBackgroundFlushKeepsDataReadable() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        // 关闭后台压缩，按刷盘生成的文件数检查
+        LSMTree tree = new LSMTree(dir, 10, new LSMTreeOptions().setCompactionThreads(0));
+        for (int i = 0; i < 200; i++) {
+            tree.put(String.format("key%03d", i), "value" + i);
+        }
+        // 刷盘进行中的数据仍可从不可变 MemTable 读到
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals("value" + i, tree.get(String.format("key%03d", i)));
+        }
+
+        tree.flush();
+        LSMTree.LSMTreeStats stats = tree.getStats();
+        Assert.assertEquals(0, stats.getImmutableMemTableCount());
+        Assert.assertEquals(0, stats.getActiveMemTableSize());
+        Assert.assertTrue(stats.getSsTableCount() >= 20);
+        // 已刷盘 MemTable 的 WAL 被删除，只剩活跃日志
+        Assert.assertEquals(1, walFiles(dir).length);
+        tree.close();
+
+        LSMTree reopened = new LSMTree(dir, 10);
+        Assert.assertEquals("value123", reopened.get("key123"));
+        reopened.close();
+    }
+
+    @Test
+    public void testWritesStallAtImmutableLimit() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 2, new LSMTreeOptions().setMaxImmutableMemTables(1));
+        for (int i = 0; i < 500; i++) {
+            tree.put("key" + i, "value" + i);
+            Assert.assertTrue(tree.getStats().getImmutableMemTableCount() <= 1);
+        }
+        Assert.assertTrue(tree.getWriteStallCount() > 0);
+        Assert.assertFalse(tree.isWriteStalled());
+        for (int i = 0; i < 500; i++) {
+            Assert.assertEquals("value" + i, tree.get("key" + i));
+        }
+        tree.close();
+    }
+
+    @Test
+    public void testRecoveryReplaysRotatedWalsInOrder() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        // 模拟刷盘完成前崩溃：留下两个按编号排序的日志
+        WriteAheadLog older = new WriteAheadLog(dir + "/wal_3.log");
+        older.append(WriteAheadLog.LogEntry.put("a", "old"));
+        older.append(WriteAheadLog.LogEntry.put("b", "kept"));
+        older.close();
+        WriteAheadLog newer = new WriteAheadLog(dir + "/wal_12.log");
+        newer.append(WriteAheadLog.LogEntry.put("a", "new"));
+        newer.append(WriteAheadLog.LogEntry.delete("b"));
+        newer.close();
+
+        LSMTree tree = new LSMTree(dir, 100);
+        Assert.assertEquals("new", tree.get("a"));
+        Assert.assertNull(tree.get("b"));
+        // 合并到新的活跃日志后旧文件被删除
+        Assert.assertArrayEquals(new String[] { "wal_13.log" }, walFiles(dir));
+        tree.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidImmutableLimit() {
+        new LSMTreeOptions().setMaxImmutableMemTables(0);
+    }
+}
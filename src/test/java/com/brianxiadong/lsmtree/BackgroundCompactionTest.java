@@ -0,0 +1,99 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class BackgroundCompactionTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static int countFiles(String dir, String prefix) {
+        String[] names = new File(dir).list((d, name) -> name.startsWith(prefix) && name.endsWith(".db"));
+        return names == null ? 0 : names.length;
+    }
+
+    private static String expected(int key, int rounds) {
+        if (key % 7 == 0) {
+            return null;
+        }
+        return "v" + (rounds - 1) + "_" + key;
+    }
+
+    @Test
+    public void testFlushTriggersCompactionWhileReadsContinue() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 50, new LSMTreeOptions().setCompactionThreads(2));
+        int keys = 500;
+        int rounds = 4;
+        for (int i = 0; i < keys; i++) {
+            tree.put(String.format("key%04d", i), "v0_" + i);
+        }
+
+        // 写入持续触发刷盘与压缩，同时另一个线程反复读取已写入的键
+        AtomicReference<Throwable> readerError = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int n = 0; n < 20; n++) {
+                    for (int i = 1; i < keys; i += 7) {
+                        String v = tree.get(String.format("key%04d", i));
+                        if (v == null || !v.endsWith("_" + i)) {
+                            throw new AssertionError("unexpected value " + v + " for key " + i);
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                readerError.set(t);
+            }
+        });
+        reader.start();
+        for (int r = 1; r < rounds; r++) {
+            for (int i = 0; i < keys; i++) {
+                tree.put(String.format("key%04d", i), "v" + r + "_" + i);
+            }
+        }
+        for (int i = 0; i < keys; i += 7) {
+            tree.delete(String.format("key%04d", i));
+        }
+        reader.join();
+        Assert.assertNull(readerError.get());
+
+        tree.flush();
+        tree.waitForCompactions();
+        Assert.assertTrue(countFiles(dir, "sstable_level0_") <= 4);
+        Assert.assertTrue(countFiles(dir, "sstable_level1_") > 0);
+        for (int i = 0; i < keys; i++) {
+            Assert.assertEquals(expected(i, rounds), tree.get(String.format("key%04d", i)));
+        }
+        tree.close();
+
+        LSMTree reopened = new LSMTree(dir, 50);
+        for (int i = 0; i < keys; i++) {
+            Assert.assertEquals(expected(i, rounds), reopened.get(String.format("key%04d", i)));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testZeroThreadsDisablesCompaction() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 10, new LSMTreeOptions().setCompactionThreads(0));
+        for (int i = 0; i < 100; i++) {
+            tree.put("key" + i, "value" + i);
+        }
+        tree.flush();
+        tree.waitForCompactions();
+        Assert.assertEquals(10, countFiles(dir, "sstable_level0_"));
+        Assert.assertEquals(0, countFiles(dir, "sstable_level1_"));
+        tree.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeThreadsRejected() {
+        new LSMTreeOptions().setCompactionThreads(-1);
+    }
+}
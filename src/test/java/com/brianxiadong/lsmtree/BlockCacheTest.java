@@ -0,0 +1,164 @@
+package com.brianxiadong.lsmtree;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BlockCacheTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private DataBlock block() {
+        return new DataBlock(Collections.singletonList(new KeyValue("k", "v")));
+    }
+
+    @Test
+    public void testCapacityBoundAndEvictionCounter() {
+        BlockCache cache = new BlockCache("test-capacity", 10 * 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.put(1, i * 1024L, block(), 1024);
+        }
+        Assert.assertTrue(cache.sizeBytes() <= cache.getCapacity());
+        Assert.assertTrue(cache.getEvictionCount() >= 90);
+    }
+
+    @Test
+    public void testScanDoesNotFlushHotBlocks() {
+        BlockCache cache = new BlockCache("test-scan", 100 * 1024);
+        // 热点块被反复访问
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get(1, i) == null) {
+                    cache.put(1, i, block(), 1024);
+                }
+            }
+        }
+        // 一次性扫描大量冷块
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get(2, i) == null) {
+                cache.put(2, i, block(), 1024);
+            }
+        }
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get(1, i) != null) {
+                hot++;
+            }
+        }
+        Assert.assertTrue("hot blocks retained: " + hot, hot >= 45);
+    }
+
+    @Test
+    public void testShardsStayWithinCapacityUnderConcurrentAccess() throws Exception {
+        BlockCache cache = new BlockCache(64 * 1024, 8);
+        Assert.assertEquals(8, cache.getShardCount());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    long offset = (i * 31L + id) % 500;
+                    if (cache.get(id % 2, offset) == null) {
+                        cache.put(id % 2, offset, block(), 512);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertTrue(cache.sizeBytes() <= cache.getCapacity());
+        Assert.assertEquals(cache.size() * 512L, cache.sizeBytes());
+        Assert.assertEquals(20000, cache.getHitCount() + cache.getMissCount());
+
+        cache.invalidateFile(0);
+        cache.invalidateFile(1);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.sizeBytes());
+    }
+
+    @Test
+    public void testSSTableReadsHitCache() throws Exception {
+        BlockCache cache = new BlockCache("test-sstable", 1024 * 1024);
+        LSMTreeOptions options = new LSMTreeOptions().setBlockCache(cache);
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            data.add(new KeyValue(String.format("key%05d", i), "value" + i));
+        }
+        String file = new File(tmp.getRoot(), "sstable_level0_1.db").getAbsolutePath();
+        SSTable t = new SSTable(file, data, null, options);
+
+        Assert.assertEquals("value42", t.get("key00042"));
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals("value43", t.get("key00043"));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        t.delete();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private static double hits(String name) {
+        FunctionCounter c = MetricsRegistry.get().find("lsm.block.cache.hits").tag("name", name).functionCounter();
+        return c == null ? -1 : c.count();
+    }
+
+    @Test
+    public void testEachTreeReportsItsOwnCacheMetrics() throws Exception {
+        String dirA = tmp.newFolder("a").getAbsolutePath();
+        String dirB = tmp.newFolder("b").getAbsolutePath();
+        LSMTree a = new LSMTree(dirA, 100, new LSMTreeOptions().setCompactionThreads(0));
+        LSMTree b = new LSMTree(dirB, 100, new LSMTreeOptions().setCompactionThreads(0));
+        for (LSMTree t : new LSMTree[] { a, b }) {
+            for (int i = 0; i < 200; i++) {
+                t.put(String.format("key%05d", i), "value" + i);
+            }
+            t.flush();
+        }
+
+        for (int i = 0; i < 5; i++) {
+            a.get("key00001");
+        }
+        b.get("key00001");
+        b.get("key00001");
+        Assert.assertEquals(4, hits(dirA), 0);
+        Assert.assertEquals(1, hits(dirB), 0);
+
+        // 关闭后指标移除；同一目录重新打开时报告新缓存的数据
+        a.close();
+        Assert.assertEquals(-1, hits(dirA), 0);
+        a = new LSMTree(dirA, 100, new LSMTreeOptions().setCompactionThreads(0));
+        a.get("key00001");
+        a.get("key00001");
+        Assert.assertEquals(1, hits(dirA), 0);
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void testSharedCacheKeepsFirstBoundName() {
+        BlockCache cache = new BlockCache(1024);
+        Assert.assertTrue(cache.bindMetrics("test-shared"));
+        Assert.assertFalse(cache.bindMetrics("test-other"));
+        MeterRegistry registry = MetricsRegistry.get();
+        Assert.assertNull(registry.find("lsm.block.cache.hits").tag("name", "test-other").meter());
+
+        // 同名被另一个缓存接管后，解绑旧缓存不能移除新缓存的指标
+        BlockCache replacement = new BlockCache("test-shared", 1024);
+        cache.unbindMetrics();
+        replacement.get(1, 0);
+        replacement.put(1, 0, block(), 16);
+        replacement.get(1, 0);
+        Assert.assertEquals(1, hits("test-shared"), 0);
+        replacement.unbindMetrics();
+        Assert.assertEquals(-1, hits("test-shared"), 0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BlockedBloomFilterTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int N = 100000;
+
+    private int falsePositives(KeyFilter filter) {
+        int fp = 0;
+        for (int i = 0; i < N; i++) {
+            if (filter.mightContain(String.format("missing%08d", i))) {
+                fp++;
+            }
+        }
+        return fp;
+    }
+
+    @Test
+    public void testNoFalseNegativesAndLowFalsePositiveRate() {
+        BlockedBloomFilter filter = new BlockedBloomFilter(N);
+        for (int i = 0; i < N; i++) {
+            filter.add(String.format("key%08d", i));
+        }
+        for (int i = 0; i < N; i++) {
+            Assert.assertTrue(filter.mightContain(String.format("key%08d", i)));
+        }
+        int fp = falsePositives(filter);
+        // 10 位/键的分块过滤器误判率约 1%
+        Assert.assertTrue("false positives: " + fp, fp < N * 0.02);
+    }
+
+    @Test
+    public void testFewerFalsePositivesThanLegacyFilter() {
+        BlockedBloomFilter blocked = new BlockedBloomFilter(N);
+        BloomFilter legacy = new BloomFilter(N, 0.01);
+        for (int i = 0; i < N; i++) {
+            blocked.add(String.format("key%08d", i));
+            legacy.add(String.format("key%08d", i));
+        }
+        int blockedFp = falsePositives(blocked);
+        int legacyFp = falsePositives(legacy);
+        Assert.assertTrue("blocked=" + blockedFp + " legacy=" + legacyFp, blockedFp < legacyFp);
+    }
+
+    @Test
+    public void testSerializationRoundTrip() throws Exception {
+        BlockedBloomFilter filter = new BlockedBloomFilter(1000, 12);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("k" + i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        BlockedBloomFilter restored = BlockedBloomFilter.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(filter.getHashFunctions(), restored.getHashFunctions());
+        Assert.assertEquals(filter.getBitSize(), restored.getBitSize());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(restored.mightContain("k" + i));
+        }
+        Assert.assertEquals(falsePositives(filter), falsePositives(restored));
+    }
+
+    @Test
+    public void testSSTablePersistsBlockedFilter() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_1.db").getAbsolutePath();
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            data.add(new KeyValue(String.format("key%06d", i), "v" + i));
+        }
+        new SSTable(file, data, null, new LSMTreeOptions().setBloomBitsPerKey(16));
+        SSTable reopened = new SSTable(file);
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertTrue(reopened.mightContain(String.format("key%06d", i)));
+        }
+        Assert.assertEquals("v42", reopened.get("key000042"));
+    }
+}
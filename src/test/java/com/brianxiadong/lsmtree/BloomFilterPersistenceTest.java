@@ -10,7 +10,9 @@ public class BloomFilterPersistenceTest {
         bf.add("a");
         bf.add("b");
         byte[] bytes = bf.toByteArray();
-        BloomFilter restored = BloomFilter.fromByteArray(bytes, 100, 7);
+        BloomFilter restored = BloomFilter.fromByteArray(bytes, bf.getSize(), bf.getHashFunctions());
+        Assert.assertEquals(bf.getSize(), restored.getSize());
+        Assert.assertEquals(bf.getHashFunctions(), restored.getHashFunctions());
         Assert.assertTrue(restored.mightContain("a"));
         Assert.assertTrue(restored.mightContain("b"));
         Assert.assertFalse(restored.mightContain("not-exist"));
@@ -3,6 +3,7 @@ package com.brianxiadong.lsmtree;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
@@ -22,5 +23,27 @@ public class CompressionStrategyTest {
             Assert.assertEquals("v"+i, v);
         }
     }
-}
 
+    @Test
+    public void testLZ4PerBlockCompression() throws Exception {
+        String dir = Files.createTempDirectory("sst-lz4-block").toFile().getAbsolutePath();
+        List<KeyValue> data = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20; i++) sb.append("repeat-");
+        for (int i = 0; i < 3000; i++) data.add(new KeyValue(String.format("k%05d", i), sb + String.valueOf(i)));
+        data.sort(KeyValue::compareTo);
+
+        String plainFile = dir + "/sstable_level0_plain.db";
+        String lz4File = dir + "/sstable_level0_lz4.db";
+        new SSTable(plainFile, data);
+        SSTable compressed = new SSTable(lz4File, data, new LZ4CompressionStrategy());
+        Assert.assertTrue(compressed.isBlockBased());
+        Assert.assertTrue(compressed.getBlockCount() > 1);
+        Assert.assertTrue(new File(lz4File).length() < new File(plainFile).length());
+
+        SSTable reopened = new SSTable(lz4File);
+        Assert.assertEquals(sb + "1234", reopened.get("k01234"));
+        Assert.assertEquals(100, reopened.getRangeEntries("k01000", "k01100", true, false).size());
+        Assert.assertEquals(3000, reopened.getAllEntries().size());
+    }
+}
@@ -0,0 +1,199 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.brianxiadong.lsmtree.TestFixtures.key;
+import static com.brianxiadong.lsmtree.TestFixtures.tableFiles;
+
+public class DBIteratorTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * 偶数键 key00000..key00998，分布在 SSTable 和 MemTable 中
+     */
+    private LSMTree evenKeys(String dir, int compactionThreads) throws Exception {
+        LSMTree tree = new LSMTree(dir, 200, new LSMTreeOptions().setCompactionThreads(compactionThreads));
+        for (int i = 0; i < 1000; i += 2) {
+            tree.put(key(i), "value" + i);
+        }
+        return tree;
+    }
+
+    @Test
+    public void testSeekAndStepBothWays() throws Exception {
+        LSMTree tree = evenKeys(tmp.getRoot().getAbsolutePath(), 0);
+        try (DBIterator it = tree.newIterator()) {
+            Assert.assertFalse(it.isValid());
+
+            it.seekToFirst();
+            Assert.assertEquals(key(0), it.key());
+            it.seekToLast();
+            Assert.assertEquals(key(998), it.key());
+
+            it.seek(key(501));
+            Assert.assertEquals(key(502), it.key());
+            Assert.assertEquals("value502", it.value());
+            it.next();
+            Assert.assertEquals(key(504), it.key());
+            it.prev();
+            Assert.assertEquals(key(502), it.key());
+            it.prev();
+            Assert.assertEquals(key(500), it.key());
+            it.next();
+            Assert.assertEquals(key(502), it.key());
+
+            it.seekForPrev(key(501));
+            Assert.assertEquals(key(500), it.key());
+            it.seekForPrev(key(500));
+            Assert.assertEquals(key(500), it.key());
+
+            it.seek(key(999));
+            Assert.assertFalse(it.isValid());
+            it.seekToFirst();
+            it.prev();
+            Assert.assertFalse(it.isValid());
+            it.seekToLast();
+            it.next();
+            Assert.assertFalse(it.isValid());
+        }
+        tree.close();
+    }
+
+    @Test
+    public void testFullScansMatchRange() throws Exception {
+        LSMTree tree = evenKeys(tmp.getRoot().getAbsolutePath(), 0);
+        tree.delete(key(10));
+        tree.deleteRange(key(100), key(200));
+        List<String> expected = new ArrayList<>();
+        RangeIterator range = tree.range(null, null, true, true);
+        while (range.hasNext()) {
+            expected.add(range.next().getKey());
+        }
+
+        try (DBIterator it = tree.newIterator()) {
+            List<String> forward = new ArrayList<>();
+            for (it.seekToFirst(); it.isValid(); it.next()) {
+                forward.add(it.key());
+            }
+            Assert.assertEquals(expected, forward);
+
+            List<String> backward = new ArrayList<>();
+            for (it.seekToLast(); it.isValid(); it.prev()) {
+                backward.add(0, it.key());
+            }
+            Assert.assertEquals(expected, backward);
+        }
+        tree.close();
+    }
+
+    @Test
+    public void testPinnedToCreationView() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = evenKeys(dir, 1);
+        DBIterator it = tree.newIterator();
+
+        // 创建之后的写入、删除、刷盘和压缩都不可见
+        for (int i = 0; i < 1000; i++) {
+            tree.put(key(i), "new");
+        }
+        tree.delete(key(0));
+        tree.flush();
+        tree.waitForCompactions();
+
+        it.seekToFirst();
+        Assert.assertEquals(key(0), it.key());
+        int count = 0;
+        for (; it.isValid(); it.next()) {
+            Assert.assertTrue(it.value().startsWith("value"));
+            count++;
+        }
+        Assert.assertEquals(500, count);
+        it.seek(key(1));
+        Assert.assertEquals(key(2), it.key());
+
+        // 关闭后被压缩替换的表随之删除
+        it.close();
+        Assert.assertFalse(it.isValid());
+        Assert.assertEquals(tree.getSSTableCount(), tableFiles(dir).length);
+
+        try (DBIterator fresh = tree.newIterator()) {
+            fresh.seekToFirst();
+            Assert.assertEquals(key(1), fresh.key());
+            Assert.assertEquals("new", fresh.value());
+        }
+        tree.close();
+    }
+
+    @Test
+    public void testPinnedWhileActiveMemTableChanges() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 100000,
+                new LSMTreeOptions().setCompactionThreads(0));
+        for (int i = 0; i < 100; i += 2) {
+            tree.put(key(i), "value" + i);
+        }
+        try (DBIterator it = tree.newIterator()) {
+            it.seek(key(10));
+            Assert.assertEquals("value10", it.value());
+
+            // 活跃 MemTable 没有复制，之后的覆盖、删除和新键在重新定位后仍不可见
+            for (int i = 0; i < 100; i++) {
+                tree.put(key(i), "new");
+            }
+            tree.delete(key(20));
+            tree.deleteRange(key(30), key(40));
+
+            for (int round = 0; round < 2; round++) {
+                it.seek(key(19));
+                Assert.assertEquals(key(20), it.key());
+                Assert.assertEquals("value20", it.value());
+                it.seekForPrev(key(35));
+                Assert.assertEquals(key(34), it.key());
+                it.prev();
+                Assert.assertEquals("value32", it.value());
+            }
+        }
+        Assert.assertEquals("new", tree.get(key(19)));
+        tree.close();
+    }
+
+    @Test
+    public void testPaginationResumesFromKey() throws Exception {
+        LSMTree tree = evenKeys(tmp.getRoot().getAbsolutePath(), 0);
+        List<String> pages = new ArrayList<>();
+        String resume = null;
+        try (DBIterator it = tree.newIterator()) {
+            do {
+                int n = 0;
+                if (resume == null) {
+                    it.seekToFirst();
+                } else {
+                    it.seek(resume);
+                }
+                for (; it.isValid() && n < 64; it.next(), n++) {
+                    pages.add(it.key());
+                }
+                resume = it.isValid() ? it.key() : null;
+            } while (resume != null);
+        }
+        Assert.assertEquals(500, pages.size());
+        Assert.assertEquals(key(998), pages.get(499));
+        tree.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testKeyRequiresPosition() throws Exception {
+        LSMTree tree = evenKeys(tmp.getRoot().getAbsolutePath(), 0);
+        try (DBIterator it = tree.newIterator()) {
+            it.key();
+        } finally {
+            tree.close();
+        }
+    }
+}
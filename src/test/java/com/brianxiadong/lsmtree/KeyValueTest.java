@@ -10,7 +10,7 @@ import java.util.List;
 
 /**
  * KeyValue数据结构测试类
- * 验证排序行为、时间戳版本控制和墓碑标记机制
+ * 验证排序行为、序号版本控制和墓碑标记机制
  */
 public class KeyValueTest {
 
@@ -31,7 +31,7 @@ public class KeyValueTest {
         assertEquals("key1", kv.getKey());
         assertEquals("value1", kv.getValue());
         assertFalse(kv.isDeleted());
-        assertTrue(kv.getTimestamp() > 0);
+        assertEquals(0, kv.getSequence());
     }
 
     /**
@@ -44,17 +44,16 @@ public class KeyValueTest {
         assertEquals("key1", tombstone.getKey());
         assertNull(tombstone.getValue());
         assertTrue(tombstone.isDeleted());
-        assertTrue(tombstone.getTimestamp() > 0);
+        assertEquals(0, tombstone.getSequence());
     }
 
     /**
-     * 测试相同键的排序行为（按时间戳降序）
+     * 测试相同键的排序行为（按序号降序）
      */
     @Test
-    public void testSortingBySameKey() throws InterruptedException {
-        // 创建相同键但不同时间戳的KeyValue
+    public void testSortingBySameKey() {
+        // 创建相同键但不同序号的KeyValue
         KeyValue kv1 = new KeyValue("key1", "value1", 1000, false);
-        Thread.sleep(1); // 确保时间戳不同
         KeyValue kv2 = new KeyValue("key1", "value2", 2000, false);
         KeyValue kv3 = new KeyValue("key1", "value3", 3000, false);
 
@@ -64,10 +63,10 @@ public class KeyValueTest {
 
         Collections.sort(keyValues);
 
-        // 验证排序结果：相同键按时间戳降序排列（新的在前）
-        assertEquals(3000, keyValues.get(0).getTimestamp());
-        assertEquals(2000, keyValues.get(1).getTimestamp());
-        assertEquals(1000, keyValues.get(2).getTimestamp());
+        // 验证排序结果：相同键按序号降序排列（新的在前）
+        assertEquals(3000, keyValues.get(0).getSequence());
+        assertEquals(2000, keyValues.get(1).getSequence());
+        assertEquals(1000, keyValues.get(2).getSequence());
     }
 
     /**
@@ -92,7 +91,7 @@ public class KeyValueTest {
     }
 
     /**
-     * 测试混合排序：键优先，时间戳次之
+     * 测试混合排序：键优先，序号次之
      */
     @Test
     public void testMixedSorting() {
@@ -111,9 +110,9 @@ public class KeyValueTest {
 
         // 验证排序结果
         assertEquals("a", keyValues.get(0).getKey());
-        assertEquals(3000, keyValues.get(0).getTimestamp()); // a键中时间戳最新的
+        assertEquals(3000, keyValues.get(0).getSequence()); // a键中序号最大的
         assertEquals("a", keyValues.get(1).getKey());
-        assertEquals(2000, keyValues.get(1).getTimestamp()); // a键中时间戳较旧的
+        assertEquals(2000, keyValues.get(1).getSequence()); // a键中序号较小的
         assertEquals("b", keyValues.get(2).getKey());
         assertEquals("c", keyValues.get(3).getKey());
     }
@@ -137,12 +136,12 @@ public class KeyValueTest {
         Collections.sort(keyValues);
 
         // 最新版本应该在前面
-        assertEquals(3000, keyValues.get(0).getTimestamp());
+        assertEquals(3000, keyValues.get(0).getSequence());
         assertEquals("name:Alice,age:26", keyValues.get(0).getValue());
         
         // 验证历史版本的顺序
-        assertEquals(2000, keyValues.get(1).getTimestamp());
-        assertEquals(1000, keyValues.get(2).getTimestamp());
+        assertEquals(2000, keyValues.get(1).getSequence());
+        assertEquals(1000, keyValues.get(2).getSequence());
     }
 
     /**
@@ -163,13 +162,13 @@ public class KeyValueTest {
         Collections.sort(keyValues);
 
         // 验证排序：最新的值在前，然后是墓碑，最后是旧值
-        assertEquals(3000, keyValues.get(0).getTimestamp());
+        assertEquals(3000, keyValues.get(0).getSequence());
         assertFalse(keyValues.get(0).isDeleted());
         
-        assertEquals(2000, keyValues.get(1).getTimestamp());
+        assertEquals(2000, keyValues.get(1).getSequence());
         assertTrue(keyValues.get(1).isDeleted());
         
-        assertEquals(1000, keyValues.get(2).getTimestamp());
+        assertEquals(1000, keyValues.get(2).getSequence());
         assertFalse(keyValues.get(2).isDeleted());
     }
 
@@ -206,7 +205,7 @@ public class KeyValueTest {
 
         assertNotNull(latestValid);
         assertEquals("value3", latestValid.getValue());
-        assertEquals(4000, latestValid.getTimestamp());
+        assertEquals(4000, latestValid.getSequence());
     }
 
     /**
@@ -215,11 +214,11 @@ public class KeyValueTest {
     @Test
     public void testToString() {
         KeyValue kv = new KeyValue("key1", "value1", 12345, false);
-        String expected = "KeyValue{key='key1', value='value1', timestamp=12345, deleted=false}";
+        String expected = "KeyValue{key='key1', value='value1', sequence=12345, deleted=false}";
         assertEquals(expected, kv.toString());
 
         KeyValue tombstone = new KeyValue("key2", null, 67890, true);
-        String expectedTombstone = "KeyValue{key='key2', value='null', timestamp=67890, deleted=true}";
+        String expectedTombstone = "KeyValue{key='key2', value='null', sequence=67890, deleted=true}";
         assertEquals(expectedTombstone, tombstone.toString());
     }
 
@@ -231,7 +230,7 @@ public class KeyValueTest {
         KeyValue kv1 = new KeyValue("key1", "value1", 1000, false);
         KeyValue kv2 = new KeyValue("key1", "value2", 1000, false);
 
-        // 相同键和时间戳的情况
+        // 相同键和序号的情况
         assertEquals(0, kv1.compareTo(kv2));
         assertEquals(0, kv2.compareTo(kv1));
 
@@ -16,8 +16,8 @@ public class LSMTreeMetricsTest {
             tree.get("k" + i);
         }
         MeterRegistry registry = MetricsRegistry.get();
-        Timer wt = registry.find("lsm.write.latency").timer();
-        Timer rt = registry.find("lsm.read.latency").timer();
+        Timer wt = registry.find("lsm.write.latency").tag("name", "default").timer();
+        Timer rt = registry.find("lsm.read.latency").tag("name", "default").timer();
         Assert.assertNotNull(wt);
         Assert.assertNotNull(rt);
         Assert.assertTrue(wt.count() >= 20);
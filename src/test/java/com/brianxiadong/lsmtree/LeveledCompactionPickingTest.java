@@ -0,0 +1,157 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class LeveledCompactionPickingTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private long seq = 0;
+
+    private SSTable table(int level, int id, String prefix, int from, int to, String value) throws Exception {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            data.add(new KeyValue(String.format("%s%04d", prefix, i), value, ++seq, false));
+        }
+        String file = new File(tmp.getRoot(), "sstable_level" + level + "_1_" + id + ".db").getAbsolutePath();
+        return new SSTable(file, data);
+    }
+
+    private static void assertNoOverlapAboveL0(List<SSTable> tables) {
+        for (SSTable a : tables) {
+            for (SSTable b : tables) {
+                int la = level(a);
+                if (a == b || la == 0 || la != level(b)) {
+                    continue;
+                }
+                Assert.assertFalse(a.getFilePath() + " overlaps " + b.getFilePath(),
+                        a.overlaps(b.getSmallestKey(), b.getLargestKey()));
+            }
+        }
+    }
+
+    private static int level(SSTable t) {
+        return t.getLevel();
+    }
+
+    @Test
+    public void testPicksOneFileAndOnlyOverlappingNextLevelFiles() throws Exception {
+        List<SSTable> tables = new ArrayList<>();
+        SSTable l1a = table(1, 1, "a", 0, 100, "v");
+        SSTable l1b = table(1, 2, "b", 0, 100, "v");
+        SSTable l1c = table(1, 3, "c", 0, 100, "v");
+        SSTable l2a = table(2, 4, "a", 50, 60, "old");
+        SSTable l2z = table(2, 5, "z", 0, 10, "old");
+        Collections.addAll(tables, l1a, l1b, l1c, l2a, l2z);
+
+        // L1 目标 1 字节，必然超出
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(tables);
+        Assert.assertNotNull(task);
+        Assert.assertEquals(1, task.getLevel());
+        Assert.assertEquals(Collections.singletonList(l1a), task.getTables());
+        Assert.assertEquals(Collections.singletonList(l2a), task.getOverlappingTables());
+    }
+
+    @Test
+    public void testL0CompactionLeavesDisjointNextLevelFilesUntouched() throws Exception {
+        List<SSTable> tables = new ArrayList<>();
+        SSTable l1a = table(1, 1, "a", 0, 100, "old");
+        SSTable l1m = table(1, 2, "m", 0, 100, "old");
+        tables.add(l1a);
+        tables.add(l1m);
+        for (int i = 0; i < 3; i++) {
+            tables.add(table(0, 10 + i, "a", i * 10, i * 10 + 20, "new" + i));
+        }
+
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 2, 10);
+        List<SSTable> out = s.compact(tables);
+
+        Assert.assertTrue(out.contains(l1m));
+        Assert.assertFalse(out.contains(l1a));
+        Assert.assertFalse(new File(l1a.getFilePath()).exists());
+        for (SSTable t : out) {
+            Assert.assertEquals(1, level(t));
+        }
+        assertNoOverlapAboveL0(out);
+
+        SSTable merged = null;
+        for (SSTable t : out) {
+            if (t != l1m) {
+                merged = t;
+            }
+        }
+        Assert.assertEquals(100, merged.getEntryCount());
+        Assert.assertEquals("new0", merged.get("a0005"));
+        Assert.assertEquals("new2", merged.get("a0025"));
+        Assert.assertEquals("old", merged.get("a0099"));
+    }
+
+    @Test
+    public void testCompactKeepsLevelsDisjointAndNewestValues() throws Exception {
+        List<SSTable> tables = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tables.add(table(0, i, "k", i * 30, i * 30 + 60, "v" + i));
+        }
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 1, 2, 4096);
+        List<SSTable> out = s.compact(tables);
+        Assert.assertNull(s.selectCompactionTask(out));
+        assertNoOverlapAboveL0(out);
+
+        for (int k = 0; k < 180; k++) {
+            String key = String.format("k%04d", k);
+            // 覆盖该键的最后一张 L0 表写入的值最新
+            int newest = Math.min(k / 30, 4);
+            KeyValue best = null;
+            for (SSTable t : out) {
+                KeyValue e = t.getEntryRaw(key);
+                if (e != null && (best == null || e.getSequence() > best.getSequence())) {
+                    best = e;
+                }
+            }
+            Assert.assertNotNull(key, best);
+            Assert.assertEquals(key, "v" + newest, best.getValue());
+        }
+    }
+
+    @Test
+    public void testPickSkipsTablesAlreadyBeingCompacted() throws Exception {
+        List<SSTable> tables = new ArrayList<>();
+        SSTable l1a = table(1, 1, "a", 0, 100, "v");
+        SSTable l1b = table(1, 2, "b", 0, 100, "v");
+        SSTable l2a = table(2, 3, "a", 10, 20, "old");
+        SSTable l2b = table(2, 4, "b", 10, 20, "old");
+        Collections.addAll(tables, l1a, l1b, l2a, l2b);
+        for (int i = 0; i < 3; i++) {
+            tables.add(table(0, 10 + i, "a", 0, 10, "new"));
+        }
+
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 2, 10, 1);
+        Set<SSTable> compacting = new HashSet<>();
+        LeveledCompactionStrategy.CompactionTask first = s.pickCompaction(tables, compacting);
+        Assert.assertNotNull(first);
+        compacting.addAll(first.getInputs());
+
+        // 第二个任务的输入与第一个互不相交
+        LeveledCompactionStrategy.CompactionTask second = s.pickCompaction(tables, compacting);
+        Assert.assertNotNull(second);
+        for (SSTable t : second.getInputs()) {
+            Assert.assertFalse(compacting.contains(t));
+        }
+        compacting.addAll(second.getInputs());
+
+        // L1 的 a 文件正在下推时，与其重叠的 L0 不能开始
+        Assert.assertTrue(compacting.contains(l1a));
+        Assert.assertNull(s.pickCompaction(tables, compacting));
+    }
+}
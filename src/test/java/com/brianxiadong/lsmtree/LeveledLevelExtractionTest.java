@@ -11,14 +11,17 @@ public class LeveledLevelExtractionTest {
     @Test
     public void testUnknownFilenameDefaultsToLevel0() throws Exception {
         String dir = Files.createTempDirectory("lsm-level-extract").toFile().getAbsolutePath();
-        String file = dir + "/abcd_" + System.currentTimeMillis() + ".db";
-        List<KeyValue> data = new ArrayList<>();
-        data.add(new KeyValue("a","v"));
-        SSTable t = new SSTable(file, data);
         List<SSTable> list = new ArrayList<>();
-        list.add(t);
+        // 无级别信息的文件按 L0 计数，超过 maxLevelSize=4 时应触发 L0 压缩
+        for (int i = 0; i < 5; i++) {
+            String file = dir + "/abcd_" + System.currentTimeMillis() + "_" + i + ".db";
+            List<KeyValue> data = new ArrayList<>();
+            data.add(new KeyValue("a","v"));
+            list.add(new SSTable(file, data));
+        }
         LeveledCompactionStrategy s = new LeveledCompactionStrategy(dir, 4, 10);
         LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(list);
         Assert.assertNotNull(task);
+        Assert.assertEquals(0, task.getLevel());
     }
 }
@@ -0,0 +1,245 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static com.brianxiadong.lsmtree.TestFixtures.fill;
+import static com.brianxiadong.lsmtree.TestFixtures.tableFiles;
+
+public class ManifestTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static Manifest.FileMetaData file(String name, int level, String smallest, String largest, long maxSeq) {
+        return new Manifest.FileMetaData(name, level, 1024, 10, 1, true, smallest, largest, 1, maxSeq, 42L);
+    }
+
+    private static LSMTree open(String dir) throws Exception {
+        return new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(0));
+    }
+
+    @Test
+    public void testReplayAppliesEditsAndIgnoresTornTail() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        Manifest manifest = Manifest.open(dir);
+        manifest.logEdit(new Manifest.VersionEdit().addFile(file("a.db", 0, "a", "c", 5)).setLastSequence(5));
+        manifest.logEdit(new Manifest.VersionEdit().addFile(file("b.db", 2, "d", "f", 9)).setLastSequence(9));
+        manifest.logEdit(new Manifest.VersionEdit().deleteFile("a.db"));
+        manifest.close();
+
+        // 模拟写入中途崩溃：尾部只有半条记录
+        try (FileOutputStream out = new FileOutputStream(new File(dir, Manifest.FILE_NAME), true)) {
+            out.write(new byte[] { 0, 0, 0, 100, 1, 2, 3 });
+        }
+
+        Manifest reopened = Manifest.open(dir);
+        List<Manifest.FileMetaData> files = reopened.getFiles();
+        Assert.assertEquals(1, files.size());
+        Manifest.FileMetaData b = files.get(0);
+        Assert.assertEquals("b.db", b.getFileName());
+        Assert.assertEquals(2, b.getLevel());
+        Assert.assertEquals("d", b.getSmallestKey());
+        Assert.assertEquals("f", b.getLargestKey());
+        Assert.assertEquals(9, b.getMaxSequence());
+        Assert.assertEquals(1024, b.getFileSize());
+        Assert.assertEquals(9, reopened.getLastSequence());
+
+        // 打开时已重写为快照，继续追加后仍可回放
+        reopened.logEdit(new Manifest.VersionEdit().addFile(file("c.db", 1, "g", "h", 12)).setLastSequence(12));
+        reopened.close();
+        Manifest again = Manifest.open(dir);
+        Assert.assertEquals(2, again.getFiles().size());
+        Assert.assertEquals(12, again.getLastSequence());
+        again.close();
+    }
+
+    @Test
+    public void testReopenServesFromManifestWithoutReadingTables() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = open(dir);
+        fill(tree, 0, 100);
+        tree.flush();
+        fill(tree, 100, 200);
+        tree.flush();
+        long lastSequence = tree.getLastSequence();
+        int tableCount = tree.getSSTableCount();
+        tree.close();
+        Assert.assertTrue(new File(dir, Manifest.FILE_NAME).exists());
+
+        // 破坏覆盖 key00000..key00099 的表：打开不读数据文件，只要不访问它就不受影响
+        File broken = null;
+        for (File f : tableFiles(dir)) {
+            SSTable t = new SSTable(f.getAbsolutePath());
+            if ("key00000".equals(t.getSmallestKey())) {
+                broken = f;
+            }
+            t.close();
+        }
+        Assert.assertNotNull(broken);
+        try (RandomAccessFile raf = new RandomAccessFile(broken, "rw")) {
+            raf.setLength(0);
+            raf.write(new byte[64]);
+        }
+
+        LSMTree reopened = open(dir);
+        Assert.assertEquals(tableCount, reopened.getSSTableCount());
+        Assert.assertEquals(lastSequence, reopened.getLastSequence());
+        Assert.assertEquals("value150", reopened.get("key00150"));
+        Assert.assertNull(reopened.get("key99999"));
+        reopened.close();
+    }
+
+    @Test
+    public void testOrphanTablesRemovedOnOpen() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = open(dir);
+        fill(tree, 0, 100);
+        tree.flush();
+        tree.close();
+
+        // 写出但未记入 MANIFEST 的表（例如压缩输出写完后崩溃）
+        File orphan = new File(dir, "sstable_level1_1_0.db");
+        new SSTable(orphan.getAbsolutePath(), java.util.Collections.singletonList(new KeyValue("key00001", "stale")))
+                .close();
+
+        LSMTree reopened = open(dir);
+        Assert.assertFalse(orphan.exists());
+        Assert.assertEquals("value1", reopened.get("key00001"));
+        reopened.close();
+    }
+
+    @Test
+    public void testDirectoryWithoutManifestIsMigrated() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = open(dir);
+        fill(tree, 0, 100);
+        tree.flush();
+        fill(tree, 100, 200);
+        tree.flush();
+        tree.put("key00007", "updated");
+        tree.flush();
+        long lastSequence = tree.getLastSequence();
+        tree.close();
+        Files.delete(new File(dir, Manifest.FILE_NAME).toPath());
+
+        LSMTree migrated = open(dir);
+        Assert.assertTrue(new File(dir, Manifest.FILE_NAME).exists());
+        Assert.assertEquals(lastSequence, migrated.getLastSequence());
+        Assert.assertEquals("updated", migrated.get("key00007"));
+        migrated.close();
+
+        Manifest manifest = Manifest.open(dir);
+        Assert.assertEquals(tableFiles(dir).length, manifest.getFiles().size());
+        manifest.close();
+    }
+
+    @Test
+    public void testCorruptRecordBeforeTailRefusesToOpen() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = open(dir);
+        fill(tree, 0, 100);
+        tree.flush();
+        fill(tree, 100, 200);
+        tree.flush();
+        tree.close();
+        int tableCount = tableFiles(dir).length;
+
+        // 破坏第二条记录（第一次刷盘的变更）的校验和，其后还有记录
+        File manifestFile = new File(dir, Manifest.FILE_NAME);
+        byte[] data = Files.readAllBytes(manifestFile.toPath());
+        int second = 4 + 8 + ByteBuffer.wrap(data).getInt(4);
+        data[second + 4] ^= (byte) 0xFF;
+        Files.write(manifestFile.toPath(), data);
+
+        try {
+            open(dir);
+            Assert.fail("expected IOException");
+        } catch (IOException expected) {
+            // 中间的坏记录不能当作尾部忽略
+        }
+        // 没有回放完整时不清理任何表
+        Assert.assertEquals(tableCount, tableFiles(dir).length);
+    }
+
+    @Test
+    public void testTornTailSkipsOrphanSweep() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = open(dir);
+        fill(tree, 0, 100);
+        tree.flush();
+        tree.close();
+
+        // 记录写到一半时崩溃：这条变更里的表是否已被引用无法确定
+        File pending = new File(dir, "sstable_level1_1_0.db");
+        new SSTable(pending.getAbsolutePath(), java.util.Collections.singletonList(new KeyValue("key00001", "stale")))
+                .close();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, Manifest.FILE_NAME), true)) {
+            out.write(new byte[] { 0, 0, 1, 0, 9, 9, 9, 9, 1, 2 });
+        }
+        LSMTree reopened = open(dir);
+        Assert.assertTrue(pending.exists());
+        Assert.assertEquals("value1", reopened.get("key00001"));
+        reopened.close();
+
+        // 预分配的全零尾部同样按未写完处理；MANIFEST 重写完整后孤儿才被清理
+        try (FileOutputStream out = new FileOutputStream(new File(dir, Manifest.FILE_NAME), true)) {
+            out.write(new byte[32]);
+        }
+        Manifest manifest = Manifest.open(dir);
+        Assert.assertTrue(manifest.hasTornTail());
+        manifest.close();
+        LSMTree again = open(dir);
+        Assert.assertFalse(pending.exists());
+        Assert.assertEquals("value1", again.get("key00001"));
+        again.close();
+    }
+
+    @Test
+    public void testFailedEditRejectsLaterEdits() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        Manifest manifest = Manifest.open(dir);
+        Field channel = Manifest.class.getDeclaredField("channel");
+        channel.setAccessible(true);
+        FileChannel good = (FileChannel) channel.get(manifest);
+
+        // 模拟磁盘错误：换成已关闭的文件，追加失败
+        FileChannel broken = FileChannel.open(new File(dir, Manifest.FILE_NAME).toPath(), StandardOpenOption.WRITE);
+        broken.close();
+        channel.set(manifest, broken);
+        try {
+            manifest.logEdit(new Manifest.VersionEdit().addFile(file("a.db", 0, "a", "c", 5)));
+            Assert.fail("expected IOException");
+        } catch (IOException expected) {
+            // 写入失败
+        }
+
+        // 文件恢复可写也不再接受变更，失败的记录之后不能再追加
+        channel.set(manifest, good);
+        try {
+            manifest.logEdit(new Manifest.VersionEdit().addFile(file("b.db", 0, "d", "f", 9)));
+            Assert.fail("expected IOException");
+        } catch (IOException expected) {
+            // 已失败
+        }
+        Assert.assertTrue(manifest.getFiles().isEmpty());
+        manifest.close();
+
+        Manifest reopened = Manifest.open(dir);
+        Assert.assertTrue(reopened.getFiles().isEmpty());
+        Assert.assertFalse(reopened.hasTornTail());
+        reopened.close();
+    }
+}
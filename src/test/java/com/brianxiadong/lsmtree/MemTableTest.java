@@ -85,6 +85,38 @@ public class MemTableTest {
     /**
      * 测试刷盘检查机制
      */
+    /**
+     * 测试乱序到达的旧版本不覆盖最新版本
+     */
+    @Test
+    public void testOutOfOrderOlderVersionIgnored() {
+        memTable.put("a", "new", 10);
+        memTable.put("a", "old", 5);
+        assertEquals("new", memTable.get("a"));
+        assertEquals(1, memTable.size());
+
+        memTable.delete("b", 10);
+        memTable.put("b", "old", 5);
+        assertNull(memTable.get("b"));
+        assertEquals(2, memTable.size());
+    }
+
+    /**
+     * 测试乱序到达的旧版本在有快照看得到时作为旧版本保留
+     */
+    @Test
+    public void testOutOfOrderOlderVersionKeptForSnapshot() {
+        SnapshotList snapshots = new SnapshotList();
+        MemTable table = new MemTable(DEFAULT_MAX_SIZE, snapshots);
+        Snapshot snapshot = snapshots.create(7);
+        table.put("a", "new", 10);
+        table.put("a", "old", 5);
+        assertEquals("new", table.get("a"));
+        assertEquals("old", table.getEntry("a", snapshot.getSequence()).getValue());
+        assertEquals(2, table.size());
+        snapshot.close();
+    }
+
     @Test
     public void testShouldFlush() {
         assertFalse(memTable.shouldFlush());
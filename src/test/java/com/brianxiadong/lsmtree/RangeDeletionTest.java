@@ -0,0 +1,222 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.brianxiadong.lsmtree.TestFixtures.fill;
+import static com.brianxiadong.lsmtree.TestFixtures.key;
+import static com.brianxiadong.lsmtree.TestFixtures.keys;
+
+public class RangeDeletionTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testFragmentsKeepMaxSequence() {
+        FragmentedRangeTombstones f = new FragmentedRangeTombstones(Arrays.asList(
+                new RangeTombstone("b", "f", 5),
+                new RangeTombstone("d", "h", 9),
+                new RangeTombstone("m", "p", 2)));
+        // 片段：[b,d)=5 [d,f)=9 [f,h)=9 [m,p)=2
+        Assert.assertEquals(4, f.size());
+        Assert.assertEquals(0, f.maxCoveringSequence("a"));
+        Assert.assertEquals(5, f.maxCoveringSequence("b"));
+        Assert.assertEquals(9, f.maxCoveringSequence("e"));
+        Assert.assertEquals(9, f.maxCoveringSequence("g"));
+        Assert.assertEquals(0, f.maxCoveringSequence("h"));
+        Assert.assertEquals(0, f.maxCoveringSequence("k"));
+        Assert.assertEquals(2, f.maxCoveringSequence("m"));
+        Assert.assertEquals(0, f.maxCoveringSequence("p"));
+        Assert.assertTrue(f.covers(new KeyValue("c", "v", 4, false)));
+        Assert.assertFalse(f.covers(new KeyValue("c", "v", 6, false)));
+    }
+
+    @Test
+    public void testMemTableIndexRebuiltOnReadAfterRangeDeletes() {
+        MemTable memTable = new MemTable(1000);
+        for (int i = 0; i < 50; i++) {
+            memTable.deleteRange(key(i * 2), key(i * 2 + 1), i + 1);
+        }
+        FragmentedRangeTombstones index = memTable.getRangeTombstones();
+        Assert.assertEquals(50, index.getTombstones().size());
+        Assert.assertEquals(50, memTable.maxCoveringSequence(key(98)));
+        Assert.assertEquals(0, memTable.maxCoveringSequence(key(99)));
+        // 没有新的范围删除时复用同一个索引
+        Assert.assertSame(index, memTable.getRangeTombstones());
+
+        memTable.deleteRange(key(99), key(100), 51);
+        Assert.assertEquals(51, memTable.maxCoveringSequence(key(99)));
+        memTable.clear();
+        Assert.assertTrue(memTable.getRangeTombstones().isEmpty());
+    }
+
+    @Test
+    public void testDeleteRangeHidesKeysInMemTableAndSSTables() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 100,
+                new LSMTreeOptions().setCompactionThreads(0));
+        fill(tree, 0, 50);
+        tree.flush();
+        fill(tree, 50, 80);
+
+        tree.deleteRange(key(20), key(60));
+        for (int i = 0; i < 80; i++) {
+            String expected = i >= 20 && i < 60 ? null : "value" + i;
+            Assert.assertEquals(key(i), expected, tree.get(key(i)));
+        }
+        Assert.assertEquals(40, keys(tree.range(key(0), key(99), true, true)).size());
+        Assert.assertEquals(Arrays.asList(key(18), key(19), key(60)),
+                keys(tree.range(key(18), key(60), true, true)));
+
+        // 范围删除之后写入的键仍然可见
+        tree.put(key(30), "again");
+        Assert.assertEquals("again", tree.get(key(30)));
+        Assert.assertEquals(Arrays.asList(key(30)), keys(tree.range(key(25), key(35), true, true)));
+
+        tree.deleteRange(key(5), key(5));
+        Assert.assertEquals("value5", tree.get(key(5)));
+        tree.close();
+    }
+
+    @Test
+    public void testRangeTombstoneSurvivesFlushAndRestart() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 1000, new LSMTreeOptions().setCompactionThreads(0));
+        fill(tree, 0, 100);
+        tree.flush();
+        tree.deleteRange(key(10), key(90));
+        tree.close();
+
+        // 从 WAL 恢复
+        LSMTree recovered = new LSMTree(dir, 1000, new LSMTreeOptions().setCompactionThreads(0));
+        Assert.assertNull(recovered.get(key(50)));
+        Assert.assertEquals("value90", recovered.get(key(90)));
+
+        // 刷成只含范围墓碑的 SSTable 后重开
+        recovered.flush();
+        recovered.close();
+        LSMTree reopened = new LSMTree(dir, 1000, new LSMTreeOptions().setCompactionThreads(0));
+        Assert.assertNull(reopened.get(key(10)));
+        Assert.assertEquals("value9", reopened.get(key(9)));
+        Assert.assertEquals(20, keys(reopened.range(null, null, true, true)).size());
+        reopened.close();
+    }
+
+    @Test
+    public void testSSTableRoundTripsRangeTombstones() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_1_1.db").getAbsolutePath();
+        List<RangeTombstone> tombstones = Arrays.asList(new RangeTombstone("a", "c", 7),
+                new RangeTombstone("x", "z", 3));
+        SSTable t = new SSTable(file, Collections.singletonList(new KeyValue("m", "v", 5, false)), tombstones,
+                null, new LSMTreeOptions());
+        Assert.assertEquals("a", t.getSmallestKey());
+        Assert.assertEquals("z", t.getLargestKey());
+        Assert.assertEquals(3, t.getMinSequence());
+        Assert.assertEquals(7, t.getMaxSequence());
+        t.close();
+
+        SSTable reopened = new SSTable(file);
+        Assert.assertEquals(2, reopened.getRangeTombstones().size());
+        Assert.assertEquals(7, reopened.maxCoveringSequence("b"));
+        Assert.assertEquals(0, reopened.maxCoveringSequence("m"));
+        Assert.assertEquals("v", reopened.get("m"));
+        reopened.close();
+    }
+
+    @Test
+    public void testCompactionDropsCoveredData() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        List<KeyValue> old = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            old.add(new KeyValue(key(i), "old", i + 1, false));
+        }
+        SSTable l2 = new SSTable(new File(dir, "sstable_level2_1_1.db").getAbsolutePath(), old);
+        SSTable l1 = new SSTable(new File(dir, "sstable_level1_1_2.db").getAbsolutePath(),
+                Collections.singletonList(new KeyValue(key(95), "new", 200, false)),
+                Collections.singletonList(new RangeTombstone(key(0), key(90), 150)), null, new LSMTreeOptions());
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(dir, 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l1, l2));
+        Assert.assertEquals(1, task.getLevel());
+        List<SSTable> out = s.runCompaction(task);
+
+        // 被覆盖的旧值不再写出；下面没有更旧的表，范围墓碑本身也一起丢弃
+        int entries = 0;
+        int rangeTombstones = 0;
+        for (SSTable t : out) {
+            entries += t.getEntryCount();
+            rangeTombstones += t.getRangeTombstones().size();
+        }
+        Assert.assertEquals(10, entries);
+        Assert.assertEquals(0, rangeTombstones);
+    }
+
+    @Test
+    public void testCompactionKeepsTombstoneWhileOlderDataLivesBelow() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        SSTable l3 = new SSTable(new File(dir, "sstable_level3_1_1.db").getAbsolutePath(),
+                Collections.singletonList(new KeyValue(key(5), "oldest", 1, false)));
+        List<KeyValue> old = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            old.add(new KeyValue(key(i), "old", i + 10, false));
+        }
+        SSTable l2 = new SSTable(new File(dir, "sstable_level2_1_2.db").getAbsolutePath(), old);
+        SSTable l1 = new SSTable(new File(dir, "sstable_level1_1_3.db").getAbsolutePath(),
+                Collections.singletonList(new KeyValue(key(95), "new", 200, false)),
+                Collections.singletonList(new RangeTombstone(key(0), key(90), 150)), null, new LSMTreeOptions());
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(dir, 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l1, l2, l3));
+        Assert.assertEquals(Arrays.asList(l3), task.getOutsideTables());
+        List<SSTable> out = s.runCompaction(task);
+
+        // L3 里还有被覆盖的旧值，范围墓碑必须保留
+        List<RangeTombstone> kept = new ArrayList<>();
+        for (SSTable t : out) {
+            kept.addAll(t.getRangeTombstones());
+            Assert.assertNull(t.getEntryRaw(key(50)));
+        }
+        Assert.assertEquals(1, kept.size());
+        Assert.assertEquals(key(0), kept.get(0).getStartKey());
+        Assert.assertEquals(key(90), kept.get(0).getEndKey());
+        Assert.assertEquals(150, kept.get(0).getSequence());
+    }
+
+    @Test
+    public void testCompactedTreeStillHidesRange() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(1));
+        fill(tree, 0, 1000);
+        tree.deleteRange(key(100), key(900));
+        fill(tree, 1000, 1200);
+        tree.flush();
+        tree.waitForCompactions();
+
+        Assert.assertNull(tree.get(key(500)));
+        Assert.assertEquals("value99", tree.get(key(99)));
+        Assert.assertEquals(400, keys(tree.range(null, null, true, true)).size());
+        tree.close();
+    }
+
+    @Test
+    public void testPartitionedDeleteRange() throws Exception {
+        PartitionedLSMTree tree = new PartitionedLSMTree(tmp.getRoot().getAbsolutePath(), 4, 100,
+                new ConsistentHashPartitionStrategy());
+        for (int i = 0; i < 100; i++) {
+            tree.put(key(i), "value" + i);
+        }
+        tree.deleteRange(key(10), key(20));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i >= 10 && i < 20 ? null : "value" + i, tree.get(key(i)));
+        }
+        Assert.assertEquals(90, keys(tree.range(key(0), key(99), true, true)).size());
+        tree.close();
+    }
+}
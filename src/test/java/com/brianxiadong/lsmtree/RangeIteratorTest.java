@@ -0,0 +1,238 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.brianxiadong.lsmtree.TestFixtures.key;
+import static com.brianxiadong.lsmtree.TestFixtures.keys;
+import static com.brianxiadong.lsmtree.TestFixtures.tableFiles;
+
+public class RangeIteratorTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * 数据分布在多个 SSTable、不可变和活跃 MemTable 中，同一个键在不同层有多个版本
+     */
+    private LSMTree layered(String dir) throws Exception {
+        LSMTree tree = new LSMTree(dir, 200, new LSMTreeOptions().setCompactionThreads(0));
+        for (int i = 0; i < 1000; i++) {
+            tree.put(key(i), "v1");
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            tree.put(key(i), "v2");
+        }
+        for (int i = 0; i < 1000; i += 10) {
+            tree.delete(key(i));
+        }
+        return tree;
+    }
+
+    @Test
+    public void testMergesLayersInOrderWithBounds() throws Exception {
+        LSMTree tree = layered(tmp.getRoot().getAbsolutePath());
+        RangeIterator it = tree.range(null, null, true, true);
+        String last = null;
+        int count = 0;
+        while (it.hasNext()) {
+            KeyValue kv = it.next();
+            if (last != null) {
+                Assert.assertTrue(kv.getKey().compareTo(last) > 0);
+            }
+            int i = Integer.parseInt(kv.getKey().substring(3));
+            Assert.assertNotEquals(0, i % 10);
+            Assert.assertEquals(i % 2 == 0 ? "v2" : "v1", kv.getValue());
+            last = kv.getKey();
+            count++;
+        }
+        Assert.assertEquals(900, count);
+
+        Assert.assertEquals(Arrays.asList(key(11), key(12)), keys(tree.range(key(11), key(12), true, true)));
+        Assert.assertEquals(Arrays.asList(key(12)), keys(tree.range(key(11), key(13), false, false)));
+        Assert.assertEquals(Arrays.asList(key(998), key(999)), keys(tree.range(key(998), null, true, true)));
+        Assert.assertEquals(Arrays.asList(key(1), key(2)), keys(tree.range(null, key(3), true, false)));
+        Assert.assertFalse(tree.range(key(10), key(10), true, true).hasNext());
+        tree.close();
+    }
+
+    @Test
+    public void testIteratorKeepsViewWhileTreeChanges() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(1));
+        for (int i = 0; i < 1000; i++) {
+            tree.put(key(i), "old");
+        }
+        tree.flush();
+
+        RangeIterator it = tree.range(null, null, true, true);
+        Assert.assertEquals(key(0), it.next().getKey());
+
+        // 打开之后的写入、刷盘和压缩都不影响正在进行的迭代
+        for (int i = 0; i < 1000; i++) {
+            tree.put(key(i), "new");
+        }
+        tree.flush();
+        tree.waitForCompactions();
+
+        int count = 1;
+        while (it.hasNext()) {
+            Assert.assertEquals("old", it.next().getValue());
+            count++;
+        }
+        Assert.assertEquals(1000, count);
+        Assert.assertEquals("new", tree.range(key(5), key(5), true, true).next().getValue());
+        tree.close();
+    }
+
+    @Test
+    public void testActiveMemTableReadAtOpeningSequence() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 100000,
+                new LSMTreeOptions().setCompactionThreads(0));
+        for (int i = 0; i < 1000; i += 2) {
+            tree.put(key(i), "old");
+        }
+
+        // 迭代器直接遍历仍在写入的活跃 MemTable，之后的覆盖、删除和新键都不可见
+        RangeIterator it = tree.range(null, null, true, true);
+        Assert.assertEquals(key(0), it.next().getKey());
+        RangeIterator reverse = tree.rangeReverse(null, null);
+        Assert.assertEquals(key(998), reverse.next().getKey());
+        for (int i = 0; i < 1000; i++) {
+            tree.put(key(i), "new");
+        }
+        tree.delete(key(500));
+        tree.deleteRange(key(600), key(700));
+
+        int count = 1;
+        while (it.hasNext()) {
+            KeyValue kv = it.next();
+            Assert.assertEquals("old", kv.getValue());
+            Assert.assertEquals(0, Integer.parseInt(kv.getKey().substring(3)) % 2);
+            count++;
+        }
+        Assert.assertEquals(500, count);
+        String last = key(998);
+        count = 1;
+        while (reverse.hasNext()) {
+            KeyValue kv = reverse.next();
+            Assert.assertTrue(kv.getKey().compareTo(last) < 0);
+            Assert.assertEquals("old", kv.getValue());
+            last = kv.getKey();
+            count++;
+        }
+        Assert.assertEquals(500, count);
+        Assert.assertEquals(Arrays.asList(key(499), key(501)), keys(tree.range(key(499), key(501), true, true)));
+        tree.close();
+    }
+
+    @Test
+    public void testCloseReleasesPinnedTables() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(1));
+        for (int i = 0; i < 300; i++) {
+            tree.put(key(i), "value" + i);
+        }
+        tree.flush();
+
+        // 只读第一条就停下
+        RangeIterator it = tree.range(null, null, true, true);
+        Assert.assertEquals(key(0), it.next().getKey());
+        for (int i = 0; i < 2000; i++) {
+            tree.put(key(i), "again" + i);
+        }
+        tree.flush();
+        tree.waitForCompactions();
+        // 被压缩替换的表仍被迭代器引用，文件保留
+        Assert.assertTrue(tableFiles(dir).length > tree.getSSTableCount());
+        Assert.assertEquals("value1", it.next().getValue());
+
+        it.close();
+        it.close();
+        Assert.assertFalse(it.hasNext());
+        Assert.assertEquals(tree.getSSTableCount(), tableFiles(dir).length);
+        tree.close();
+    }
+
+    @Test
+    public void testReverseMatchesForwardReversed() throws Exception {
+        LSMTree tree = layered(tmp.getRoot().getAbsolutePath());
+        tree.deleteRange(key(300), key(400));
+        String[][] bounds = { { null, null }, { key(11), key(12) }, { key(250), key(650) }, { null, key(5) },
+                { key(995), null }, { key(300), key(399) } };
+        for (String[] b : bounds) {
+            List<String> forward = keys(tree.range(b[0], b[1], true, true));
+            Collections.reverse(forward);
+            Assert.assertEquals(forward, keys(tree.rangeReverse(b[0], b[1])));
+        }
+        tree.close();
+    }
+
+    @Test
+    public void testReverseReadsLatestFirstAndStopsEarly() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 1000, new LSMTreeOptions().setCompactionThreads(0));
+        for (int i = 0; i < 5000; i++) {
+            tree.put(key(i), "event" + i);
+        }
+        tree.flush();
+        tree.put(key(4999), "updated");
+
+        RangeIterator it = tree.rangeReverse(null, null);
+        Assert.assertEquals("updated", it.next().getValue());
+        for (int i = 4998; i > 4990; i--) {
+            Assert.assertEquals("event" + i, it.next().getValue());
+        }
+        it.close();
+        Assert.assertFalse(it.hasNext());
+        tree.close();
+    }
+
+    @Test
+    public void testSSTableReverseIteratorAcrossBlocks() throws Exception {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            data.add(new KeyValue(key(i), "value" + i));
+        }
+        SSTable t = new SSTable(new File(tmp.getRoot(), "sstable_level0_1_1.db").getAbsolutePath(), data);
+        Assert.assertTrue(t.getBlockCount() > 1);
+
+        List<String> all = keys(t.reverseIterator(null, null));
+        Assert.assertEquals(3000, all.size());
+        Assert.assertEquals(key(2999), all.get(0));
+        Assert.assertEquals(key(0), all.get(2999));
+
+        List<String> bounded = keys(t.reverseIterator(key(100), key(1500)));
+        Assert.assertEquals(1401, bounded.size());
+        Assert.assertEquals(key(1500), bounded.get(0));
+        Assert.assertEquals(key(100), bounded.get(1400));
+        Assert.assertTrue(keys(t.reverseIterator("a", "b")).isEmpty());
+        Assert.assertEquals(key(2999), keys(t.reverseIterator(key(2999), "zzz")).get(0));
+        t.close();
+    }
+
+    @Test
+    public void testPartitionedRangeStreamsAcrossShards() throws Exception {
+        PartitionedLSMTree tree = new PartitionedLSMTree(tmp.getRoot().getAbsolutePath(), 4, 100,
+                new ConsistentHashPartitionStrategy());
+        for (int i = 0; i < 500; i++) {
+            tree.put(key(i), "value" + i);
+        }
+        List<String> keys = keys(tree.range(key(100), key(200), true, false));
+        Assert.assertEquals(100, keys.size());
+        Assert.assertEquals(key(100), keys.get(0));
+        Assert.assertEquals(key(199), keys.get(99));
+
+        List<String> reversed = keys(tree.rangeReverse(key(100), key(199)));
+        Collections.reverse(reversed);
+        Assert.assertEquals(keys, reversed);
+        tree.close();
+    }
+}
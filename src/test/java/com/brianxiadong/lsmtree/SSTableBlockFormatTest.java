@@ -0,0 +1,73 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SSTableBlockFormatTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private List<KeyValue> sortedData(int n) {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            data.add(new KeyValue(String.format("key%05d", i), "value-" + i));
+        }
+        data.sort(KeyValue::compareTo);
+        return data;
+    }
+
+    @Test
+    public void testMultiBlockPointLookupAndReopen() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_1.db").getAbsolutePath();
+        SSTable t = new SSTable(file, sortedData(5000));
+        Assert.assertTrue(t.isBlockBased());
+        Assert.assertTrue(t.getBlockCount() > 1);
+
+        SSTable reopened = new SSTable(file);
+        Assert.assertTrue(reopened.isBlockBased());
+        Assert.assertEquals(t.getBlockCount(), reopened.getBlockCount());
+        for (int i = 0; i < 5000; i += 7) {
+            Assert.assertEquals("value-" + i, reopened.get(String.format("key%05d", i)));
+        }
+        Assert.assertNull(reopened.get("key99999"));
+        Assert.assertNull(reopened.get("a"));
+        Assert.assertEquals(5000, reopened.getAllEntries().size());
+    }
+
+    @Test
+    public void testRangeAcrossBlocks() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_2.db").getAbsolutePath();
+        SSTable t = new SSTable(file, sortedData(3000));
+        List<KeyValue> res = t.getRangeEntries("key00100", "key02500", true, false);
+        Assert.assertEquals(2400, res.size());
+        Assert.assertEquals("key00100", res.get(0).getKey());
+        Assert.assertEquals("key02499", res.get(res.size() - 1).getKey());
+    }
+
+    @Test
+    public void testLegacyFormatStillReadable() throws Exception {
+        File f = new File(tmp.getRoot(), "legacy.db");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+            dos.writeInt(3);
+            for (int i = 0; i < 3; i++) {
+                dos.writeUTF("k" + i);
+                dos.writeBoolean(false);
+                dos.writeUTF("v" + i);
+                dos.writeLong(i);
+            }
+        }
+        SSTable t = new SSTable(f.getAbsolutePath());
+        Assert.assertFalse(t.isBlockBased());
+        Assert.assertEquals("v1", t.get("k1"));
+        Assert.assertEquals(2, t.getRangeEntries("k1", null, true, true).size());
+    }
+}
@@ -0,0 +1,39 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SSTableFilterBlockTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testPersistedFilterLoadedOnOpen() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_1.db").getAbsolutePath();
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            data.add(new KeyValue(String.format("key%06d", i), "v" + i));
+        }
+        data.sort(KeyValue::compareTo);
+        new SSTable(file, data);
+
+        SSTable reopened = new SSTable(file);
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(reopened.mightContain(String.format("key%06d", i)));
+        }
+        // 按条目数确定大小的过滤器，误判率应接近 1%
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (reopened.mightContain("missing-" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 500);
+    }
+}
@@ -0,0 +1,87 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class SSTableKeyRangeTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private SSTable create(String name, int from, int to) throws Exception {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            String key = String.format("key%05d", i);
+            data.add(i % 5 == 0 ? KeyValue.createTombstone(key) : new KeyValue(key, "value" + i));
+        }
+        return new SSTable(new File(tmp.getRoot(), name).getAbsolutePath(), data);
+    }
+
+    @Test
+    public void testKeyRangeAndCountsPersisted() throws Exception {
+        SSTable t = create("sstable_level0_1.db", 100, 200);
+        Assert.assertEquals("key00100", t.getSmallestKey());
+        Assert.assertEquals("key00199", t.getLargestKey());
+        Assert.assertEquals(100, t.getEntryCount());
+        Assert.assertEquals(20, t.getTombstoneCount());
+
+        SSTable reopened = new SSTable(t.getFilePath());
+        Assert.assertEquals("key00100", reopened.getSmallestKey());
+        Assert.assertEquals("key00199", reopened.getLargestKey());
+        Assert.assertEquals(100, reopened.getEntryCount());
+        Assert.assertEquals(20, reopened.getTombstoneCount());
+    }
+
+    @Test
+    public void testOverlapChecks() throws Exception {
+        SSTable t = create("sstable_level0_2.db", 100, 200);
+        Assert.assertTrue(t.mayContainKey("key00100"));
+        Assert.assertTrue(t.mayContainKey("key00199"));
+        Assert.assertFalse(t.mayContainKey("key00099"));
+        Assert.assertFalse(t.mayContainKey("key00200"));
+
+        Assert.assertTrue(t.overlaps(null, null));
+        Assert.assertTrue(t.overlaps("key00000", "key00100"));
+        Assert.assertTrue(t.overlaps("key00199", null));
+        Assert.assertFalse(t.overlaps("key00200", "key00300"));
+        Assert.assertFalse(t.overlaps(null, "key00099"));
+        Assert.assertTrue(t.getRangeEntries("key00200", null, true, true).isEmpty());
+    }
+
+    @Test
+    public void testEmptyTableMatchesNothing() throws Exception {
+        SSTable t = new SSTable(new File(tmp.getRoot(), "sstable_level0_3.db").getAbsolutePath(),
+                Collections.<KeyValue>emptyList());
+        Assert.assertNull(t.getSmallestKey());
+        Assert.assertFalse(t.mayContainKey("a"));
+        Assert.assertFalse(t.overlaps(null, null));
+    }
+
+    @Test
+    public void testTreeReadsAcrossDisjointTables() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 50);
+        for (int i = 0; i < 200; i++) {
+            tree.put(String.format("key%05d", i), "v" + i);
+        }
+        tree.flush();
+        Assert.assertEquals("v10", tree.get("key00010"));
+        Assert.assertEquals("v150", tree.get("key00150"));
+        Assert.assertNull(tree.get("zzz"));
+
+        Iterator<KeyValue> it = tree.range("key00045", "key00055", true, false);
+        int count = 0;
+        while (it.hasNext()) {
+            Assert.assertEquals(String.format("key%05d", 45 + count), it.next().getKey());
+            count++;
+        }
+        Assert.assertEquals(10, count);
+        tree.close();
+    }
+}
@@ -0,0 +1,86 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SSTableMmapTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private List<KeyValue> data(int n) {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (i % 10 == 0) {
+                data.add(KeyValue.createTombstone(String.format("key%05d", i)));
+            } else {
+                data.add(new KeyValue(String.format("key%05d", i), "value" + i));
+            }
+        }
+        return data;
+    }
+
+    private void assertReads(SSTable t, int n) throws Exception {
+        Assert.assertEquals("value1", t.get("key00001"));
+        Assert.assertEquals("value" + (n - 1), t.get(String.format("key%05d", n - 1)));
+        Assert.assertNull(t.get("key00010"));
+        Assert.assertTrue(t.getEntryRaw("key00010").isDeleted());
+        Assert.assertNull(t.get("missing"));
+        Assert.assertEquals(n, t.getAllEntries().size());
+        List<KeyValue> range = t.getRangeEntries("key00100", "key00200", true, false);
+        Assert.assertEquals(100, range.size());
+        Assert.assertEquals("key00100", range.get(0).getKey());
+    }
+
+    @Test
+    public void testMappedReads() throws Exception {
+        LSMTreeOptions options = new LSMTreeOptions().setBlockCache(null).setMmapReads(true);
+        String file = new File(tmp.getRoot(), "sstable_level0_1.db").getAbsolutePath();
+        SSTable t = new SSTable(file, data(3000), null, options);
+        Assert.assertTrue(t.isMapped());
+        assertReads(t, 3000);
+
+        SSTable reopened = new SSTable(file, options);
+        Assert.assertTrue(reopened.isMapped());
+        assertReads(reopened, 3000);
+        reopened.close();
+        t.close();
+    }
+
+    @Test
+    public void testMappedReadsWithCompression() throws Exception {
+        LSMTreeOptions options = new LSMTreeOptions().setBlockCache(null).setMmapReads(true);
+        String file = new File(tmp.getRoot(), "sstable_level0_2.db").getAbsolutePath();
+        SSTable t = new SSTable(file, data(3000), new LZ4CompressionStrategy(), options);
+        Assert.assertTrue(t.isMapped());
+        assertReads(t, 3000);
+        t.close();
+    }
+
+    @Test
+    public void testDeleteUnmapsAndCloseFallsBackToFile() throws Exception {
+        LSMTreeOptions options = new LSMTreeOptions().setBlockCache(null).setMmapReads(true);
+        String file = new File(tmp.getRoot(), "sstable_level0_3.db").getAbsolutePath();
+        SSTable t = new SSTable(file, data(500), null, options);
+        t.close();
+        Assert.assertFalse(t.isMapped());
+        // 关闭后仍可读，改为直接读文件
+        Assert.assertEquals("value1", t.get("key00001"));
+
+        t.delete();
+        Assert.assertFalse(new File(file).exists());
+    }
+
+    @Test
+    public void testMmapDisabledByDefault() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_4.db").getAbsolutePath();
+        SSTable t = new SSTable(file, data(100), null, new LSMTreeOptions());
+        Assert.assertFalse(t.isMapped());
+        t.delete();
+    }
+}
@@ -0,0 +1,102 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+
+public class SequenceNumberTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testWritesGetConsecutiveSequences() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 1000);
+        Assert.assertEquals(0, tree.getLastSequence());
+        tree.put("a", "1");
+        tree.delete("b");
+        Assert.assertEquals(2, tree.getLastSequence());
+        tree.write(new WriteBatch().put("c", "1").put("d", "1").put("e", "1"));
+        Assert.assertEquals(5, tree.getLastSequence());
+
+        Iterator<KeyValue> it = tree.range("a", "e", true, true);
+        Assert.assertEquals(1, it.next().getSequence());
+        Assert.assertEquals(3, it.next().getSequence());
+        tree.close();
+    }
+
+    @Test
+    public void testNewestVersionWinsAcrossSSTables() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 1000);
+        // 连续刷盘的两个表很可能在同一毫秒内写入，只能靠序号区分新旧
+        tree.put("k", "old");
+        tree.flush();
+        tree.put("k", "new");
+        tree.flush();
+        Assert.assertEquals(2, tree.getSSTableCount());
+        Iterator<KeyValue> it = tree.range(null, null, true, true);
+        KeyValue kv = it.next();
+        Assert.assertEquals("new", kv.getValue());
+        Assert.assertEquals(2, kv.getSequence());
+        Assert.assertFalse(it.hasNext());
+        tree.close();
+    }
+
+    @Test
+    public void testLegacyTextWalGetsSequencesAfterRecovered() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 1000);
+        tree.put("a", "flushed");
+        tree.put("b", "flushed");
+        tree.flush();
+        tree.close();
+        for (File f : tmp.getRoot().listFiles((d, name) -> name.matches("wal_\\d+\\.log"))) {
+            Assert.assertTrue(f.delete());
+        }
+        // 旧文本格式的第 4 列是毫秒时间戳，远大于真实序号
+        try (java.io.PrintWriter w = new java.io.PrintWriter(new File(dir, "wal.log"))) {
+            w.println("PUT|a|legacy1|1700000000000");
+            w.println("PUT|a|legacy2|1600000000000");
+            w.println("DELETE|b||1700000000001");
+        }
+
+        tree = new LSMTree(dir, 1000);
+        Assert.assertEquals("legacy2", tree.get("a"));
+        Assert.assertNull(tree.get("b"));
+        Assert.assertEquals(5, tree.getLastSequence());
+        tree.put("a", "new");
+        Assert.assertEquals("new", tree.get("a"));
+        tree.close();
+    }
+
+    @Test
+    public void testSequenceRestoredOnReopen() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 1000);
+        for (int i = 0; i < 10; i++) {
+            tree.put("k" + i, "v" + i);
+        }
+        tree.close();
+
+        LSMTree reopened = new LSMTree(dir, 1000);
+        Assert.assertEquals(10, reopened.getLastSequence());
+        reopened.put("k0", "newer");
+        Assert.assertEquals(11, reopened.getLastSequence());
+        Assert.assertEquals("newer", reopened.get("k0"));
+        reopened.close();
+    }
+
+    @Test
+    public void testSSTablePersistsMaxSequence() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_1.db").getAbsolutePath();
+        SSTable t = new SSTable(file, Arrays.asList(
+                new KeyValue("a", "1", 42, false),
+                new KeyValue("b", null, 7, true)));
+        Assert.assertEquals(42, t.getMaxSequence());
+        Assert.assertEquals(42, new SSTable(file).getMaxSequence());
+    }
+}
@@ -0,0 +1,189 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.brianxiadong.lsmtree.TestFixtures.entries;
+import static com.brianxiadong.lsmtree.TestFixtures.key;
+import static com.brianxiadong.lsmtree.TestFixtures.table;
+import static com.brianxiadong.lsmtree.TestFixtures.values;
+
+public class SnapshotTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final TestFixtures.Versions versions = new TestFixtures.Versions();
+
+    private static KeyValue find(List<SSTable> tables, String key, long snapshot) {
+        for (SSTable t : tables) {
+            KeyValue kv = t.getEntryRaw(key, BlockedBloomFilter.hash(key), snapshot);
+            if (kv != null) {
+                return kv;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testMemTableKeepsOldVersionsOnlyForLiveSnapshots() {
+        SnapshotList snapshots = new SnapshotList();
+        MemTable memTable = new MemTable(100, snapshots);
+        memTable.put("a", "1", 1);
+        memTable.put("a", "2", 2);
+        Assert.assertEquals(1, memTable.size());
+
+        Snapshot snapshot = snapshots.create(2);
+        memTable.put("a", "3", 3);
+        memTable.put("a", "4", 4);
+        // 序号 2 的版本对快照可见，序号 3 的版本没有快照看得到
+        Assert.assertEquals(2, memTable.size());
+        Assert.assertEquals("2", memTable.getEntry("a", 2).getValue());
+        Assert.assertEquals("4", memTable.get("a"));
+        Assert.assertEquals(Arrays.asList("4", "2"), values(memTable.getAllEntries().iterator()));
+
+        snapshot.close();
+        Assert.assertTrue(snapshots.isEmpty());
+        Assert.assertEquals(Collections.singletonList("4"), values(memTable.getVisibleEntries().iterator()));
+        memTable.put("a", "5", 5);
+        Assert.assertEquals("5", memTable.get("a"));
+    }
+
+    @Test
+    public void testReadsAsOfSnapshotAcrossFlushAndCompaction() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 100,
+                new LSMTreeOptions().setCompactionThreads(1));
+        for (int i = 0; i < 300; i++) {
+            tree.put(key(i), "old" + i);
+        }
+        Snapshot snapshot = tree.getSnapshot();
+        Assert.assertEquals(1, tree.getSnapshotCount());
+
+        for (int i = 0; i < 300; i++) {
+            tree.put(key(i), "new" + i);
+        }
+        tree.delete(key(0));
+        tree.deleteRange(key(100), key(200));
+        tree.put(key(300), "added");
+
+        for (int round = 0; round < 2; round++) {
+            Assert.assertEquals("old0", tree.get(key(0), snapshot));
+            Assert.assertEquals("old150", tree.get(key(150), snapshot));
+            Assert.assertNull(tree.get(key(300), snapshot));
+            Assert.assertNull(tree.get(key(0)));
+            Assert.assertNull(tree.get(key(150)));
+            Assert.assertEquals("new250", tree.get(key(250)));
+
+            List<String> values = values(tree.range(key(98), key(102), true, false, snapshot));
+            Assert.assertEquals(Arrays.asList("old98", "old99", "old100", "old101"), values);
+            Assert.assertEquals(300, values(tree.range(null, null, true, true, snapshot)).size());
+            Assert.assertEquals(200, values(tree.range(null, null, true, true)).size());
+
+            try (DBIterator it = tree.newIterator(snapshot)) {
+                it.seekToLast();
+                Assert.assertEquals(key(299), it.key());
+                Assert.assertEquals("old299", it.value());
+                it.seekForPrev(key(150));
+                Assert.assertEquals("old150", it.value());
+                it.next();
+                Assert.assertEquals("old151", it.value());
+            }
+
+            // 第二轮在刷盘和压缩之后重复同样的读取
+            tree.flush();
+            tree.waitForCompactions();
+        }
+
+        snapshot.close();
+        Assert.assertEquals(0, tree.getSnapshotCount());
+        tree.close();
+    }
+
+    @Test
+    public void testSnapshotsAtSameSequenceCountedSeparately() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 100,
+                new LSMTreeOptions().setCompactionThreads(0));
+        tree.put("a", "1");
+        Snapshot first = tree.getSnapshot();
+        Snapshot second = tree.getSnapshot();
+        Assert.assertEquals(first.getSequence(), second.getSequence());
+        Assert.assertEquals(2, tree.getSnapshotCount());
+
+        first.close();
+        first.close();
+        Assert.assertEquals(1, tree.getSnapshotCount());
+        tree.put("a", "2");
+        Assert.assertEquals("1", tree.get("a", second));
+
+        second.close();
+        Assert.assertEquals(0, tree.getSnapshotCount());
+        tree.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedSnapshotCannotBeRead() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 100,
+                new LSMTreeOptions().setCompactionThreads(0));
+        Snapshot snapshot = tree.getSnapshot();
+        snapshot.close();
+        snapshot.close();
+        try {
+            tree.get("a", snapshot);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsVersionsVisibleToSnapshots() throws Exception {
+        SSTable l2 = table(tmp.getRoot(), 2, 1, versions.puts(0, 100, "old"));
+        long snapshot = versions.last();
+        SSTable l1 = table(tmp.getRoot(), 1, 2, versions.deletesAndUpdates(0, 100));
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l1, l2));
+        task.setSnapshots(new long[]{snapshot});
+        List<SSTable> out = s.runCompaction(task);
+
+        // 快照看得到的旧值和之后的墓碑都要保留
+        Assert.assertEquals(200, entries(out));
+        Assert.assertEquals("old", find(out, key(0), snapshot).getValue());
+        Assert.assertTrue(find(out, key(0), Long.MAX_VALUE).isDeleted());
+        Assert.assertEquals("new", find(out, key(1), Long.MAX_VALUE).getValue());
+
+        // 快照释放后再压缩，旧版本和墓碑一起清掉
+        List<SSTable> compacted = s.runCompaction(new LeveledCompactionStrategy.CompactionTask(2, out));
+        Assert.assertEquals(50, entries(compacted));
+        Assert.assertNull(find(compacted, key(0), snapshot));
+    }
+
+    @Test
+    public void testRangeTombstoneKeptForOlderSnapshot() throws Exception {
+        SSTable l2 = table(tmp.getRoot(), 2, 1, versions.puts(0, 100, "old"));
+        long snapshot = versions.last();
+        SSTable l1 = table(tmp.getRoot(), 1, 2, versions.puts(100, 110, "new"),
+                Collections.singletonList(new RangeTombstone(key(0), key(50), versions.next())));
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l1, l2));
+        task.setSnapshots(new long[]{snapshot});
+        List<SSTable> out = s.runCompaction(task);
+
+        // 被范围删除的旧值对快照仍可见，范围墓碑也不能丢，否则它们会重新出现
+        Assert.assertEquals(110, entries(out));
+        Assert.assertEquals("old", find(out, key(10), snapshot).getValue());
+        long covering = 0;
+        for (SSTable t : out) {
+            covering = Math.max(covering, t.maxCoveringSequence(key(10)));
+        }
+        Assert.assertEquals(versions.last(), covering);
+
+        List<SSTable> compacted = s.runCompaction(new LeveledCompactionStrategy.CompactionTask(2, out));
+        Assert.assertEquals(60, entries(compacted));
+    }
+}
@@ -0,0 +1,104 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class StreamingCompactionTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private String file(String name) {
+        return new File(tmp.getRoot(), name).getAbsolutePath();
+    }
+
+    @Test
+    public void testMergingIteratorKeepsNewestVersion() {
+        List<KeyValue> older = Arrays.asList(
+                new KeyValue("a", "a1", 1, false),
+                new KeyValue("b", "b1", 2, false),
+                new KeyValue("d", "d1", 3, false));
+        List<KeyValue> newer = Arrays.asList(
+                new KeyValue("b", "b2", 5, false),
+                KeyValue.createTombstone("c", 6),
+                KeyValue.createTombstone("d", 7));
+        List<Iterator<KeyValue>> inputs = Arrays.asList(older.iterator(), newer.iterator());
+
+        List<KeyValue> out = new ArrayList<>();
+        new MergingIterator(inputs).forEachRemaining(out::add);
+
+        Assert.assertEquals(4, out.size());
+        Assert.assertEquals("a1", out.get(0).getValue());
+        Assert.assertEquals("b2", out.get(1).getValue());
+        Assert.assertTrue(out.get(2).isDeleted());
+        Assert.assertEquals("d", out.get(3).getKey());
+        Assert.assertTrue(out.get(3).isDeleted());
+    }
+
+    @Test
+    public void testSSTableIteratorSpansBlocks() throws Exception {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            data.add(new KeyValue(String.format("key%05d", i), "value" + i, i + 1, false));
+        }
+        SSTable t = new SSTable(file("sstable_level0_1.db"), data, null, new LSMTreeOptions());
+        Assert.assertTrue(t.getBlockCount() > 1);
+
+        int n = 0;
+        try (SSTableIterator it = t.iterator()) {
+            while (it.hasNext()) {
+                KeyValue kv = it.next();
+                Assert.assertEquals(data.get(n).getKey(), kv.getKey());
+                Assert.assertEquals(data.get(n).getValue(), kv.getValue());
+                n++;
+            }
+        }
+        Assert.assertEquals(3000, n);
+        t.close();
+    }
+
+    @Test
+    public void testMergeWritesSplitOutputs() throws Exception {
+        LSMTreeOptions options = new LSMTreeOptions();
+        List<KeyValue> even = new ArrayList<>();
+        List<KeyValue> all = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            String key = String.format("key%05d", i);
+            all.add(new KeyValue(key, "old" + i, i + 1, false));
+            if (i % 2 == 0) {
+                even.add(i % 4 == 0
+                        ? KeyValue.createTombstone(key, 10000 + i)
+                        : new KeyValue(key, "new" + i, 10000 + i, false));
+            }
+        }
+        SSTable base = new SSTable(file("sstable_level0_1.db"), all, null, options);
+        SSTable update = new SSTable(file("sstable_level0_2.db"), even, new LZ4CompressionStrategy(), options);
+
+        List<SSTable> out = StreamingCompaction.merge(Arrays.asList(update, base),
+                i -> file("sstable_level1_" + i + ".db"), 1000, null, options);
+
+        Assert.assertEquals(3, out.size());
+        long total = 0;
+        for (SSTable t : out) {
+            total += t.getEntryCount();
+        }
+        Assert.assertEquals(2500, total);
+        Assert.assertEquals("old1", out.get(0).get("key00001"));
+        Assert.assertEquals("new2", out.get(0).get("key00002"));
+        Assert.assertTrue(out.get(0).getEntryRaw("key00004").isDeleted());
+        Assert.assertEquals("old2499", out.get(2).get("key02499"));
+        Assert.assertEquals(10000 + 2498, out.get(2).getMaxSequence());
+        for (SSTable t : out) {
+            t.close();
+        }
+        base.close();
+        update.close();
+    }
+}
@@ -0,0 +1,113 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SubcompactionTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private String file(String name) {
+        return new File(tmp.getRoot(), name).getAbsolutePath();
+    }
+
+    /**
+     * 三张相互重叠的表：每张覆盖全部键的一部分，后写的表序号更大，每 5 个键有一个墓碑
+     */
+    private List<SSTable> overlappingInputs(LSMTreeOptions options) throws Exception {
+        List<SSTable> inputs = new ArrayList<>();
+        long seq = 0;
+        for (int t = 0; t < 3; t++) {
+            List<KeyValue> data = new ArrayList<>();
+            for (int i = t; i < 30000; i += 2) {
+                String key = String.format("key%06d", i);
+                seq++;
+                data.add(i % 5 == 0 && t == 2 ? KeyValue.createTombstone(key, 100000 + seq)
+                        : new KeyValue(key, "t" + t + "_" + i, 100000 * t + seq, false));
+            }
+            inputs.add(new SSTable(file("sstable_level0_" + t + ".db"), data, null, options));
+        }
+        return inputs;
+    }
+
+    private static List<KeyValue> entries(List<SSTable> tables) throws Exception {
+        List<KeyValue> all = new ArrayList<>();
+        for (SSTable t : tables) {
+            all.addAll(t.getAllEntries());
+        }
+        return all;
+    }
+
+    @Test
+    public void testRangeIteratorHonorsBounds() throws Exception {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            data.add(new KeyValue(String.format("key%05d", i), "v" + i, i + 1, false));
+        }
+        SSTable t = new SSTable(file("sstable_level0_1.db"), data, null, new LSMTreeOptions());
+        List<String> keys = new ArrayList<>();
+        try (SSTableIterator it = t.iterator("key01000", "key02000")) {
+            it.forEachRemaining(kv -> keys.add(kv.getKey()));
+        }
+        Assert.assertEquals(1000, keys.size());
+        Assert.assertEquals("key01000", keys.get(0));
+        Assert.assertEquals("key01999", keys.get(999));
+
+        try (SSTableIterator it = t.iterator("zzz", null)) {
+            Assert.assertFalse(it.hasNext());
+        }
+        t.close();
+    }
+
+    @Test
+    public void testSplitKeysAreAscendingAndBounded() throws Exception {
+        List<SSTable> inputs = overlappingInputs(new LSMTreeOptions());
+        List<String> splits = StreamingCompaction.splitKeys(inputs, 4, 1000);
+        Assert.assertEquals(3, splits.size());
+        for (int i = 1; i < splits.size(); i++) {
+            Assert.assertTrue(splits.get(i - 1).compareTo(splits.get(i)) < 0);
+        }
+        // 输入不足以写满两个输出表时不切分
+        Assert.assertTrue(StreamingCompaction.splitKeys(inputs, 4, 100000).isEmpty());
+        Assert.assertTrue(StreamingCompaction.splitKeys(inputs, 1, 1000).isEmpty());
+    }
+
+    @Test
+    public void testSubcompactionsMatchSingleThreadedMerge() throws Exception {
+        LSMTreeOptions single = new LSMTreeOptions();
+        LSMTreeOptions parallel = new LSMTreeOptions().setMaxSubcompactions(4);
+        List<SSTable> inputs = overlappingInputs(single);
+
+        List<SSTable> expected = StreamingCompaction.merge(inputs, i -> file("single_" + i + ".db"), 5000, null,
+                single);
+        List<SSTable> actual = StreamingCompaction.merge(inputs, i -> file("parallel_" + i + ".db"), 5000, null,
+                parallel);
+        Assert.assertTrue(actual.size() > expected.size());
+
+        // 输出按键区间顺序排列且互不重叠
+        for (int i = 1; i < actual.size(); i++) {
+            Assert.assertTrue(actual.get(i - 1).getLargestKey().compareTo(actual.get(i).getSmallestKey()) < 0);
+        }
+        List<KeyValue> want = entries(expected);
+        List<KeyValue> got = entries(actual);
+        Assert.assertEquals(30000, want.size());
+        Assert.assertEquals(want.size(), got.size());
+        for (int i = 0; i < want.size(); i++) {
+            Assert.assertEquals(want.get(i).getKey(), got.get(i).getKey());
+            Assert.assertEquals(want.get(i).getValue(), got.get(i).getValue());
+            Assert.assertEquals(want.get(i).isDeleted(), got.get(i).isDeleted());
+            Assert.assertEquals(want.get(i).getSequence(), got.get(i).getSequence());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveSubcompactionsRejected() {
+        new LSMTreeOptions().setMaxSubcompactions(0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SuperVersionTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testDeleteDeferredWhilePinned() throws Exception {
+        String file = new File(tmp.getRoot(), "sstable_level0_1.db").getAbsolutePath();
+        SSTable t = new SSTable(file, Collections.singletonList(new KeyValue("k", "v", 1, false)));
+        SuperVersion sv = new SuperVersion(new MemTable(10), new ArrayList<>(), Collections.singletonList(t));
+        Assert.assertTrue(sv.tryAcquire());
+
+        // 被压缩替换后，仍被视图引用的表保持可读
+        t.delete();
+        Assert.assertTrue(new File(file).exists());
+        Assert.assertEquals("v", t.get("k"));
+
+        sv.release();
+        Assert.assertTrue(new File(file).exists());
+        sv.release();
+        Assert.assertFalse(new File(file).exists());
+        Assert.assertFalse(sv.tryAcquire());
+    }
+
+    @Test
+    public void testReadsNeverSeePartialBatch() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 50);
+        tree.write(new WriteBatch().put("a", "0").put("b", "0"));
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    Iterator<KeyValue> it = tree.range("a", "b", true, true);
+                    String a = it.next().getValue();
+                    String b = it.next().getValue();
+                    if (!a.equals(b)) {
+                        failure.set(a + " != " + b);
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                failure.set(e.toString());
+            }
+        });
+        reader.start();
+        for (int i = 1; i <= 2000; i++) {
+            tree.write(new WriteBatch().put("a", "" + i).put("b", "" + i));
+        }
+        done.set(true);
+        reader.join();
+        Assert.assertNull(failure.get());
+        Assert.assertEquals("2000", tree.get("a"));
+        tree.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadAfterCloseFails() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 10);
+        tree.put("k", "v");
+        tree.close();
+        tree.get("k");
+    }
+}
@@ -0,0 +1,117 @@
+package com.brianxiadong.lsmtree;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 测试共用的数据构造和统计工具
+ */
+final class TestFixtures {
+    private TestFixtures() {
+    }
+
+    static String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    /**
+     * 写入 [from, to) 的键，值为 "value" + i
+     */
+    static void fill(LSMTree tree, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            tree.put(key(i), "value" + i);
+        }
+    }
+
+    static List<String> keys(Iterator<KeyValue> it) {
+        List<String> keys = new ArrayList<>();
+        while (it.hasNext()) {
+            keys.add(it.next().getKey());
+        }
+        return keys;
+    }
+
+    static List<String> values(Iterator<KeyValue> it) {
+        List<String> values = new ArrayList<>();
+        while (it.hasNext()) {
+            values.add(it.next().getValue());
+        }
+        return values;
+    }
+
+    /**
+     * 目录下的 SSTable 文件
+     */
+    static File[] tableFiles(String dir) {
+        File[] files = new File(dir).listFiles((d, name) -> name.startsWith("sstable_") && name.endsWith(".db"));
+        return files == null ? new File[0] : files;
+    }
+
+    static SSTable table(File dir, int level, int id, List<KeyValue> data) throws IOException {
+        return table(dir, level, id, data, Collections.emptyList());
+    }
+
+    static SSTable table(File dir, int level, int id, List<KeyValue> data, List<RangeTombstone> rangeTombstones)
+            throws IOException {
+        String file = new File(dir, "sstable_level" + level + "_1_" + id + ".db").getAbsolutePath();
+        return new SSTable(file, data, rangeTombstones, null, null);
+    }
+
+    static int entries(List<SSTable> tables) {
+        int n = 0;
+        for (SSTable t : tables) {
+            n += t.getEntryCount();
+        }
+        return n;
+    }
+
+    static int tombstones(List<SSTable> tables) {
+        int n = 0;
+        for (SSTable t : tables) {
+            n += t.getTombstoneCount();
+        }
+        return n;
+    }
+
+    /**
+     * 按递增写入序号生成多版本数据
+     */
+    static final class Versions {
+        private long seq;
+
+        /**
+         * 最后分配的序号
+         */
+        long last() {
+            return seq;
+        }
+
+        long next() {
+            return ++seq;
+        }
+
+        List<KeyValue> puts(int from, int to, String value) {
+            List<KeyValue> data = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                data.add(new KeyValue(key(i), value, next(), false));
+            }
+            return data;
+        }
+
+        /**
+         * [from, to) 中偶数键删除、奇数键更新
+         */
+        List<KeyValue> deletesAndUpdates(int from, int to) {
+            List<KeyValue> data = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                data.add(i % 2 == 0 ? new KeyValue(key(i), null, next(), true)
+                        : new KeyValue(key(i), "new", next(), false));
+            }
+            return data;
+        }
+    }
+}
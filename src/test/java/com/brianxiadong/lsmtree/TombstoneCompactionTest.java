@@ -0,0 +1,114 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.brianxiadong.lsmtree.TestFixtures.entries;
+import static com.brianxiadong.lsmtree.TestFixtures.fill;
+import static com.brianxiadong.lsmtree.TestFixtures.key;
+import static com.brianxiadong.lsmtree.TestFixtures.table;
+import static com.brianxiadong.lsmtree.TestFixtures.tableFiles;
+import static com.brianxiadong.lsmtree.TestFixtures.tombstones;
+
+public class TombstoneCompactionTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final TestFixtures.Versions versions = new TestFixtures.Versions();
+
+    @Test
+    public void testBottommostCompactionDropsTombstonesAndShadowedVersions() throws Exception {
+        SSTable l2 = table(tmp.getRoot(), 2, 1, versions.puts(0, 100, "old"));
+        SSTable l1 = table(tmp.getRoot(), 1, 2, versions.deletesAndUpdates(0, 100));
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l1, l2));
+        Assert.assertEquals(1, task.getLevel());
+        Assert.assertTrue(task.getOutsideTables().isEmpty());
+        List<SSTable> out = s.runCompaction(task);
+
+        // 下面没有更旧的版本：墓碑和被覆盖的旧值都不再写出
+        Assert.assertEquals(0, tombstones(out));
+        Assert.assertEquals(50, entries(out));
+        for (SSTable t : out) {
+            Assert.assertNull(t.getEntryRaw(key(0)));
+            Assert.assertEquals("new", t.get(key(1)));
+        }
+    }
+
+    @Test
+    public void testTombstoneKeptWhileOlderVersionLivesBelow() throws Exception {
+        SSTable l3 = table(tmp.getRoot(), 3, 1, versions.puts(0, 10, "oldest"));
+        SSTable l2 = table(tmp.getRoot(), 2, 2, versions.puts(50, 100, "old"));
+        SSTable l1 = table(tmp.getRoot(), 1, 3, versions.deletesAndUpdates(0, 100));
+        List<SSTable> tables = Arrays.asList(l1, l2, l3);
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(tables);
+        Assert.assertEquals(1, task.getLevel());
+        Assert.assertEquals(Arrays.asList(l3), task.getOutsideTables());
+        List<SSTable> out = s.runCompaction(task);
+
+        // key(0)..key(9) 在 L3 还有旧值，墓碑必须保留；其余墓碑可以丢弃
+        Assert.assertEquals(5, tombstones(out));
+        boolean found = false;
+        for (SSTable t : out) {
+            KeyValue kv = t.getEntryRaw(key(4));
+            if (kv != null) {
+                Assert.assertTrue(kv.isDeleted());
+                found = true;
+            }
+            Assert.assertNull(t.getEntryRaw(key(50)));
+        }
+        Assert.assertTrue(found);
+    }
+
+    @Test
+    public void testNewerTablesOutsideDoNotBlockDrop() throws Exception {
+        SSTable l2 = table(tmp.getRoot(), 2, 1, versions.puts(0, 100, "old"));
+        SSTable l1 = table(tmp.getRoot(), 1, 2, versions.deletesAndUpdates(0, 100));
+        // 之后刷盘的 L0 表只含更新的版本
+        SSTable l0 = table(tmp.getRoot(), 0, 3, versions.puts(0, 10, "newest"));
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l0, l1, l2));
+        Assert.assertEquals(1, task.getLevel());
+        Assert.assertTrue(task.getOutsideTables().isEmpty());
+        Assert.assertEquals(0, tombstones(s.runCompaction(task)));
+    }
+
+    @Test
+    public void testDeleteHeavyTreeShrinks() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(1));
+        fill(tree, 0, 500);
+        for (int i = 0; i < 500; i++) {
+            tree.delete(key(i));
+        }
+        tree.flush();
+        tree.waitForCompactions();
+        tree.close();
+
+        List<SSTable> tables = new ArrayList<>();
+        for (File f : tableFiles(dir)) {
+            tables.add(new SSTable(f.getAbsolutePath()));
+        }
+        // 删除全部落入同一次 L0 -> L1 压缩，下面没有旧版本，墓碑和旧值一起清掉
+        Assert.assertEquals(0, entries(tables));
+        for (SSTable t : tables) {
+            t.close();
+        }
+
+        LSMTree reopened = new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(0));
+        Assert.assertNull(reopened.get(key(1)));
+        Assert.assertFalse(reopened.range(null, null, true, true).hasNext());
+        reopened.close();
+    }
+}
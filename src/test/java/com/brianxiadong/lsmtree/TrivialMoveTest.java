@@ -0,0 +1,100 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TrivialMoveTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private long seq = 0;
+
+    private SSTable table(int level, int id, String prefix, int from, int to) throws Exception {
+        List<KeyValue> data = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            data.add(new KeyValue(String.format("%s%04d", prefix, i), "v" + i, ++seq, false));
+        }
+        String file = new File(tmp.getRoot(), "sstable_level" + level + "_1_" + id + ".db").getAbsolutePath();
+        return new SSTable(file, data);
+    }
+
+    @Test
+    public void testNonOverlappingFileIsMovedWithoutRewrite() throws Exception {
+        SSTable l1a = table(1, 1, "a", 0, 100);
+        SSTable l2z = table(2, 2, "z", 0, 100);
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l1a, l2z));
+        Assert.assertNotNull(task);
+        Assert.assertTrue(task.isTrivialMove());
+        Assert.assertTrue(task.getOverlappingTables().isEmpty());
+
+        // L1 目标 1 字节，两个文件逐层平移到不再超出目标的层，全程没有新文件
+        List<SSTable> out = s.compact(new ArrayList<>(Arrays.asList(l1a, l2z)));
+        Assert.assertEquals(Arrays.asList(l1a, l2z), out);
+        Assert.assertTrue(l1a.getLevel() > 1);
+        String[] names = tmp.getRoot().list((d, name) -> name.endsWith(".db"));
+        Assert.assertEquals(2, names.length);
+        Assert.assertTrue(new File(l1a.getFilePath()).exists());
+        Assert.assertEquals("v5", l1a.get("a0005"));
+    }
+
+    @Test
+    public void testOverlapRequiresMerge() throws Exception {
+        SSTable l1a = table(1, 1, "a", 0, 100);
+        SSTable l2a = table(2, 2, "a", 50, 60);
+        LeveledCompactionStrategy s = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 4, 10, 1);
+        LeveledCompactionStrategy.CompactionTask task = s.selectCompactionTask(Arrays.asList(l1a, l2a));
+        Assert.assertNotNull(task);
+        Assert.assertFalse(task.isTrivialMove());
+
+        // L0 文件之间重叠时也必须合并
+        List<SSTable> l0 = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            l0.add(table(0, 10 + i, "b", i * 10, i * 10 + 20));
+        }
+        task = new LeveledCompactionStrategy(tmp.getRoot().getAbsolutePath(), 2, 10).selectCompactionTask(l0);
+        Assert.assertNotNull(task);
+        Assert.assertFalse(task.isTrivialMove());
+    }
+
+    @Test
+    public void testSequentialIngestOnlyMovesFiles() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(1));
+        for (int i = 0; i < 2000; i++) {
+            tree.put(String.format("id%06d", i), "value" + i);
+        }
+        tree.flush();
+        tree.waitForCompactions();
+        tree.close();
+
+        // 时间有序的键互不重叠：L0 超过阈值后整体平移到 L1，没有写出任何压缩输出
+        File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".db"));
+        Assert.assertNotNull(files);
+        for (File f : files) {
+            Assert.assertTrue(f.getName(), f.getName().startsWith("sstable_level0_"));
+        }
+        Manifest manifest = Manifest.open(dir);
+        int moved = 0;
+        for (Manifest.FileMetaData meta : manifest.getFiles()) {
+            if (meta.getLevel() == 1) {
+                moved++;
+            }
+        }
+        manifest.close();
+        Assert.assertTrue(moved > 0);
+
+        LSMTree reopened = new LSMTree(dir, 100, new LSMTreeOptions().setCompactionThreads(0));
+        Assert.assertEquals("value0", reopened.get("id000000"));
+        Assert.assertEquals("value1999", reopened.get("id001999"));
+        reopened.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Checksum;
+
+public class WriteAheadLogBinaryFormatTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSpecialCharactersRoundTrip() throws Exception {
+        String path = new File(tmp.getRoot(), "wal.log").getAbsolutePath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        wal.append(WriteAheadLog.LogEntry.put("a|b", "line1\nline2|x"));
+        wal.append(WriteAheadLog.LogEntry.put("键", ""));
+        wal.append(WriteAheadLog.LogEntry.delete("c\r\n"));
+        wal.close();
+
+        List<WriteAheadLog.LogEntry> entries = new WriteAheadLog(path).recover();
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals("a|b", entries.get(0).getKey());
+        Assert.assertEquals("line1\nline2|x", entries.get(0).getValue());
+        Assert.assertEquals("键", entries.get(1).getKey());
+        Assert.assertEquals("", entries.get(1).getValue());
+        Assert.assertEquals(WriteAheadLog.Operation.DELETE, entries.get(2).getOperation());
+        Assert.assertEquals("c\r\n", entries.get(2).getKey());
+        Assert.assertNull(entries.get(2).getValue());
+    }
+
+    @Test
+    public void testTornTailIsTruncatedOnOpen() throws Exception {
+        String path = new File(tmp.getRoot(), "wal.log").getAbsolutePath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        wal.append(WriteAheadLog.LogEntry.put("k1", "v1"));
+        wal.append(WriteAheadLog.LogEntry.put("k2", "v2"));
+        wal.close();
+
+        // 模拟写到一半崩溃：截掉最后一条记录的末尾 3 字节
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        WriteAheadLog reopened = new WriteAheadLog(path);
+        List<WriteAheadLog.LogEntry> entries = reopened.recover();
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals("k1", entries.get(0).getKey());
+
+        // 截断后继续追加的记录可以被恢复
+        reopened.append(WriteAheadLog.LogEntry.put("k3", "v3"));
+        reopened.close();
+        entries = new WriteAheadLog(path).recover();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals("k3", entries.get(1).getKey());
+    }
+
+    @Test
+    public void testCorruptedRecordStopsRecovery() throws Exception {
+        String path = new File(tmp.getRoot(), "wal.log").getAbsolutePath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        wal.append(WriteAheadLog.LogEntry.put("k1", "v1"));
+        wal.append(WriteAheadLog.LogEntry.put("k2", "v2"));
+        wal.close();
+
+        // 翻转最后一个字节（第二条记录的时间戳）
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.seek(raf.length() - 1);
+            int b = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(b ^ 0xFF);
+        }
+        List<WriteAheadLog.LogEntry> entries = new WriteAheadLog(path).recover();
+        Assert.assertEquals(1, entries.size());
+    }
+
+    @Test
+    public void testLegacyTextFileIsConverted() throws Exception {
+        File file = new File(tmp.getRoot(), "wal.log");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+            bw.write("PUT|k1|v1|1000");
+            bw.newLine();
+            bw.write("DELETE|k2||2000");
+            bw.newLine();
+        }
+        WriteAheadLog wal = new WriteAheadLog(file.getAbsolutePath());
+        Assert.assertTrue(WriteAheadLog.isBinaryFormat(file.getAbsolutePath()));
+        wal.append(WriteAheadLog.LogEntry.put("k3", "v3"));
+        List<WriteAheadLog.LogEntry> entries = wal.recover();
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals("v1", entries.get(0).getValue());
+        // 旧格式的毫秒时间戳不作为序号
+        Assert.assertEquals(0, entries.get(0).getSequence());
+        Assert.assertEquals(WriteAheadLog.Operation.DELETE, entries.get(1).getOperation());
+        wal.close();
+    }
+
+    @Test
+    public void testCrc32cKnownValue() {
+        Checksum jdkOrFallback = Crc32c.create();
+        Crc32c table = new Crc32c();
+        byte[] data = "123456789".getBytes(StandardCharsets.US_ASCII);
+        jdkOrFallback.update(data, 0, data.length);
+        table.update(data, 0, data.length);
+        Assert.assertEquals(0xE3069283L, jdkOrFallback.getValue());
+        Assert.assertEquals(0xE3069283L, table.getValue());
+    }
+}
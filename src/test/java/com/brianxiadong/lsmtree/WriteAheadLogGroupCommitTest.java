@@ -0,0 +1,155 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class WriteAheadLogGroupCommitTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentFsyncWritersShareSyncs() throws Exception {
+        String path = new File(tmp.getRoot(), "wal.log").getAbsolutePath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        int threads = 8;
+        int perThread = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    wal.append(WriteAheadLog.LogEntry.put("t" + id + "-" + i, "v"), WriteAheadLog.Durability.FSYNC);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // 每次 append 返回前都已 fsync，但多个写入者共享同一次 force
+        Assert.assertTrue(wal.getSyncCount() >= 1);
+        Assert.assertTrue(wal.getSyncCount() <= threads * perThread);
+        List<WriteAheadLog.LogEntry> entries = wal.recover();
+        Assert.assertEquals(threads * perThread, entries.size());
+        Set<String> keys = new HashSet<>();
+        for (WriteAheadLog.LogEntry e : entries) {
+            keys.add(e.getKey());
+        }
+        Assert.assertEquals(threads * perThread, keys.size());
+        wal.close();
+    }
+
+    @Test
+    public void testDurabilityModes() throws Exception {
+        String path = new File(tmp.getRoot(), "wal.log").getAbsolutePath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        long emptySize = new File(path).length();
+
+        // NONE 只进入缓冲区
+        wal.append(WriteAheadLog.LogEntry.put("k1", "v1"), WriteAheadLog.Durability.NONE);
+        Assert.assertEquals(emptySize, new File(path).length());
+        Assert.assertEquals(0, wal.getBatchCount());
+
+        // FLUSH 写出包括之前缓冲的记录在内的整批
+        wal.append(WriteAheadLog.LogEntry.put("k2", "v2"), WriteAheadLog.Durability.FLUSH);
+        Assert.assertTrue(new File(path).length() > emptySize);
+        Assert.assertEquals(1, wal.getBatchCount());
+        Assert.assertEquals(0, wal.getSyncCount());
+
+        wal.append(WriteAheadLog.LogEntry.put("k3", "v3"), WriteAheadLog.Durability.FSYNC);
+        Assert.assertEquals(1, wal.getSyncCount());
+
+        // 关闭时写出剩余的缓冲记录
+        wal.append(WriteAheadLog.LogEntry.delete("k1"), WriteAheadLog.Durability.NONE);
+        wal.close();
+        List<WriteAheadLog.LogEntry> entries = new WriteAheadLog(path).recover();
+        Assert.assertEquals(4, entries.size());
+        Assert.assertEquals(WriteAheadLog.Operation.DELETE, entries.get(3).getOperation());
+    }
+
+    @Test
+    public void testTreeWritesWithPerWriteDurability() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 1000,
+                new LSMTreeOptions().setWalDurability(WriteAheadLog.Durability.NONE));
+        tree.put("fast", "1");
+        tree.put("durable", "2", WriteAheadLog.Durability.FSYNC);
+        tree.delete("gone", WriteAheadLog.Durability.FLUSH);
+        Assert.assertEquals("1", tree.get("fast"));
+        Assert.assertEquals("2", tree.get("durable"));
+
+        // FSYNC 写入会把之前缓冲的记录一并落盘
+        List<WriteAheadLog.LogEntry> logged = new ArrayList<>();
+        WriteAheadLog.readRecords(dir + "/wal_1.log", logged);
+        Assert.assertEquals(3, logged.size());
+        tree.close();
+    }
+
+    @Test
+    public void testWriteFailureIsFatal() throws Exception {
+        String path = new File(tmp.getRoot(), "wal.log").getAbsolutePath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        long first = wal.enqueue(WriteAheadLog.LogEntry.put("a", "1"));
+        wal.sync(first, WriteAheadLog.Durability.FLUSH);
+        long second = wal.enqueue(WriteAheadLog.LogEntry.put("b", "2"));
+
+        // 模拟磁盘错误：关闭底层文件，下一批写出失败
+        Field channel = WriteAheadLog.class.getDeclaredField("channel");
+        channel.setAccessible(true);
+        ((FileChannel) channel.get(wal)).close();
+        assertFails(() -> wal.sync(second, WriteAheadLog.Durability.FLUSH));
+
+        // 之后的等待者不会被误报为已落盘，新记录也不再接受；已写出但未 force 的记录不能再满足 FSYNC
+        assertFails(() -> wal.sync(second, WriteAheadLog.Durability.FLUSH));
+        assertFails(() -> wal.enqueue(WriteAheadLog.LogEntry.put("c", "3")));
+        assertFails(() -> wal.sync(first, WriteAheadLog.Durability.FSYNC));
+        wal.sync(first, WriteAheadLog.Durability.FLUSH);
+        wal.close();
+
+        // 写到一半的尾部记录在重新打开时截掉，之后追加的记录可以恢复
+        try (FileOutputStream out = new FileOutputStream(path, true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        }
+        WriteAheadLog reopened = new WriteAheadLog(path);
+        reopened.append(WriteAheadLog.LogEntry.put("d", "4"), WriteAheadLog.Durability.FSYNC);
+        List<String> keys = new ArrayList<>();
+        for (WriteAheadLog.LogEntry e : reopened.recover()) {
+            keys.add(e.getKey());
+        }
+        Assert.assertEquals(Arrays.asList("a", "d"), keys);
+        reopened.close();
+    }
+
+    private interface WalCall {
+        void run() throws IOException;
+    }
+
+    private static void assertFails(WalCall call) {
+        try {
+            call.run();
+            Assert.fail("expected IOException");
+        } catch (IOException expected) {
+            // 日志已失败
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.brianxiadong.lsmtree;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class WriteBatchTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testBatchAppliedInOrder() throws Exception {
+        LSMTree tree = new LSMTree(tmp.getRoot().getAbsolutePath(), 1000);
+        tree.put("old", "v0");
+        WriteBatch batch = new WriteBatch()
+                .put("a", "1")
+                .put("b", "2")
+                .delete("old")
+                .put("a", "3");
+        Assert.assertEquals(4, batch.size());
+        tree.write(batch);
+
+        Assert.assertEquals("3", tree.get("a"));
+        Assert.assertEquals("2", tree.get("b"));
+        Assert.assertNull(tree.get("old"));
+        tree.write(new WriteBatch());
+        tree.close();
+    }
+
+    @Test
+    public void testBatchIsSingleWalRecord() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        LSMTree tree = new LSMTree(dir, 1000);
+        tree.put("single", "s");
+        WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < 50; i++) {
+            batch.put("k" + i, "v" + i);
+        }
+        tree.write(batch);
+
+        String wal = dir + "/wal_1.log";
+        List<WriteAheadLog.LogEntry> logged = new ArrayList<>();
+        long validLength = WriteAheadLog.readRecords(wal, logged);
+        Assert.assertEquals(51, logged.size());
+        Assert.assertEquals(new File(wal).length(), validLength);
+
+        // 截断批量记录的尾部：整批丢弃，之前的单条记录保留
+        try (RandomAccessFile raf = new RandomAccessFile(wal, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        logged.clear();
+        WriteAheadLog.readRecords(wal, logged);
+        Assert.assertEquals(1, logged.size());
+        Assert.assertEquals("single", logged.get(0).getKey());
+        tree.close();
+    }
+
+    @Test
+    public void testBatchRecoveredFromWal() throws Exception {
+        String dir = tmp.getRoot().getAbsolutePath();
+        WriteAheadLog wal = new WriteAheadLog(dir + "/wal_1.log");
+        long seq = wal.enqueue(Arrays.asList(
+                WriteAheadLog.LogEntry.put("x", "1"),
+                WriteAheadLog.LogEntry.put("y", "2"),
+                WriteAheadLog.LogEntry.delete("x")));
+        wal.sync(seq, WriteAheadLog.Durability.FSYNC);
+        wal.close();
+
+        LSMTree tree = new LSMTree(dir, 1000);
+        Assert.assertNull(tree.get("x"));
+        Assert.assertEquals("2", tree.get("y"));
+        tree.close();
+    }
+
+    @Test
+    public void testPartitionedTreeSplitsBatch() throws Exception {
+        PartitionStrategy s = new RangePartitionStrategy(Arrays.asList("d", "m"));
+        try (PartitionedLSMTree tree = new PartitionedLSMTree(tmp.getRoot().getAbsolutePath(), 3, 100, s)) {
+            WriteBatch batch = new WriteBatch();
+            for (char c = 'a'; c <= 'z'; c++) {
+                batch.put("" + c, "v" + c);
+            }
+            batch.delete("q");
+            tree.write(batch);
+            for (char c = 'a'; c <= 'z'; c++) {
+                Assert.assertEquals(c == 'q' ? null : "v" + c, tree.get("" + c));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValueRejected() {
+        new WriteBatch().put("k", null);
+    }
+}